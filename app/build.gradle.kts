@@ -18,7 +18,12 @@ android {
     }
 
     buildTypes {
+        debug {
+            // A literal, unlike BuildConfig.DEBUG, so ImeLog.DEBUG guards fold away
+            buildConfigField("boolean", "IME_LOG", "true")
+        }
         release {
+            buildConfigField("boolean", "IME_LOG", "false")
             isMinifyEnabled = false
             proguardFiles(
                 getDefaultProguardFile("proguard-android-optimize.txt"),
@@ -33,15 +38,49 @@ android {
     kotlinOptions {
         jvmTarget = "11"
     }
+    buildFeatures {
+        buildConfig = true
+    }
+    testOptions {
+        unitTests {
+            // KeystrokeReplayTest inflates the keyboard layouts under Robolectric
+            isIncludeAndroidResources = true
+        }
+    }
+}
+
+androidComponents {
+    onVariants { variant ->
+        // Compiles the keyboard layouts into CompiledKeyboardLayouts so the IME does not
+        // parse their XML at runtime, see buildSrc/CompileKeyboardLayoutsTask.kt
+        val compileKeyboardLayouts = tasks.register<CompileKeyboardLayoutsTask>(
+            "compile${variant.name.replaceFirstChar { it.uppercase() }}KeyboardLayouts"
+        ) {
+            layouts.from(
+                "src/main/res/xml/qwerty.xml",
+                "src/main/res/xml/symbols.xml",
+                "src/main/res/xml/symbols_shift.xml"
+            )
+            packageName.set("example.android.package2.keyboard")
+            rPackage.set(android.namespace)
+        }
+        variant.sources.java?.addGeneratedSourceDirectory(
+            compileKeyboardLayouts, CompileKeyboardLayoutsTask::outputDir
+        )
+    }
 }
 
 dependencies {
+    implementation(project(":ime-core"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
     implementation(libs.core.ktx)
+    // ExploreByTouchHelper for the keys of LatinKeyboardView
+    implementation(libs.customview)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
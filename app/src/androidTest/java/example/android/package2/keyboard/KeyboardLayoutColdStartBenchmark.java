@@ -0,0 +1,87 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.aosp_poc.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times building the three keyboards the way {@code onInitializeInterface} does, from the
+ * compiled layouts and from their XML.
+ *
+ * The first build of each path is the cold start the IME pays when its process starts.
+ * The compiled path is timed first, so it also pays for loading the key icons both paths
+ * share. Later builds are what a width change costs. Results go to logcat under
+ * {@value #TAG} and to the instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeyboardLayoutColdStartBenchmark {
+
+    private static final String TAG = "KeyboardLayoutBench";
+    private static final int WARM_ROUNDS = 30;
+
+    @Test
+    public void compiledVersusXml() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        long compiledCold = buildCompiled(context);
+        long xmlCold = buildXml(context);
+
+        long[] compiled = new long[WARM_ROUNDS];
+        long[] xml = new long[WARM_ROUNDS];
+        for (int i = 0; i < WARM_ROUNDS; i++) {
+            compiled[i] = buildCompiled(context);
+            xml[i] = buildXml(context);
+        }
+        long compiledWarm = median(compiled);
+        long xmlWarm = median(xml);
+
+        Log.i(TAG, "cold: compiled " + compiledCold / 1000 + "us, xml " + xmlCold / 1000 + "us");
+        Log.i(TAG, "warm median: compiled " + compiledWarm / 1000 + "us, xml "
+                + xmlWarm / 1000 + "us");
+        Bundle status = new Bundle();
+        status.putLong("compiledColdNanos", compiledCold);
+        status.putLong("xmlColdNanos", xmlCold);
+        status.putLong("compiledWarmNanos", compiledWarm);
+        status.putLong("xmlWarmNanos", xmlWarm);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+
+        // Both paths must have built the same keyboards for the numbers to mean anything
+        assertEquals(new LatinKeyboard(context, R.xml.qwerty).getKeys().size(),
+                new LatinKeyboard(context, CompiledKeyboardLayouts.QWERTY).getKeys().size());
+    }
+
+    private static long buildCompiled(Context context) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        new LatinKeyboard(context, CompiledKeyboardLayouts.QWERTY);
+        new LatinKeyboard(context, CompiledKeyboardLayouts.SYMBOLS);
+        new LatinKeyboard(context, CompiledKeyboardLayouts.SYMBOLS_SHIFT);
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    private static long buildXml(Context context) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        new LatinKeyboard(context, R.xml.qwerty);
+        new LatinKeyboard(context, R.xml.symbols);
+        new LatinKeyboard(context, R.xml.symbols_shift);
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    private static long median(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -1,108 +1,123 @@
 package example.android.package2.emoji.adapter
 
+import android.util.TypedValue
 import android.view.LayoutInflater
+import android.view.MotionEvent
 import android.view.View
 import android.view.ViewGroup
 import android.widget.TextView
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.ListAdapter
 import androidx.recyclerview.widget.RecyclerView
 import com.example.aosp_poc.R
 import example.android.package2.emoji.data.Emoji
-import kotlin.math.roundToInt
 
+/**
+ * The emoji row, kept for the life of the row: new suggestions are diffed against the shown
+ * ones off the main thread, so only the cells that changed are bound again. Each emoji keeps
+ * the same item id in every list.
+ *
+ * Cells are sized when they are created and share one set of listeners, which look the emoji
+ * up by the cell's adapter position; binding only sets the text.
+ */
 class EmojiAdapter(
-    private val emojis: List<Emoji>,
     private val onEmojiClick: (Emoji) -> Unit,
-    private val onEmojiLongClick: (Emoji) -> Unit = {},
-    private val dynamicEmojiSize: Int = 0,
-    private val dynamicSpacing: Int = 0
-) : RecyclerView.Adapter<EmojiAdapter.EmojiViewHolder>() {
+    private val onEmojiLongClick: (Emoji) -> Unit = {}
+) : ListAdapter<Emoji, EmojiAdapter.EmojiViewHolder>(DIFF_CALLBACK) {
+
+    // Set by EmojiManager once the row width is known, 0 for the layout's own size
+    private var cellSize = 0
+    private var textSizeSp = 0f
+
+    private var recyclerView: RecyclerView? = null
+
+    private val clickListener = View.OnClickListener { view ->
+        emojiAt(view)?.let(onEmojiClick)
+    }
+
+    private val longClickListener = View.OnLongClickListener { view ->
+        emojiAt(view)?.let(onEmojiLongClick)
+        true
+    }
+
+    // Visual feedback for better UX; returns false to let the click continue
+    private val pressFeedback = View.OnTouchListener { view, event ->
+        when (event.action) {
+            MotionEvent.ACTION_DOWN -> view.alpha = 0.7f
+            MotionEvent.ACTION_UP, MotionEvent.ACTION_CANCEL -> view.alpha = 1.0f
+        }
+        false
+    }
+
+    init {
+        setHasStableIds(true)
+    }
 
     class EmojiViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
         val emojiText: TextView = itemView.findViewById(R.id.emoji_text)
     }
 
+    /**
+     * Sizes the cells created from now on. Cells already created keep their size, so the
+     * caller drops them when this changes.
+     */
+    fun setCellMetrics(cellSize: Int, textSizeSp: Float) {
+        this.cellSize = cellSize
+        this.textSizeSp = textSizeSp
+    }
+
+    override fun onAttachedToRecyclerView(recyclerView: RecyclerView) {
+        this.recyclerView = recyclerView
+    }
+
+    override fun onDetachedFromRecyclerView(recyclerView: RecyclerView) {
+        this.recyclerView = null
+    }
+
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): EmojiViewHolder {
         val view = LayoutInflater.from(parent.context)
             .inflate(R.layout.emoji_item_emoji, parent, false)
-        return EmojiViewHolder(view)
+        val holder = EmojiViewHolder(view)
+
+        if (cellSize > 0) {
+            // Spacing comes from the item decoration, the cells have no margins
+            view.layoutParams.width = cellSize
+            view.layoutParams.height = cellSize
+            holder.emojiText.layoutParams.width = cellSize
+            holder.emojiText.layoutParams.height = cellSize
+            holder.emojiText.setTextSize(TypedValue.COMPLEX_UNIT_SP, textSizeSp)
+        }
+
+        // The container handles all touch events, the text view is not clickable
+        view.setOnClickListener(clickListener)
+        view.setOnLongClickListener(longClickListener)
+        view.setOnTouchListener(pressFeedback)
+        return holder
     }
 
     override fun onBindViewHolder(holder: EmojiViewHolder, position: Int) {
-        val emoji = emojis[position]
-        holder.emojiText.text = emoji.unicode
+        holder.emojiText.text = getItem(position).unicode
+    }
 
-        // Apply dynamic sizing if available
-        applyDynamicSizing(holder)
+    override fun getItemId(position: Int): Long = stableId(getItem(position).unicode)
 
-        // Handle regular click (insert emoji)
-        holder.itemView.setOnClickListener {
-            onEmojiClick(emoji)
-        }
+    private fun emojiAt(view: View): Emoji? {
+        val position = recyclerView?.getChildAdapterPosition(view) ?: RecyclerView.NO_POSITION
+        return if (position == RecyclerView.NO_POSITION) null else getItem(position)
+    }
 
-        holder.itemView.setOnLongClickListener {
-            onEmojiLongClick(emoji)
-            true
-        }
+    private companion object {
+        val DIFF_CALLBACK = object : DiffUtil.ItemCallback<Emoji>() {
+            override fun areItemsTheSame(oldItem: Emoji, newItem: Emoji) =
+                oldItem.unicode == newItem.unicode
 
-        // Remove conflicting touch handling from TextView
-        holder.emojiText.isClickable = false
-        holder.emojiText.isFocusable = false
-
-        // Container should handle all touch events
-        holder.itemView.isClickable = true
-        holder.itemView.isFocusable = true
-
-        // Add visual feedback for better UX
-        holder.itemView.setOnTouchListener { view, event ->
-            when (event.action) {
-                android.view.MotionEvent.ACTION_DOWN -> {
-                    view.alpha = 0.7f
-                    false // Allow click to continue
-                }
-                android.view.MotionEvent.ACTION_UP,
-                android.view.MotionEvent.ACTION_CANCEL -> {
-                    view.alpha = 1.0f
-                    false // Allow click to continue
-                }
-                else -> false
-            }
+            override fun areContentsTheSame(oldItem: Emoji, newItem: Emoji) = oldItem == newItem
         }
-    }
 
-    private fun applyDynamicSizing(holder: EmojiViewHolder) {
-        if (dynamicEmojiSize > 0) {
-            val context = holder.itemView.context
-            val density = context.resources.displayMetrics.density
-
-            // Apply size to the container
-            val containerLayoutParams = holder.itemView.layoutParams
-            containerLayoutParams.width = dynamicEmojiSize
-            containerLayoutParams.height = dynamicEmojiSize
-            holder.itemView.layoutParams = containerLayoutParams
-
-            // Apply size to the emoji text view
-            val textLayoutParams = holder.emojiText.layoutParams
-            textLayoutParams.width = dynamicEmojiSize
-            textLayoutParams.height = dynamicEmojiSize
-            holder.emojiText.layoutParams = textLayoutParams
-
-            // Calculate text size based on emoji size (approximately 60% of container)
-            val textSize = (dynamicEmojiSize * 0.6f / density).roundToInt()
-            val clampedTextSize = textSize.coerceIn(16, 32) // Min 16sp, Max 32sp
-
-            holder.emojiText.textSize = clampedTextSize.toFloat()
-
-            // Ensure text is centered
-            holder.emojiText.gravity = android.view.Gravity.CENTER
-
-            // Clear any existing margins since we handle spacing via ItemDecoration
-            if (holder.itemView.layoutParams is ViewGroup.MarginLayoutParams) {
-                val marginParams = holder.itemView.layoutParams as ViewGroup.MarginLayoutParams
-                marginParams.setMargins(0, 0, 0, 0)
-                holder.itemView.layoutParams = marginParams
-            }
-        }
-    }
+        // Ids handed out so far, one per emoji ever shown; there are only a few hundred
+        val stableIds = HashMap<String, Long>()
 
-    override fun getItemCount(): Int = emojis.size
-}
\ No newline at end of file
+        fun stableId(unicode: String): Long =
+            stableIds.getOrPut(unicode) { stableIds.size.toLong() }
+    }
+}
@@ -11,7 +11,9 @@ import example.android.package2.emoji.data.Emoji
 import example.android.package2.emoji.data.EmojiData
 import example.android.package2.emoji.data.EmojiMappingData
 import example.android.package2.keyboard.SoftKeyboard
+import example.android.package2.logging.ImeLog
 import example.android.package2.sharing.service.SharingService
+import kotlin.math.roundToInt
 
 class EmojiManager(
     private val keyboardService: SoftKeyboard,
@@ -19,7 +21,14 @@ class EmojiManager(
 ) {
     private var emojiRecyclerView: RecyclerView? = null
     private var emojiRowContainer: View? = null
-    private lateinit var emojiAdapter: EmojiAdapter
+    private val emojiAdapter = EmojiAdapter(
+        onEmojiClick = { emoji -> handleEmojiSelection(emoji) },
+        onEmojiLongClick = { emoji -> handleEmojiLongPress(emoji) }
+    )
+    private val defaultEmojis = EmojiData.getTopUsedEmojis()
+    private var submittedEmojis: List<Emoji>? = null
+    // Item count the decoration last placed the edge spacing for
+    private var decoratedItemCount = 0
 
     // State management for suggestions
     private var isShowingSuggestions = false
@@ -32,11 +41,22 @@ class EmojiManager(
         private const val EMOJI_SPAN_COUNT = 8
         private const val MIN_EMOJI_SIZE_DP = 32
         private const val MAX_EMOJI_SIZE_DP = 48
+        // Emoji glyphs take about 60% of their cell
+        private const val EMOJI_TEXT_RATIO = 0.6f
+        private const val MIN_EMOJI_TEXT_SP = 16
+        private const val MAX_EMOJI_TEXT_SP = 32
+
+        // Debug records for the per-key paths, see ImeLog
+        private val LOG_COMPOSING = ImeLog.event(TAG, "composing change length=%d spaceSuggestions=%b")
+        private val LOG_WORD_COMPLETION = ImeLog.event(TAG, "word completion length=%d")
+        private val LOG_SUGGESTIONS = ImeLog.event(TAG, "showing suggestions count=%d spaceMode=%b")
+        private val LOG_DEFAULT = ImeLog.event(TAG, "showing default emojis")
     }
 
     // Dynamic sizing variables
     private var containerWidth = 0
     private var emojiSize = 0
+    private var emojiTextSizeSp = 0f
     private var horizontalSpacing = 0
 
     fun setupEmojiRow(containerView: View) {
@@ -103,9 +123,13 @@ class EmojiManager(
         val remainingWidth = containerWidth - visibleEmojiWidth
         horizontalSpacing = remainingWidth / visibleSpaces
 
+        emojiTextSizeSp = (emojiSize * EMOJI_TEXT_RATIO / density).roundToInt()
+            .coerceIn(MIN_EMOJI_TEXT_SP, MAX_EMOJI_TEXT_SP).toFloat()
+
         Log.d(TAG, "Dynamic sizing calculated:")
         Log.d(TAG, "  Container width: $containerWidth")
         Log.d(TAG, "  Emoji size: $emojiSize")
+        Log.d(TAG, "  Text size: ${emojiTextSizeSp}sp")
         Log.d(TAG, "  Horizontal spacing: $horizontalSpacing")
         Log.d(TAG, "  Visible spaces: $visibleSpaces")
         Log.d(TAG, "  Check: ${EMOJI_SPAN_COUNT * emojiSize + visibleSpaces * horizontalSpacing} should equal $containerWidth")
@@ -120,11 +144,13 @@ class EmojiManager(
 
             // Add new dynamic decoration
             if (emojiSize > 0 && horizontalSpacing > 0) {
-                recyclerView.addItemDecoration(DynamicEmojiItemDecoration(emojiSize, horizontalSpacing))
+                recyclerView.addItemDecoration(DynamicEmojiItemDecoration(horizontalSpacing))
             }
 
-            // Force adapter to refresh with new sizing
-            emojiAdapter.notifyItemRangeChanged(0, emojiAdapter.itemCount)
+            // Cells are sized when created: setting the adapter again drops the ones sized
+            // for the old width, pool included, and creates new ones for the same list
+            emojiAdapter.setCellMetrics(emojiSize, emojiTextSizeSp)
+            recyclerView.adapter = emojiAdapter
         }
     }
 
@@ -144,20 +170,7 @@ class EmojiManager(
             recyclerView.overScrollMode = View.OVER_SCROLL_IF_CONTENT_SCROLLS // Enable overscroll when needed
             recyclerView.isHorizontalScrollBarEnabled = false // Hide scrollbar but keep scrolling
 
-            // Create adapter with emoji click handling
-            emojiAdapter = EmojiAdapter(
-                emojis = emptyList(), // Will be populated by showDefaultEmojis()
-                onEmojiClick = { emoji ->
-                    handleEmojiSelection(emoji)
-                },
-                onEmojiLongClick = { emoji ->
-                    // Long click - share emoji as image
-                    shareEmoji(emoji.unicode)
-                },
-                // Pass dynamic sizing info to adapter
-                dynamicEmojiSize = emojiSize,
-                dynamicSpacing = horizontalSpacing
-            )
+            // The one adapter of the row, populated by showDefaultEmojis()
             recyclerView.adapter = emojiAdapter
         }
     }
@@ -204,9 +217,8 @@ class EmojiManager(
         isShowingSuggestions = false
         isShowingSpaceSuggestions = false  // Always reset both flags
         currentKeyword = ""
-        val defaultEmojis = EmojiData.getTopUsedEmojis()
         updateEmojiList(defaultEmojis)
-        Log.d(TAG, "Showing default emojis - all suggestion states cleared")
+        if (ImeLog.DEBUG) ImeLog.d(LOG_DEFAULT)
     }
 
     /**
@@ -218,35 +230,38 @@ class EmojiManager(
         currentKeyword = keyword
         updateEmojiList(suggestedEmojis)
 
-        Log.d(TAG, "Showing suggestions for keyword: $keyword, count: ${suggestedEmojis.size}")
-        Log.d(TAG, "Mode: ${if (isSpaceMode) "SPACE (insert)" else "COMPOSING (replace)"}")
+        if (ImeLog.DEBUG) ImeLog.d(LOG_SUGGESTIONS, suggestedEmojis.size, if (isSpaceMode) 1 else 0)
     }
 
     /**
      * Update the emoji list in the RecyclerView
+     * The lists come from EmojiData and EmojiMappingData, which hand out the same instance
+     * for the same keyword, so showing the shown list again costs nothing.
      */
     private fun updateEmojiList(emojis: List<Emoji>) {
-        emojiAdapter = EmojiAdapter(
-            emojis = emojis,
-            onEmojiClick = { emoji ->
-                handleEmojiSelection(emoji)
-            },
-            onEmojiLongClick = { emoji ->
-                handleEmojiLongPress(emoji)  // Use the new handler
-            },
-            dynamicEmojiSize = emojiSize,
-            dynamicSpacing = horizontalSpacing
-        )
-        emojiRecyclerView?.adapter = emojiAdapter
-        updateRecyclerViewLayout()
+        if (emojis === submittedEmojis) return
+
+        submittedEmojis = emojis
+        emojiAdapter.submitList(emojis) {
+            emojiRecyclerView?.let { recyclerView ->
+                // The edge spacing goes to whichever item is last now
+                if (emojiAdapter.itemCount != decoratedItemCount) {
+                    decoratedItemCount = emojiAdapter.itemCount
+                    recyclerView.invalidateItemDecorations()
+                }
+                recyclerView.scrollToPosition(0)
+            }
+        }
     }
 
     /**
      * Handle text change during typing (for composing text)
-     * This is called when user is typing but hasn't committed the word yet
+     * This is called when user is typing but hasn't committed the word yet.
+     * The text may be a view over the keyboard's word buffers, so it is copied before the
+     * keyword lookup moves to the background thread.
      */
-    fun handleComposingTextChange(composingText: String) {
-        Log.d(TAG, "handleComposingTextChange: '$composingText', was showing space suggestions: $isShowingSpaceSuggestions")
+    fun handleComposingTextChange(composingText: CharSequence) {
+        if (ImeLog.DEBUG) ImeLog.d(LOG_COMPOSING, composingText.length, if (isShowingSpaceSuggestions) 1 else 0)
 
         // IMPORTANT: Clear space suggestion state since we're now in composing mode
         isShowingSpaceSuggestions = false
@@ -260,15 +275,16 @@ class EmojiManager(
         }
 
         // Check if the composing text matches any keyword
-        val suggestions = EmojiMappingData.getSuggestedEmojis(composingText)
-
-        if (suggestions.isNotEmpty()) {
-            // Show suggestions for this keyword (composing mode)
-            showSuggestedEmojis(composingText, suggestions, isSpaceMode = false)
-        } else {
-            // No match found, show default emojis if currently showing suggestions
-            if (isShowingSuggestions) {
-                showDefaultEmojis()
+        val keyword = composingText.toString()
+        keyboardService.derivedWorkScheduler.submit({ EmojiMappingData.getSuggestedEmojis(keyword) }) { suggestions ->
+            if (suggestions.isNotEmpty()) {
+                // Show suggestions for this keyword (composing mode)
+                showSuggestedEmojis(keyword, suggestions, isSpaceMode = false)
+            } else {
+                // No match found, show default emojis if currently showing suggestions
+                if (isShowingSuggestions) {
+                    showDefaultEmojis()
+                }
             }
         }
     }
@@ -277,8 +293,8 @@ class EmojiManager(
      * Handle space press or word completion
      * This is called when user presses space and we need to check the last committed word
      */
-    fun handleWordCompletion(lastWord: String) {
-        Log.d(TAG, "handleWordCompletion: '$lastWord'")
+    fun handleWordCompletion(lastWord: CharSequence) {
+        if (ImeLog.DEBUG) ImeLog.d(LOG_WORD_COMPLETION, lastWord.length)
 
         if (lastWord.isBlank()) {
             // No last word, show default emojis
@@ -289,15 +305,16 @@ class EmojiManager(
         }
 
         // Check if the last word matches any keyword
-        val suggestions = EmojiMappingData.getSuggestedEmojis(lastWord)
-
-        if (suggestions.isNotEmpty()) {
-            // Show suggestions for this keyword (space mode)
-            showSuggestedEmojis(lastWord, suggestions, isSpaceMode = true)
-        } else {
-            // No match found, show default emojis
-            if (isShowingSuggestions) {
-                showDefaultEmojis()
+        val keyword = lastWord.toString()
+        keyboardService.derivedWorkScheduler.submit({ EmojiMappingData.getSuggestedEmojis(keyword) }) { suggestions ->
+            if (suggestions.isNotEmpty()) {
+                // Show suggestions for this keyword (space mode)
+                showSuggestedEmojis(keyword, suggestions, isSpaceMode = true)
+            } else {
+                // No match found, show default emojis
+                if (isShowingSuggestions) {
+                    showDefaultEmojis()
+                }
             }
         }
     }
@@ -307,7 +324,6 @@ class EmojiManager(
      * Called when user commits text or starts fresh
      */
     fun resetToDefault() {
-        Log.d(TAG, "resetToDefault called")
         if (isShowingSuggestions) {
             showDefaultEmojis()
         }
@@ -325,7 +341,6 @@ class EmojiManager(
      * Dynamic ItemDecoration that ensures perfect spacing for visible emojis while allowing scroll
      */
     private class DynamicEmojiItemDecoration(
-        private val emojiSize: Int,
         private val spacing: Int
     ) : RecyclerView.ItemDecoration() {
 
@@ -338,12 +353,6 @@ class EmojiManager(
             val position = parent.getChildAdapterPosition(view)
             val itemCount = parent.adapter?.itemCount ?: 0
 
-            // Force emoji size
-            val layoutParams = view.layoutParams
-            layoutParams.width = emojiSize
-            layoutParams.height = emojiSize
-            view.layoutParams = layoutParams
-
             // Apply spacing that works for both visible and scrolled items
             when (position) {
                 0 -> {
@@ -0,0 +1,155 @@
+package example.android.package2.keyboard;
+
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.inputmethodservice.Keyboard;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+
+import java.util.List;
+
+/**
+ * A keyboard layout compiled from res/xml at build time, see the generated
+ * {@code CompiledKeyboardLayouts}. Rows and keys are kept as arrays; building a keyboard
+ * only resolves the sizes against the display and creates the keys, without parsing XML.
+ *
+ * Sizes are stored as {@link TypedValue} type and data pairs, in the order
+ * {@link #KEY_WIDTH}, {@link #KEY_HEIGHT}, {@link #HORIZONTAL_GAP}, {@link #VERTICAL_GAP}
+ * (keys have no vertical gap). A {@link TypedValue#TYPE_NULL} size is inherited from the
+ * row or keyboard, as in the XML. They resolve to the same pixels {@link Keyboard} gets.
+ */
+final class CompiledKeyboardLayout {
+
+    static final int KEY_WIDTH = 0;
+    static final int KEY_HEIGHT = 1;
+    static final int HORIZONTAL_GAP = 2;
+    static final int VERTICAL_GAP = 3;
+
+    private static final int KEYBOARD_SIZES = 4;
+    private static final int KEY_SIZES = 3;
+
+    // Key flags above Keyboard.EDGE_*
+    static final int FLAG_EDGE_MASK = 0xff;
+    static final int FLAG_STICKY = 1 << 8;
+    static final int FLAG_MODIFIER = 1 << 9;
+    static final int FLAG_REPEATABLE = 1 << 10;
+
+    /** The XML the layout was compiled from, for comparing against the XML path. */
+    final int xmlResId;
+    private final int[] mKeyboardSizes;
+    private final int[] mRowSizes;
+    private final int[] mRowEdgeFlags;
+    /** Index of each row's first key, followed by the key count. */
+    private final int[] mRowStarts;
+    private final int[][] mCodes;
+    private final String[] mLabels;
+    private final int[] mIcons;
+    private final int[] mKeySizes;
+    private final int[] mKeyFlags;
+
+    CompiledKeyboardLayout(int xmlResId, int[] keyboardSizes, int[] rowSizes,
+                           int[] rowEdgeFlags, int[] rowStarts, int[][] codes,
+                           String[] labels, int[] icons, int[] keySizes, int[] keyFlags) {
+        this.xmlResId = xmlResId;
+        mKeyboardSizes = keyboardSizes;
+        mRowSizes = rowSizes;
+        mRowEdgeFlags = rowEdgeFlags;
+        mRowStarts = rowStarts;
+        mCodes = codes;
+        mLabels = labels;
+        mIcons = icons;
+        mKeySizes = keySizes;
+        mKeyFlags = keyFlags;
+    }
+
+    /**
+     * Creates the keys of this layout on {@code keyboard}, which must not have any yet,
+     * laid out the way {@link Keyboard} lays out XML rows.
+     */
+    void addKeys(LatinKeyboard keyboard, Resources res) {
+        final DisplayMetrics metrics = res.getDisplayMetrics();
+        final int displayWidth = metrics.widthPixels;
+        final int displayHeight = metrics.heightPixels;
+        final TypedValue value = new TypedValue();
+        final List<Keyboard.Key> keys = keyboard.getKeys();
+
+        final int defaultWidth = resolve(res, value, mKeyboardSizes, KEY_WIDTH, displayWidth,
+                displayWidth / 10);
+        final int defaultHeight = resolve(res, value, mKeyboardSizes, KEY_HEIGHT, displayHeight,
+                50);
+        final int defaultHorizontalGap = resolve(res, value, mKeyboardSizes, HORIZONTAL_GAP,
+                displayWidth, 0);
+        final int defaultVerticalGap = resolve(res, value, mKeyboardSizes, VERTICAL_GAP,
+                displayHeight, 0);
+
+        int y = 0;
+        int totalWidth = 0;
+        final int rowCount = mRowEdgeFlags.length;
+        for (int r = 0; r < rowCount; r++) {
+            final Keyboard.Row row = new Keyboard.Row(keyboard);
+            final int rowBase = r * KEYBOARD_SIZES;
+            row.defaultWidth = resolve(res, value, mRowSizes, rowBase + KEY_WIDTH,
+                    displayWidth, defaultWidth);
+            row.defaultHeight = resolve(res, value, mRowSizes, rowBase + KEY_HEIGHT,
+                    displayHeight, defaultHeight);
+            row.defaultHorizontalGap = resolve(res, value, mRowSizes, rowBase + HORIZONTAL_GAP,
+                    displayWidth, defaultHorizontalGap);
+            row.verticalGap = resolve(res, value, mRowSizes, rowBase + VERTICAL_GAP,
+                    displayHeight, defaultVerticalGap);
+            row.rowEdgeFlags = mRowEdgeFlags[r];
+
+            int x = 0;
+            for (int k = mRowStarts[r]; k < mRowStarts[r + 1]; k++) {
+                final LatinKeyboard.LatinKey key = new LatinKeyboard.LatinKey(row);
+                final int keyBase = k * KEY_SIZES;
+                key.width = resolve(res, value, mKeySizes, keyBase + KEY_WIDTH, displayWidth,
+                        row.defaultWidth);
+                key.height = resolve(res, value, mKeySizes, keyBase + KEY_HEIGHT, displayHeight,
+                        row.defaultHeight);
+                key.gap = resolve(res, value, mKeySizes, keyBase + HORIZONTAL_GAP, displayWidth,
+                        row.defaultHorizontalGap);
+                key.x = x + key.gap;
+                key.y = y;
+                key.codes = mCodes[k];
+                key.label = mLabels[k];
+                if (mIcons[k] != 0) {
+                    final Drawable icon = res.getDrawable(mIcons[k]);
+                    icon.setBounds(0, 0, icon.getIntrinsicWidth(), icon.getIntrinsicHeight());
+                    key.icon = icon;
+                }
+                final int flags = mKeyFlags[k];
+                key.edgeFlags = (flags & FLAG_EDGE_MASK) | row.rowEdgeFlags;
+                key.sticky = (flags & FLAG_STICKY) != 0;
+                key.modifier = (flags & FLAG_MODIFIER) != 0;
+                key.repeatable = (flags & FLAG_REPEATABLE) != 0;
+
+                keys.add(key);
+                keyboard.onCompiledKey(key, row);
+                x += key.gap + key.width;
+                if (x > totalWidth) {
+                    totalWidth = x;
+                }
+            }
+            y += row.verticalGap + row.defaultHeight;
+        }
+        keyboard.setCompiledSize(totalWidth, y - defaultVerticalGap);
+    }
+
+    /** Resolves one size like Keyboard.getDimensionOrFraction resolves an attribute. */
+    private static int resolve(Resources res, TypedValue value, int[] sizes, int index,
+                               int base, int defValue) {
+        int type = sizes[index * 2];
+        int data = sizes[index * 2 + 1];
+        if (type == TypedValue.TYPE_REFERENCE) {
+            res.getValue(data, value, true);
+            type = value.type;
+            data = value.data;
+        }
+        if (type == TypedValue.TYPE_DIMENSION) {
+            return TypedValue.complexToDimensionPixelOffset(data, res.getDisplayMetrics());
+        } else if (type == TypedValue.TYPE_FRACTION) {
+            return Math.round(TypedValue.complexToFraction(data, base, base));
+        }
+        return defValue;
+    }
+}
@@ -0,0 +1,49 @@
+package example.android.package2.keyboard;
+
+import android.view.View;
+import android.view.ViewStub;
+import android.view.ViewTreeObserver;
+
+/**
+ * Inflates parts of the input view that the keys do not need, such as the emoji row and
+ * the suggestion bar, after the keyboard has drawn, so they never hold up its first frame.
+ *
+ * Views can only be built on the main thread here, so "later" means the first message
+ * after the window's next draw rather than a background thread.
+ */
+public final class DeferredStub {
+
+    public interface Callback {
+        void onInflated(View view);
+    }
+
+    private DeferredStub() {
+    }
+
+    /**
+     * Inflates {@code stub} after its window has drawn and hands the inflated view to
+     * {@code callback}. Does nothing if the stub was inflated or dropped in the meantime.
+     */
+    public static void inflateAfterDraw(final ViewStub stub, final Callback callback) {
+        final Runnable inflate = () -> {
+            if (stub.getParent() != null) {
+                callback.onInflated(stub.inflate());
+            }
+        };
+        if (stub.isAttachedToWindow() && stub.getRootView().isLaidOut()) {
+            // Already on screen; a post runs after any traversal in progress
+            stub.post(inflate);
+            return;
+        }
+        final ViewTreeObserver observer = stub.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                stub.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Runs once the frame being drawn is done
+                stub.post(inflate);
+                return true;
+            }
+        });
+    }
+}
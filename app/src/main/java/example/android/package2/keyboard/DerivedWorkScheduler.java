@@ -0,0 +1,111 @@
+package example.android.package2.keyboard;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.view.Choreographer;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the work that follows a keystroke (emoji suggestions, autofill tracking) once per
+ * frame instead of once per key.
+ *
+ * Each input event bumps a generation number and makes sure the frame work is posted;
+ * keys arriving before the next frame only bump the generation again, so a burst of typing
+ * is handled once with the latest state. Computations that do not touch views or editor
+ * state can be {@link #submit submitted} to a background thread; their result is dropped if
+ * another input arrived while they ran, since the next frame computes a fresh one anyway.
+ *
+ * All methods except the submitted work run on the main thread.
+ */
+public final class DerivedWorkScheduler implements Choreographer.FrameCallback {
+
+    private final Runnable mFrameWork;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private HandlerThread mWorkerThread;
+    private Handler mWorkerHandler;
+
+    // Read by the worker to skip work that is already stale
+    private volatile int mGeneration;
+    private boolean mFramePosted;
+
+    /**
+     * @param frameWork runs on the main thread on the frame after one or more inputs.
+     */
+    DerivedWorkScheduler(Runnable frameWork) {
+        mFrameWork = frameWork;
+    }
+
+    /** An input changed the text; supersedes pending results and schedules the frame work. */
+    void onInput() {
+        mGeneration++;
+        if (!mFramePosted) {
+            mFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /** Runs pending frame work right away, e.g. before the input session ends. */
+    void flush() {
+        if (mFramePosted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            doFrame(0);
+        }
+    }
+
+    /** Drops pending frame work and any result still being computed. */
+    void cancel() {
+        mGeneration++;
+        if (mFramePosted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mFramePosted = false;
+        }
+    }
+
+    void quit() {
+        cancel();
+        if (mWorkerThread != null) {
+            mWorkerThread.quitSafely();
+            mWorkerThread = null;
+            mWorkerHandler = null;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFramePosted = false;
+        mFrameWork.run();
+    }
+
+    /**
+     * Computes {@code work} on the background thread and hands the result to
+     * {@code onResult} on the main thread, unless newer input arrived in the meantime.
+     */
+    public <T> void submit(Supplier<T> work, Consumer<T> onResult) {
+        final int generation = mGeneration;
+        getWorkerHandler().post(() -> {
+            if (generation != mGeneration) {
+                return;
+            }
+            final T result = work.get();
+            mMainHandler.post(() -> {
+                if (generation == mGeneration) {
+                    onResult.accept(result);
+                }
+            });
+        });
+    }
+
+    private Handler getWorkerHandler() {
+        if (mWorkerHandler == null) {
+            mWorkerThread = new HandlerThread("DerivedWork", Process.THREAD_PRIORITY_BACKGROUND);
+            mWorkerThread.start();
+            mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        }
+        return mWorkerHandler;
+    }
+}
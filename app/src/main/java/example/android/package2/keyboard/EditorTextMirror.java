@@ -0,0 +1,280 @@
+package example.android.package2.keyboard;
+
+import android.inputmethodservice.InputMethodService;
+import android.os.Build;
+import android.util.Log;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.InputConnection;
+
+/**
+ * Local copy of the editor text around the cursor.
+ *
+ * The mirror is seeded once per input session and then kept in sync from the edits the
+ * keyboard itself sends (commits, composing updates, deletes). Cursor reports coming back
+ * through {@link InputMethodService#onUpdateSelection} are compared against the positions
+ * our own edits should produce; anything else means the host changed the text on its own,
+ * and the mirror re-reads the editor the next time somebody asks for text.
+ *
+ * The text before the cursor includes the current composing region, exactly like
+ * {@link InputConnection#getTextBeforeCursor} would return it.
+ */
+public class EditorTextMirror implements TextAroundCursor {
+
+    private static final String TAG = "EditorTextMirror";
+
+    /** Characters read on each side of the cursor when (re)seeding. */
+    static final int SEED_LENGTH = 1000;
+    /** Upper bound for the text kept before the cursor; older text is dropped. */
+    private static final int MAX_BEFORE_LENGTH = 2 * SEED_LENGTH;
+    /** How many of our own edits can be waiting for their selection update. */
+    private static final int MAX_PENDING_SELECTIONS = 16;
+
+    private final InputMethodService mService;
+
+    private final StringBuilder mBefore = new StringBuilder(MAX_BEFORE_LENGTH);
+    private final StringBuilder mAfter = new StringBuilder(SEED_LENGTH);
+    private int mComposingLength;
+
+    /** Absolute editor offset of the cursor, or -1 when the editor did not tell us. */
+    private int mSelStart = -1;
+    private int mSelEnd = -1;
+    private boolean mStale = true;
+
+    // Cursor positions our own edits will produce, oldest first
+    private final int[] mPendingSelections = new int[MAX_PENDING_SELECTIONS];
+    private int mPendingCount;
+
+    public EditorTextMirror(InputMethodService service) {
+        mService = service;
+    }
+
+    /**
+     * Starts a new input session. On API 30+ the surrounding text delivered with the
+     * EditorInfo is used, so no round trip to the editor is needed.
+     */
+    public void onStartInput(EditorInfo attribute) {
+        clear();
+        if (attribute == null) {
+            return;
+        }
+        mSelStart = attribute.initialSelStart;
+        mSelEnd = attribute.initialSelEnd;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            CharSequence before = attribute.getInitialTextBeforeCursor(SEED_LENGTH, 0);
+            CharSequence after = attribute.getInitialTextAfterCursor(SEED_LENGTH, 0);
+            if (before != null && after != null) {
+                mBefore.append(before);
+                mAfter.append(after);
+                mStale = false;
+                return;
+            }
+        }
+        seed();
+    }
+
+    public void onFinishInput() {
+        clear();
+    }
+
+    // ============================================
+    // Edits sent by the keyboard
+
+    /** Mirrors {@link InputConnection#commitText}; replaces the composing text or selection. */
+    public void onCommitText(CharSequence text) {
+        int oldLength = mComposingLength;
+        removeComposing();
+        mBefore.append(text);
+        mComposingLength = 0;
+        trimBefore();
+        moveCursorTo(mSelStart - oldLength + text.length());
+    }
+
+    /** Mirrors {@link InputConnection#setComposingText}. */
+    public void onSetComposingText(CharSequence text) {
+        int oldLength = mComposingLength;
+        removeComposing();
+        mBefore.append(text);
+        mComposingLength = text.length();
+        trimBefore();
+        moveCursorTo(mSelStart - oldLength + text.length());
+    }
+
+    /** Mirrors {@link InputConnection#finishComposingText}; the text stays in place. */
+    public void onFinishComposingText() {
+        mComposingLength = 0;
+    }
+
+    /** Mirrors {@link InputConnection#deleteSurroundingText}. */
+    public void onDeleteSurroundingText(int beforeLength, int afterLength) {
+        int removedBefore = Math.min(beforeLength, mBefore.length());
+        mBefore.setLength(mBefore.length() - removedBefore);
+        mComposingLength = Math.min(mComposingLength, mBefore.length());
+        mAfter.delete(0, Math.min(afterLength, mAfter.length()));
+        moveCursorTo(mSelStart - removedBefore);
+    }
+
+    /**
+     * Marks the mirror out of date, for edits whose effect we cannot predict (key events
+     * that the editor interprets, content commits, ...).
+     */
+    public void invalidate() {
+        mStale = true;
+        mPendingCount = 0;
+    }
+
+    // ============================================
+    // Reconciliation
+
+    /**
+     * Checks a selection report from the editor against the cursor positions our own edits
+     * produce. Reports lag behind fast typing, so any position still waiting in the pending
+     * queue is accepted; everything else is an outside change.
+     *
+     * @return true if the report matches our own edits.
+     */
+    public boolean onUpdateSelection(int newSelStart, int newSelEnd) {
+        if (mStale) {
+            mSelStart = newSelStart;
+            mSelEnd = newSelEnd;
+            return false;
+        }
+        if (newSelStart == newSelEnd) {
+            for (int i = 0; i < mPendingCount; i++) {
+                if (mPendingSelections[i] == newSelStart) {
+                    consumePending(i + 1);
+                    return true;
+                }
+            }
+        }
+        if (newSelStart == mSelStart && newSelEnd == mSelEnd) {
+            return true;
+        }
+        Log.d(TAG, "Selection moved outside our edits, mirror will reseed");
+        mSelStart = newSelStart;
+        mSelEnd = newSelEnd;
+        invalidate();
+        return false;
+    }
+
+    /** Takes over full text updates delivered while the editor is being monitored. */
+    public void onUpdateExtractedText(ExtractedText text) {
+        if (text == null || text.text == null || text.partialStartOffset >= 0) {
+            // A partial update does not tell us enough to patch the windows
+            invalidate();
+            return;
+        }
+        int selStart = Math.max(0, Math.min(text.selectionStart, text.text.length()));
+        int selEnd = Math.max(selStart, Math.min(text.selectionEnd, text.text.length()));
+        mBefore.setLength(0);
+        mAfter.setLength(0);
+        mBefore.append(text.text, Math.max(0, selStart - MAX_BEFORE_LENGTH), selStart);
+        mAfter.append(text.text, selEnd, Math.min(text.text.length(), selEnd + SEED_LENGTH));
+        mComposingLength = Math.min(mComposingLength, mBefore.length());
+        mSelStart = text.startOffset + selStart;
+        mSelEnd = text.startOffset + selEnd;
+        mPendingCount = 0;
+        mStale = false;
+    }
+
+    // ============================================
+    // Reads
+
+    /** Same contract as {@link InputConnection#getTextBeforeCursor}, served from memory. */
+    @Override
+    public CharSequence getTextBeforeCursor(int n) {
+        ensureFresh();
+        int length = mBefore.length();
+        return mBefore.subSequence(Math.max(0, length - n), length);
+    }
+
+    /** Same contract as {@link InputConnection#getTextAfterCursor}, served from memory. */
+    @Override
+    public CharSequence getTextAfterCursor(int n) {
+        ensureFresh();
+        return mAfter.subSequence(0, Math.min(n, mAfter.length()));
+    }
+
+    /** Text of the field around the cursor, without the selected text. */
+    public String getFieldText() {
+        ensureFresh();
+        return new StringBuilder(mBefore.length() + mAfter.length())
+                .append(mBefore).append(mAfter).toString();
+    }
+
+    /** False when the editor reported a collapsed cursor, so there is no selection to read. */
+    public boolean mayHaveSelection() {
+        return mSelStart < 0 || mSelStart != mSelEnd;
+    }
+
+    // ============================================
+    // Helpers
+
+    private void ensureFresh() {
+        if (mStale) {
+            seed();
+        }
+    }
+
+    private void seed() {
+        mBefore.setLength(0);
+        mAfter.setLength(0);
+        mPendingCount = 0;
+
+        InputConnection ic = mService.getCurrentInputConnection();
+        if (ic == null) {
+            // Nothing to read yet; try again on the next access
+            mStale = true;
+            return;
+        }
+        CharSequence before = ic.getTextBeforeCursor(SEED_LENGTH, 0);
+        CharSequence after = ic.getTextAfterCursor(SEED_LENGTH, 0);
+        if (before != null) mBefore.append(before);
+        if (after != null) mAfter.append(after);
+        // The composing region, if any, is still part of the text before the cursor
+        mComposingLength = Math.min(mComposingLength, mBefore.length());
+        mStale = false;
+    }
+
+    private void clear() {
+        mBefore.setLength(0);
+        mAfter.setLength(0);
+        mComposingLength = 0;
+        mSelStart = -1;
+        mSelEnd = -1;
+        mPendingCount = 0;
+        mStale = true;
+    }
+
+    private void removeComposing() {
+        if (mComposingLength > 0) {
+            mBefore.setLength(Math.max(0, mBefore.length() - mComposingLength));
+        }
+    }
+
+    private void trimBefore() {
+        int excess = mBefore.length() - MAX_BEFORE_LENGTH;
+        if (excess > 0) {
+            mBefore.delete(0, excess);
+        }
+    }
+
+    /** Every edit collapses the selection; remember where the editor should report it. */
+    private void moveCursorTo(int position) {
+        if (mSelStart < 0) {
+            return;
+        }
+        mSelStart = Math.max(0, position);
+        mSelEnd = mSelStart;
+        if (mPendingCount == MAX_PENDING_SELECTIONS) {
+            consumePending(1);
+        }
+        mPendingSelections[mPendingCount++] = mSelStart;
+    }
+
+    private void consumePending(int count) {
+        System.arraycopy(mPendingSelections, count, mPendingSelections, 0, mPendingCount - count);
+        mPendingCount -= count;
+    }
+}
@@ -0,0 +1,182 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Where the floating keyboard was left and how large, per host app, orientation and display
+ * size, so that it comes back in the same place after the process dies and does not take
+ * the position it had in another app or orientation.
+ *
+ * Each entry is one long in its own preferences file: the position in whole pixels and the
+ * scale in thousandths. Next to it is the number of the put that last saved it, so that the
+ * entries are in the same order of use after a restart. The file is read once on a
+ * background thread when the service starts; until then {@link #get} finds nothing and the
+ * keyboard floats centered, and what is {@link #put} meanwhile wins over what is read and
+ * counts as used last. The least recently used entries go once there are more than
+ * {@link #MAX_ENTRIES}.
+ *
+ * Only used from the main thread, apart from the initial read.
+ */
+final class FloatingGeometryStore {
+
+    private static final String PREFS_NAME = "floating_geometry";
+    private static final int MAX_ENTRIES = 64;
+    // Appended to an entry's key for its last use; '#' does not occur in package names
+    private static final String USED_SUFFIX = "#used";
+
+    /** What {@link #get} returns for a key with no geometry. */
+    static final long NONE = 0;
+    // Keeps every packed value apart from NONE
+    private static final long VERSION = 1L << 48;
+
+    private final Map<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> mPendingWrites = new LinkedHashMap<>();
+    private SharedPreferences mPrefs;
+    // Entries stored without a last use, e.g. by an older version, count as used first
+    private long mNextUse = 1;
+    private String mLastPutKey;
+
+    private int mHits;
+    private int mMisses;
+
+    FloatingGeometryStore(Context context) {
+        this(context, r -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "FloatingGeometry").start());
+    }
+
+    FloatingGeometryStore(Context context, Executor loader) {
+        final Context appContext = context.getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        loader.execute(() -> {
+            final SharedPreferences prefs =
+                    appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            final Map<String, ?> stored = prefs.getAll();
+            mainHandler.post(() -> onLoaded(prefs, stored));
+        });
+    }
+
+    private void onLoaded(SharedPreferences prefs, Map<String, ?> stored) {
+        mPrefs = prefs;
+        final List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : stored.entrySet()) {
+            if (entry.getValue() instanceof Long && !entry.getKey().endsWith(USED_SUFFIX)) {
+                keys.add(entry.getKey());
+            }
+        }
+        // getAll() has no order; put them back least recently used first
+        keys.sort(Comparator.comparingLong(key -> lastUse(stored, key)));
+        mEntries.clear();
+        for (String key : keys) {
+            mNextUse = Math.max(mNextUse, lastUse(stored, key) + 1);
+            if (!mPendingWrites.containsKey(key)) {
+                mEntries.put(key, (Long) stored.get(key));
+            }
+        }
+        // Saved while the file was read, so used after everything in it
+        final SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<String, Long> entry : mPendingWrites.entrySet()) {
+            mEntries.put(entry.getKey(), entry.getValue());
+            write(editor, entry.getKey(), entry.getValue());
+        }
+        mPendingWrites.clear();
+        trim(editor);
+        editor.apply();
+    }
+
+    private static long lastUse(Map<String, ?> stored, String key) {
+        final Object use = stored.get(key + USED_SUFFIX);
+        return use instanceof Long ? (Long) use : 0;
+    }
+
+    boolean isLoaded() {
+        return mPrefs != null;
+    }
+
+    static String key(String hostPackage, int orientation, int displayWidth,
+            int displayHeight) {
+        return hostPackage + '/' + orientation + '/' + displayWidth + 'x' + displayHeight;
+    }
+
+    /** @return the packed geometry for {@code key}, or {@link #NONE}. */
+    long get(String key) {
+        final Long packed = mEntries.get(key);
+        if (packed == null) {
+            mMisses++;
+            return NONE;
+        }
+        mHits++;
+        return packed;
+    }
+
+    void put(String key, float x, float y, float scale) {
+        final long packed = pack(x, y, scale);
+        final Long previous = mEntries.put(key, packed);
+        if (previous != null && previous == packed && key.equals(mLastPutKey)) {
+            // Neither the geometry nor the order of use changed
+            return;
+        }
+        mLastPutKey = key;
+        if (mPrefs == null) {
+            // Kept in the order of the puts
+            mPendingWrites.remove(key);
+            mPendingWrites.put(key, packed);
+            return;
+        }
+        final SharedPreferences.Editor editor = mPrefs.edit();
+        write(editor, key, packed);
+        trim(editor);
+        editor.apply();
+    }
+
+    private void write(SharedPreferences.Editor editor, String key, long packed) {
+        editor.putLong(key, packed).putLong(key + USED_SUFFIX, mNextUse++);
+    }
+
+    private void trim(SharedPreferences.Editor editor) {
+        final Iterator<String> eldest = mEntries.keySet().iterator();
+        for (int excess = mEntries.size() - MAX_ENTRIES; excess > 0; excess--) {
+            final String key = eldest.next();
+            editor.remove(key).remove(key + USED_SUFFIX);
+            eldest.remove();
+        }
+    }
+
+    static long pack(float x, float y, float scale) {
+        return VERSION
+                | (Math.round(x) & 0xffffL) << 32
+                | (Math.round(y) & 0xffffL) << 16
+                | (Math.round(scale * 1000f) & 0xffffL);
+    }
+
+    static float x(long packed) {
+        return (short) (packed >> 32);
+    }
+
+    static float y(long packed) {
+        return (short) (packed >> 16);
+    }
+
+    static float scale(long packed) {
+        return (packed & 0xffffL) / 1000f;
+    }
+
+    void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "Floating geometry: loaded=" + isLoaded() + " entries="
+                + mEntries.size() + " hits=" + mHits + " misses=" + mMisses);
+    }
+}
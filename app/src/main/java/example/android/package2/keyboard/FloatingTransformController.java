@@ -0,0 +1,141 @@
+package example.android.package2.keyboard;
+
+import android.view.Choreographer;
+
+import java.io.PrintWriter;
+
+import example.android.package2.logging.LatencyHistogram;
+
+/**
+ * Moves and scales the floating keyboard frame at most once per display frame.
+ *
+ * Touch events during a drag or resize arrive faster than frames on high sampling rate
+ * screens. Each one only records the latest target here; the next {@link Choreographer}
+ * frame hands the position and scale to the listener once, which writes them straight to
+ * the frame and its window and places the resize handles, so the work done follows the
+ * frame rate rather than the touch rate.
+ *
+ * Timings, printed by {@link SoftKeyboard#dump}:
+ * <ul>
+ * <li>input to frame: from the first move of a frame until it is applied;</li>
+ * <li>frame interval: between consecutive frames of a gesture, to spot dropped frames;</li>
+ * <li>apply: writing the properties and placing the handles.</li>
+ * </ul>
+ *
+ * Only used from the main thread.
+ */
+final class FloatingTransformController implements Choreographer.FrameCallback {
+
+    interface Listener {
+        /** Moves the frame to {@code x}, {@code y} on screen. */
+        void onMove(float x, float y);
+
+        void onScale(float scale);
+
+        /** Called after the moves and scales of a frame, once per applied frame. */
+        void onTransformApplied();
+    }
+
+    private final Listener mListener;
+
+    private float mTargetX;
+    private float mTargetY;
+    private float mTargetScale;
+    private boolean mHasPosition;
+    private boolean mHasScale;
+    private boolean mFramePosted;
+
+    private long mFirstMoveNanos;
+    private long mLastFrameNanos;
+    private long mMoves;
+    private long mFrames;
+
+    private final LatencyHistogram mInputToFrame = new LatencyHistogram("input to frame");
+    private final LatencyHistogram mFrameInterval = new LatencyHistogram("frame interval");
+    private final LatencyHistogram mApply = new LatencyHistogram("apply");
+
+    FloatingTransformController(Listener listener) {
+        mListener = listener;
+    }
+
+    void moveTo(float x, float y) {
+        mTargetX = x;
+        mTargetY = y;
+        mHasPosition = true;
+        schedule();
+    }
+
+    void scaleTo(float scale) {
+        mTargetScale = scale;
+        mHasScale = true;
+        schedule();
+    }
+
+    /** Applies what is pending right away, e.g. when the gesture ends. */
+    void flush() {
+        if (mFramePosted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mFramePosted = false;
+            apply();
+        }
+        // The next gesture should not count the pause before it as a frame interval
+        mLastFrameNanos = 0;
+    }
+
+    /** Forgets what is pending, e.g. when the keyboard docks mid-drag. */
+    void cancel() {
+        if (mFramePosted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mFramePosted = false;
+        }
+        mHasPosition = false;
+        mHasScale = false;
+        mLastFrameNanos = 0;
+    }
+
+    private void schedule() {
+        mMoves++;
+        if (!mFramePosted) {
+            mFramePosted = true;
+            mFirstMoveNanos = System.nanoTime();
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFramePosted = false;
+        if (mLastFrameNanos != 0) {
+            mFrameInterval.record(frameTimeNanos - mLastFrameNanos);
+        }
+        mLastFrameNanos = frameTimeNanos;
+        apply();
+    }
+
+    private void apply() {
+        if (!mHasPosition && !mHasScale) {
+            return;
+        }
+        final long start = System.nanoTime();
+        mInputToFrame.record(start - mFirstMoveNanos);
+        if (mHasPosition) {
+            mHasPosition = false;
+            mListener.onMove(mTargetX, mTargetY);
+        }
+        if (mHasScale) {
+            mHasScale = false;
+            mListener.onScale(mTargetScale);
+        }
+        mListener.onTransformApplied();
+        mFrames++;
+        mApply.recordSince(start);
+    }
+
+    void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "Floating transform: moves=" + mMoves + " frames=" + mFrames);
+        String stagePrefix = prefix + "  ";
+        mInputToFrame.dump(pw, stagePrefix);
+        mFrameInterval.dump(pw, stagePrefix);
+        mApply.dump(pw, stagePrefix);
+    }
+}
@@ -0,0 +1,132 @@
+package example.android.package2.keyboard;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Binder traffic to the editor, collected by {@link InstrumentedInputConnection}.
+ *
+ * For every InputConnection method it counts calls, wall time, the characters asked for
+ * (reads) or sent (writes) and the characters the editor returned. Counters are kept for
+ * the current input session and summed per host package, so slow hosts and chatty code
+ * paths both show up in {@link SoftKeyboard#dump}.
+ */
+final class InputConnectionStats {
+
+    static final int GET_TEXT_BEFORE_CURSOR = 0;
+    static final int GET_TEXT_AFTER_CURSOR = 1;
+    static final int GET_SELECTED_TEXT = 2;
+    static final int GET_CURSOR_CAPS_MODE = 3;
+    static final int GET_EXTRACTED_TEXT = 4;
+    static final int COMMIT_TEXT = 5;
+    static final int SET_COMPOSING_TEXT = 6;
+    static final int SET_COMPOSING_REGION = 7;
+    static final int FINISH_COMPOSING_TEXT = 8;
+    static final int DELETE_SURROUNDING_TEXT = 9;
+    static final int SET_SELECTION = 10;
+    static final int BEGIN_BATCH_EDIT = 11;
+    static final int END_BATCH_EDIT = 12;
+    static final int SEND_KEY_EVENT = 13;
+    static final int CLEAR_META_KEY_STATES = 14;
+    static final int PERFORM_EDITOR_ACTION = 15;
+    static final int REQUEST_CURSOR_UPDATES = 16;
+    static final int COMMIT_CONTENT = 17;
+
+    private static final String[] METHOD_NAMES = {
+            "getTextBeforeCursor", "getTextAfterCursor", "getSelectedText", "getCursorCapsMode",
+            "getExtractedText", "commitText", "setComposingText", "setComposingRegion",
+            "finishComposingText", "deleteSurroundingText", "setSelection", "beginBatchEdit",
+            "endBatchEdit", "sendKeyEvent", "clearMetaKeyStates", "performEditorAction",
+            "requestCursorUpdates", "commitContent",
+    };
+    private static final int METHOD_COUNT = METHOD_NAMES.length;
+
+    /** Host packages kept; the least recently used one is dropped beyond this. */
+    private static final int MAX_PACKAGES = 16;
+
+    private Counters mSession = new Counters("");
+    private Counters mPackage = mSession;
+    private final Map<String, Counters> mPackages =
+            new LinkedHashMap<String, Counters>(MAX_PACKAGES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Counters> eldest) {
+                    return size() > MAX_PACKAGES;
+                }
+            };
+
+    /** Starts counting a new input session for {@code packageName}. */
+    synchronized void onStartInput(String packageName) {
+        String name = packageName != null ? packageName : "";
+        mSession = new Counters(name);
+        mPackage = mPackages.get(name);
+        if (mPackage == null) {
+            mPackage = new Counters(name);
+            mPackages.put(name, mPackage);
+        }
+    }
+
+    /**
+     * @param requested characters asked for by a read, or sent by a write.
+     * @param returned characters the editor returned.
+     */
+    synchronized void record(int method, long startNanos, int requested, int returned) {
+        long nanos = System.nanoTime() - startNanos;
+        mSession.add(method, nanos, requested, returned);
+        if (mPackage != mSession) {
+            mPackage.add(method, nanos, requested, returned);
+        }
+    }
+
+    synchronized void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "InputConnection, current session (" + mSession.mName + "):");
+        mSession.dump(pw, prefix + "  ");
+        pw.println(prefix + "InputConnection, per host package:");
+        for (Counters counters : mPackages.values()) {
+            pw.println(prefix + "  " + counters.mName + ":");
+            counters.dump(pw, prefix + "    ");
+        }
+    }
+
+    private static final class Counters {
+        final String mName;
+        final long[] mCalls = new long[METHOD_COUNT];
+        final long[] mNanos = new long[METHOD_COUNT];
+        final long[] mMaxNanos = new long[METHOD_COUNT];
+        final long[] mRequested = new long[METHOD_COUNT];
+        final long[] mReturned = new long[METHOD_COUNT];
+
+        Counters(String name) {
+            mName = name;
+        }
+
+        void add(int method, long nanos, int requested, int returned) {
+            mCalls[method]++;
+            mNanos[method] += nanos;
+            if (nanos > mMaxNanos[method]) {
+                mMaxNanos[method] = nanos;
+            }
+            mRequested[method] += Math.max(0, requested);
+            mReturned[method] += Math.max(0, returned);
+        }
+
+        void dump(PrintWriter pw, String prefix) {
+            boolean any = false;
+            for (int i = 0; i < METHOD_COUNT; i++) {
+                if (mCalls[i] == 0) {
+                    continue;
+                }
+                any = true;
+                pw.println(String.format(Locale.US,
+                        "%s%-22s calls=%-6d total=%.1fms avg=%dus max=%dus requested=%d returned=%d",
+                        prefix, METHOD_NAMES[i], mCalls[i], mNanos[i] / 1_000_000.0,
+                        mNanos[i] / mCalls[i] / 1000, mMaxNanos[i] / 1000,
+                        mRequested[i], mReturned[i]));
+            }
+            if (!any) {
+                pw.println(prefix + "no calls");
+            }
+        }
+    }
+}
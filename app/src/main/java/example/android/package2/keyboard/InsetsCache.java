@@ -0,0 +1,95 @@
+package example.android.package2.keyboard;
+
+import android.graphics.Region;
+import android.inputmethodservice.InputMethodService;
+
+import java.io.PrintWriter;
+
+/**
+ * The insets {@link SoftKeyboard#onComputeInsets} last gave, with what they were computed
+ * from: the mode, and the floating touchable region or the heights of the keys and bars.
+ *
+ * The window asks for insets on every traversal, but they only change on some of them; the
+ * rest copy the cached values and touchable region out without allocating or logging. Only
+ * used from the main thread.
+ */
+final class InsetsCache {
+
+    private static final int MODE_NONE = 0;
+    private static final int MODE_DOCKED = 1;
+    private static final int MODE_FLOATING = 2;
+
+    private int mMode = MODE_NONE;
+    private int mInputHeight;
+    private int mEmojiRowHeight;
+    private int mTopBarHeight;
+
+    private int mContentTopInsets;
+    private int mRegionLeft;
+    private int mRegionTop;
+    private int mRegionRight;
+    private int mRegionBottom;
+    private final Region mTouchableRegion = new Region();
+
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * Takes the floating insets and touchable region unless they are the cached ones.
+     *
+     * @return whether they changed.
+     */
+    boolean updateFloating(int contentTopInsets, int left, int top, int right, int bottom) {
+        if (mMode == MODE_FLOATING && mContentTopInsets == contentTopInsets
+                && mRegionLeft == left && mRegionTop == top && mRegionRight == right
+                && mRegionBottom == bottom) {
+            mHits++;
+            return false;
+        }
+        mMisses++;
+        mMode = MODE_FLOATING;
+        mContentTopInsets = contentTopInsets;
+        mRegionLeft = left;
+        mRegionTop = top;
+        mRegionRight = right;
+        mRegionBottom = bottom;
+        mTouchableRegion.set(left, top, right, bottom);
+        return true;
+    }
+
+    /**
+     * Remembers the docked geometry; the insets themselves come from the framework.
+     *
+     * @return whether it changed since the last call.
+     */
+    boolean updateDocked(int inputHeight, int emojiRowHeight, int topBarHeight) {
+        if (mMode == MODE_DOCKED && mInputHeight == inputHeight
+                && mEmojiRowHeight == emojiRowHeight && mTopBarHeight == topBarHeight) {
+            mHits++;
+            return false;
+        }
+        mMisses++;
+        mMode = MODE_DOCKED;
+        mInputHeight = inputHeight;
+        mEmojiRowHeight = emojiRowHeight;
+        mTopBarHeight = topBarHeight;
+        return true;
+    }
+
+    void applyFloatingInsets(InputMethodService.Insets outInsets) {
+        outInsets.contentTopInsets = mContentTopInsets;
+        outInsets.visibleTopInsets = mContentTopInsets;
+        outInsets.touchableInsets = InputMethodService.Insets.TOUCHABLE_INSETS_REGION;
+        outInsets.touchableRegion.set(mTouchableRegion);
+    }
+
+    /** Forgets the geometry, e.g. when the display or the input view changed. */
+    void invalidate() {
+        mMode = MODE_NONE;
+    }
+
+    void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "Insets: hits=" + mHits + " misses=" + mMisses + " region="
+                + mTouchableRegion.getBounds());
+    }
+}
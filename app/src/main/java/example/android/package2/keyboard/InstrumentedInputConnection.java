@@ -0,0 +1,196 @@
+package example.android.package2.keyboard;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.view.KeyEvent;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputConnectionWrapper;
+import android.view.inputmethod.InputContentInfo;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * The InputConnection handed out by {@link SoftKeyboard#getCurrentInputConnection()}.
+ * Every call is forwarded to the editor and timed into {@link InputConnectionStats}.
+ *
+ * One instance is reused for the lifetime of the service; it is pointed at the editor's
+ * connection whenever that changes, so handing it out does not allocate.
+ */
+final class InstrumentedInputConnection extends InputConnectionWrapper {
+
+    private final InputConnectionStats mStats;
+    private InputConnection mTarget;
+
+    InstrumentedInputConnection(InputConnectionStats stats) {
+        super(null, true);
+        mStats = stats;
+    }
+
+    /** Returns this connection, forwarding to {@code target}. */
+    InputConnection wrap(InputConnection target) {
+        if (target != mTarget) {
+            mTarget = target;
+            setTarget(target);
+        }
+        return this;
+    }
+
+    // ============================================
+    // Reads
+
+    @Override
+    public CharSequence getTextBeforeCursor(int n, int flags) {
+        long start = System.nanoTime();
+        CharSequence text = super.getTextBeforeCursor(n, flags);
+        mStats.record(InputConnectionStats.GET_TEXT_BEFORE_CURSOR, start, n, length(text));
+        return text;
+    }
+
+    @Override
+    public CharSequence getTextAfterCursor(int n, int flags) {
+        long start = System.nanoTime();
+        CharSequence text = super.getTextAfterCursor(n, flags);
+        mStats.record(InputConnectionStats.GET_TEXT_AFTER_CURSOR, start, n, length(text));
+        return text;
+    }
+
+    @Override
+    public CharSequence getSelectedText(int flags) {
+        long start = System.nanoTime();
+        CharSequence text = super.getSelectedText(flags);
+        mStats.record(InputConnectionStats.GET_SELECTED_TEXT, start, 0, length(text));
+        return text;
+    }
+
+    @Override
+    public int getCursorCapsMode(int reqModes) {
+        long start = System.nanoTime();
+        int mode = super.getCursorCapsMode(reqModes);
+        mStats.record(InputConnectionStats.GET_CURSOR_CAPS_MODE, start, 0, 0);
+        return mode;
+    }
+
+    @Override
+    public ExtractedText getExtractedText(ExtractedTextRequest request, int flags) {
+        long start = System.nanoTime();
+        ExtractedText text = super.getExtractedText(request, flags);
+        mStats.record(InputConnectionStats.GET_EXTRACTED_TEXT, start,
+                request != null ? request.hintMaxChars : 0, text != null ? length(text.text) : 0);
+        return text;
+    }
+
+    // ============================================
+    // Edits
+
+    @Override
+    public boolean commitText(CharSequence text, int newCursorPosition) {
+        long start = System.nanoTime();
+        boolean result = super.commitText(text, newCursorPosition);
+        mStats.record(InputConnectionStats.COMMIT_TEXT, start, length(text), 0);
+        return result;
+    }
+
+    @Override
+    public boolean setComposingText(CharSequence text, int newCursorPosition) {
+        long start = System.nanoTime();
+        boolean result = super.setComposingText(text, newCursorPosition);
+        mStats.record(InputConnectionStats.SET_COMPOSING_TEXT, start, length(text), 0);
+        return result;
+    }
+
+    @Override
+    public boolean setComposingRegion(int start, int end) {
+        long startNanos = System.nanoTime();
+        boolean result = super.setComposingRegion(start, end);
+        mStats.record(InputConnectionStats.SET_COMPOSING_REGION, startNanos, 0, 0);
+        return result;
+    }
+
+    @Override
+    public boolean finishComposingText() {
+        long start = System.nanoTime();
+        boolean result = super.finishComposingText();
+        mStats.record(InputConnectionStats.FINISH_COMPOSING_TEXT, start, 0, 0);
+        return result;
+    }
+
+    @Override
+    public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+        long start = System.nanoTime();
+        boolean result = super.deleteSurroundingText(beforeLength, afterLength);
+        mStats.record(InputConnectionStats.DELETE_SURROUNDING_TEXT, start,
+                beforeLength + afterLength, 0);
+        return result;
+    }
+
+    @Override
+    public boolean setSelection(int start, int end) {
+        long startNanos = System.nanoTime();
+        boolean result = super.setSelection(start, end);
+        mStats.record(InputConnectionStats.SET_SELECTION, startNanos, 0, 0);
+        return result;
+    }
+
+    @Override
+    public boolean beginBatchEdit() {
+        long start = System.nanoTime();
+        boolean result = super.beginBatchEdit();
+        mStats.record(InputConnectionStats.BEGIN_BATCH_EDIT, start, 0, 0);
+        return result;
+    }
+
+    @Override
+    public boolean endBatchEdit() {
+        long start = System.nanoTime();
+        boolean result = super.endBatchEdit();
+        mStats.record(InputConnectionStats.END_BATCH_EDIT, start, 0, 0);
+        return result;
+    }
+
+    @Override
+    public boolean sendKeyEvent(KeyEvent event) {
+        long start = System.nanoTime();
+        boolean result = super.sendKeyEvent(event);
+        mStats.record(InputConnectionStats.SEND_KEY_EVENT, start, 0, 0);
+        return result;
+    }
+
+    @Override
+    public boolean clearMetaKeyStates(int states) {
+        long start = System.nanoTime();
+        boolean result = super.clearMetaKeyStates(states);
+        mStats.record(InputConnectionStats.CLEAR_META_KEY_STATES, start, 0, 0);
+        return result;
+    }
+
+    @Override
+    public boolean performEditorAction(int editorAction) {
+        long start = System.nanoTime();
+        boolean result = super.performEditorAction(editorAction);
+        mStats.record(InputConnectionStats.PERFORM_EDITOR_ACTION, start, 0, 0);
+        return result;
+    }
+
+    @Override
+    public boolean requestCursorUpdates(int cursorUpdateMode) {
+        long start = System.nanoTime();
+        boolean result = super.requestCursorUpdates(cursorUpdateMode);
+        mStats.record(InputConnectionStats.REQUEST_CURSOR_UPDATES, start, 0, 0);
+        return result;
+    }
+
+    @RequiresApi(Build.VERSION_CODES.N_MR1)
+    @Override
+    public boolean commitContent(InputContentInfo inputContentInfo, int flags, Bundle opts) {
+        long start = System.nanoTime();
+        boolean result = super.commitContent(inputContentInfo, flags, opts);
+        mStats.record(InputConnectionStats.COMMIT_CONTENT, start, 0, 0);
+        return result;
+    }
+
+    private static int length(CharSequence text) {
+        return text != null ? text.length() : 0;
+    }
+}
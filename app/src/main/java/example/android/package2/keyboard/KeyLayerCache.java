@@ -0,0 +1,163 @@
+package example.android.package2.keyboard;
+
+import android.graphics.Canvas;
+import android.inputmethodservice.Keyboard;
+
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fully drawn key layers for {@link LatinKeyboardView}, one per keyboard look: layout,
+ * shift state, enter key variant and width. Switching shift or moving to a field with
+ * another enter action swaps in a cached layer instead of drawing every key again.
+ *
+ * Layers are kept least recently used first and dropped once their total size passes the
+ * budget. Adding a layer for a new generation of a keyboard drops that keyboard's older
+ * layers. The layer being added is always kept, even if it alone is over budget.
+ *
+ * Only used from the main thread.
+ */
+final class KeyLayerCache {
+
+    /** A recorded or rendered image of all keys, in the keyboard view's coordinates. */
+    interface Layer {
+        void draw(Canvas canvas);
+
+        long getByteCount();
+
+        /** Frees the layer's memory; it is not drawn again. */
+        void release();
+    }
+
+    private final long mMaxBytes;
+    private long mBytes;
+    private final LinkedHashMap<LayerKey, Layer> mLayers = new LinkedHashMap<>(8, 0.75f, true);
+    // Reused for lookups so a hit does not allocate
+    private final LayerKey mProbe = new LayerKey();
+
+    private int mHits;
+    private int mMisses;
+    private int mEvictions;
+
+    KeyLayerCache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    Layer get(Keyboard keyboard, int generation, boolean shifted, int enterVariant, int width) {
+        Layer layer = mLayers.get(mProbe.set(keyboard, generation, shifted, enterVariant, width));
+        if (layer != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        return layer;
+    }
+
+    void put(Keyboard keyboard, int generation, boolean shifted, int enterVariant, int width,
+             Layer layer) {
+        // Layers of the keyboard from before its keys changed are never drawn again
+        evictOtherGenerations(keyboard, generation);
+        LayerKey key = new LayerKey().set(keyboard, generation, shifted, enterVariant, width);
+        Layer previous = mLayers.put(key, layer);
+        if (previous != null) {
+            remove(previous);
+        }
+        mBytes += layer.getByteCount();
+        trimToBudget(layer);
+    }
+
+    /** Drops the layers of {@code keyboard}, e.g. after one of its keys changed. */
+    void evict(Keyboard keyboard) {
+        Iterator<Map.Entry<LayerKey, Layer>> it = mLayers.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<LayerKey, Layer> entry = it.next();
+            if (entry.getKey().mKeyboard == keyboard) {
+                it.remove();
+                remove(entry.getValue());
+            }
+        }
+    }
+
+    private void evictOtherGenerations(Keyboard keyboard, int generation) {
+        Iterator<Map.Entry<LayerKey, Layer>> it = mLayers.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<LayerKey, Layer> entry = it.next();
+            LayerKey key = entry.getKey();
+            if (key.mKeyboard == keyboard && key.mGeneration != generation) {
+                it.remove();
+                remove(entry.getValue());
+            }
+        }
+    }
+
+    /** Drops every layer, e.g. when the width or the theme changed. */
+    void evictAll() {
+        for (Layer layer : mLayers.values()) {
+            remove(layer);
+        }
+        mLayers.clear();
+    }
+
+    void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "Key layers: " + mLayers.size() + " cached, " + mBytes / 1024
+                + "KB of " + mMaxBytes / 1024 + "KB, hits=" + mHits + " misses=" + mMisses
+                + " evictions=" + mEvictions);
+    }
+
+    private void trimToBudget(Layer keep) {
+        Iterator<Layer> it = mLayers.values().iterator();
+        while (mBytes > mMaxBytes && it.hasNext()) {
+            Layer layer = it.next();
+            if (layer != keep) {
+                it.remove();
+                remove(layer);
+            }
+        }
+    }
+
+    private void remove(Layer layer) {
+        mBytes -= layer.getByteCount();
+        mEvictions++;
+        layer.release();
+    }
+
+    private static final class LayerKey {
+        Keyboard mKeyboard;
+        int mGeneration;
+        boolean mShifted;
+        int mEnterVariant;
+        int mWidth;
+
+        LayerKey set(Keyboard keyboard, int generation, boolean shifted, int enterVariant,
+                     int width) {
+            mKeyboard = keyboard;
+            mGeneration = generation;
+            mShifted = shifted;
+            mEnterVariant = enterVariant;
+            mWidth = width;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LayerKey)) {
+                return false;
+            }
+            LayerKey other = (LayerKey) o;
+            return mKeyboard == other.mKeyboard && mGeneration == other.mGeneration
+                    && mShifted == other.mShifted && mEnterVariant == other.mEnterVariant
+                    && mWidth == other.mWidth;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(mKeyboard);
+            hash = 31 * hash + mGeneration;
+            hash = 31 * hash + (mShifted ? 1 : 0);
+            hash = 31 * hash + mEnterVariant;
+            return 31 * hash + mWidth;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.example.aosp_poc.R;
+
+/**
+ * Stacks its children top to bottom at its full width, the way the keyboard's bars sit above
+ * the keys, measuring each child once per pass.
+ *
+ * Children with {@code app:layout_floating="true"} are floating chrome such as the resize
+ * handles: they take no space in the stack, are measured at their own size whatever the
+ * container's, are laid out at the top left corner and are placed with
+ * {@link View#setX}/{@link View#setY}.
+ *
+ * Every child is measured with the same specs from pass to pass as long as the width stays
+ * the same, so when one bar is shown or hidden {@link View#measure} returns the cached size
+ * of the others instead of measuring them again.
+ */
+public class KeyboardContainer extends ViewGroup {
+
+    private static final int UNSPECIFIED_SPEC =
+            MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+
+    public KeyboardContainer(Context context) {
+        super(context);
+    }
+
+    public KeyboardContainer(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public KeyboardContainer(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+        final int contentWidth = Math.max(0, width - getPaddingLeft() - getPaddingRight());
+        // Children fit in the height we are offered; wrap_content ones size themselves
+        final int heightMode = MeasureSpec.getMode(heightMeasureSpec);
+        final int wrapHeightSpec = heightMode == MeasureSpec.UNSPECIFIED
+                ? UNSPECIFIED_SPEC
+                : MeasureSpec.makeMeasureSpec(MeasureSpec.getSize(heightMeasureSpec),
+                        MeasureSpec.AT_MOST);
+
+        int height = getPaddingTop() + getPaddingBottom();
+        int childStates = 0;
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            final View child = getChildAt(i);
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            if (lp.floating) {
+                // Not bounded by the container, it may be placed partly outside it
+                child.measure(childSpec(lp.width, contentWidth, UNSPECIFIED_SPEC),
+                        childSpec(lp.height, 0, UNSPECIFIED_SPEC));
+                continue;
+            }
+            final int childWidth = Math.max(0, contentWidth - lp.leftMargin - lp.rightMargin);
+            child.measure(childSpec(lp.width, childWidth, widthMeasureSpec),
+                    childSpec(lp.height, 0, wrapHeightSpec));
+            height += lp.topMargin + child.getMeasuredHeight() + lp.bottomMargin;
+            childStates = combineMeasuredStates(childStates, child.getMeasuredState());
+        }
+
+        setMeasuredDimension(resolveSizeAndState(width, widthMeasureSpec, childStates),
+                resolveSizeAndState(Math.max(height, getSuggestedMinimumHeight()),
+                        heightMeasureSpec, childStates << MEASURED_HEIGHT_STATE_SHIFT));
+    }
+
+    /**
+     * Spec for one dimension of a child: its own size if it has one, {@code matchSize} for
+     * match_parent, and {@code wrapSpec} for wrap_content.
+     */
+    private static int childSpec(int size, int matchSize, int wrapSpec) {
+        if (size >= 0) {
+            return MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY);
+        }
+        if (size == LayoutParams.MATCH_PARENT && matchSize > 0) {
+            return MeasureSpec.makeMeasureSpec(matchSize, MeasureSpec.EXACTLY);
+        }
+        return wrapSpec;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final int left = getPaddingLeft();
+        int top = getPaddingTop();
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            final View child = getChildAt(i);
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            final int childWidth = child.getMeasuredWidth();
+            final int childHeight = child.getMeasuredHeight();
+            if (lp.floating) {
+                child.layout(0, 0, childWidth, childHeight);
+                continue;
+            }
+            top += lp.topMargin;
+            child.layout(left + lp.leftMargin, top, left + lp.leftMargin + childWidth,
+                    top + childHeight);
+            top += childHeight + lp.bottomMargin;
+        }
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+
+    @Override
+    public LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new LayoutParams(getContext(), attrs);
+    }
+
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT);
+    }
+
+    @Override
+    protected LayoutParams generateLayoutParams(ViewGroup.LayoutParams p) {
+        if (p instanceof MarginLayoutParams) {
+            return new LayoutParams((MarginLayoutParams) p);
+        }
+        return new LayoutParams(p);
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
+        return p instanceof LayoutParams;
+    }
+
+    public static class LayoutParams extends MarginLayoutParams {
+        /** Floating chrome, outside the stack and placed by translation. */
+        public boolean floating;
+
+        public LayoutParams(Context c, AttributeSet attrs) {
+            super(c, attrs);
+            final TypedArray a = c.obtainStyledAttributes(attrs,
+                    R.styleable.KeyboardContainer_Layout);
+            floating = a.getBoolean(R.styleable.KeyboardContainer_Layout_layout_floating,
+                    false);
+            a.recycle();
+        }
+
+        public LayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public LayoutParams(MarginLayoutParams source) {
+            super(source);
+        }
+
+        public LayoutParams(ViewGroup.LayoutParams source) {
+            super(source);
+        }
+    }
+}
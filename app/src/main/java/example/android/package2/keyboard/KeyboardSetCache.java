@@ -0,0 +1,101 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+import android.view.inputmethod.InputMethodSubtype;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The keyboards built for the last few configurations, keyed by width, density and
+ * subtype. Rotating, folding or entering split-screen and coming back then reuses the
+ * keyboards built before instead of building all three again.
+ *
+ * Only used from the main thread.
+ */
+final class KeyboardSetCache {
+
+    /** The keyboards {@link SoftKeyboard} switches between for one configuration. */
+    static final class KeyboardSet {
+        final LatinKeyboard qwerty;
+        final LatinKeyboard symbols;
+        final LatinKeyboard symbolsShifted;
+
+        KeyboardSet(Context displayContext) {
+            qwerty = new LatinKeyboard(displayContext, CompiledKeyboardLayouts.QWERTY);
+            symbols = new LatinKeyboard(displayContext, CompiledKeyboardLayouts.SYMBOLS);
+            symbolsShifted = new LatinKeyboard(displayContext,
+                    CompiledKeyboardLayouts.SYMBOLS_SHIFT);
+        }
+
+        void setLanguageSwitchKeyVisibility(boolean visible) {
+            qwerty.setLanguageSwitchKeyVisibility(visible);
+            symbols.setLanguageSwitchKeyVisibility(visible);
+            symbolsShifted.setLanguageSwitchKeyVisibility(visible);
+        }
+    }
+
+    private final LinkedHashMap<SetKey, KeyboardSet> mSets;
+
+    private int mHits;
+    private int mMisses;
+
+    KeyboardSetCache(final int maxSets) {
+        mSets = new LinkedHashMap<SetKey, KeyboardSet>(maxSets + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SetKey, KeyboardSet> eldest) {
+                return size() > maxSets;
+            }
+        };
+    }
+
+    KeyboardSet get(int width, int densityDpi, InputMethodSubtype subtype) {
+        KeyboardSet set = mSets.get(new SetKey(width, densityDpi, subtype));
+        if (set != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        return set;
+    }
+
+    void put(int width, int densityDpi, InputMethodSubtype subtype, KeyboardSet set) {
+        mSets.put(new SetKey(width, densityDpi, subtype), set);
+    }
+
+    void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "Keyboard sets: " + mSets.size() + " cached, hits=" + mHits
+                + " misses=" + mMisses);
+    }
+
+    private static final class SetKey {
+        final int mWidth;
+        final int mDensityDpi;
+        final InputMethodSubtype mSubtype;
+
+        SetKey(int width, int densityDpi, InputMethodSubtype subtype) {
+            mWidth = width;
+            mDensityDpi = densityDpi;
+            mSubtype = subtype;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SetKey)) {
+                return false;
+            }
+            SetKey other = (SetKey) o;
+            return mWidth == other.mWidth && mDensityDpi == other.mDensityDpi
+                    && Objects.equals(mSubtype, other.mSubtype);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = mWidth;
+            hash = 31 * hash + mDensityDpi;
+            return 31 * hash + Objects.hashCode(mSubtype);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package example.android.package2.keyboard;
+
+import java.io.PrintWriter;
+
+import example.android.package2.logging.LatencyHistogram;
+
+/**
+ * Per-stage latencies of a soft key press, printed by {@link SoftKeyboard#dump}.
+ *
+ * <ul>
+ * <li>press to commit: from {@code onPress} (touch down) until the edit for the key has
+ * been handed to the editor;</li>
+ * <li>decode: from {@code onKey} until the edit is sent (classification, capitalization);</li>
+ * <li>commit IPC: the InputConnection calls carrying the edit;</li>
+ * <li>emoji: updating the emoji row for the word around the cursor;</li>
+ * <li>autofill: {@code AutofillManager.onFieldChanged}.</li>
+ * </ul>
+ *
+ * All calls come from the main thread and only read the clock and bump a histogram bucket.
+ */
+final class KeystrokeMetrics {
+
+    private final LatencyHistogram mPressToCommit = new LatencyHistogram("press to commit");
+    private final LatencyHistogram mDecode = new LatencyHistogram("decode");
+    private final LatencyHistogram mCommit = new LatencyHistogram("commit IPC");
+    private final LatencyHistogram mEmoji = new LatencyHistogram("emoji");
+    private final LatencyHistogram mAutofill = new LatencyHistogram("autofill");
+
+    private long mPressNanos;
+    private long mKeyNanos;
+    private long mCommitNanos;
+
+    static long now() {
+        return System.nanoTime();
+    }
+
+    void onPress() {
+        mPressNanos = now();
+    }
+
+    void onKeyStart() {
+        mKeyNanos = now();
+        mCommitNanos = 0;
+    }
+
+    /** The key is decoded; the edit is about to go to the editor. */
+    void onCommitStart() {
+        mCommitNanos = now();
+        if (mKeyNanos != 0) {
+            mDecode.record(mCommitNanos - mKeyNanos);
+        }
+    }
+
+    /** The editor calls for the key returned. */
+    void onCommitEnd() {
+        if (mCommitNanos == 0) {
+            return;
+        }
+        long end = now();
+        mCommit.record(end - mCommitNanos);
+        if (mPressNanos != 0) {
+            mPressToCommit.record(end - mPressNanos);
+            // Key repeat commits again without another press
+            mPressNanos = 0;
+        }
+        mKeyNanos = 0;
+        mCommitNanos = 0;
+    }
+
+    void recordEmoji(long startNanos) {
+        mEmoji.recordSince(startNanos);
+    }
+
+    void recordAutofill(long startNanos) {
+        mAutofill.recordSince(startNanos);
+    }
+
+    void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "Keystroke latency:");
+        String stagePrefix = prefix + "  ";
+        mPressToCommit.dump(pw, stagePrefix);
+        mDecode.dump(pw, stagePrefix);
+        mCommit.dump(pw, stagePrefix);
+        mEmoji.dump(pw, stagePrefix);
+        mAutofill.dump(pw, stagePrefix);
+    }
+}
@@ -19,12 +19,13 @@ package example.android.package2.keyboard;
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.XmlResourceParser;
-import android.graphics.drawable.Drawable;
 import android.inputmethodservice.Keyboard;
 import android.view.inputmethod.EditorInfo;
 
 import com.example.aosp_poc.R;
 
+import java.util.List;
+
 public class LatinKeyboard extends Keyboard {
 
     private Key mEnterKey;
@@ -52,11 +53,41 @@ public class LatinKeyboard extends Keyboard {
      * {@link #mLanguageSwitchKey} is changed.
      */
     private Key mSavedLanguageSwitchKey;
+    /** The layouts start with the language switch key shown. */
+    private boolean mLanguageSwitchKeyVisible = true;
+    /** Bumped when a key changes other than through shift or the enter key variant. */
+    private int mGeneration;
+    /** The ime action the enter key currently shows, see {@link #setImeOptions}. */
+    private int mEnterKeyVariant = EditorInfo.IME_ACTION_UNSPECIFIED;
+    /** The subtype icon on the space key, 0 for the layout's own. */
+    private int mSpaceIconResId;
+
+    /** Set for keyboards built from a {@link CompiledKeyboardLayout}, see {@link #getHeight}. */
+    private boolean mCompiled;
+    private int mCompiledWidth;
+    private int mCompiledHeight;
+    private Key mShiftKey;
+
+    /** Bumped when keys moved or were resized; icons and labels do not count. */
+    private int mLayoutGeneration;
+    private KeyProximityGrid mProximityGrid;
+    private int mProximityGridGeneration;
 
     public LatinKeyboard(Context context, int xmlLayoutResId) {
         super(context, xmlLayoutResId);
     }
 
+    /**
+     * Builds the keyboard from a layout compiled at build time, which skips parsing its XML.
+     * The keys match what {@link #LatinKeyboard(Context, int)} creates from the same XML.
+     */
+    LatinKeyboard(Context context, CompiledKeyboardLayout layout) {
+        // An empty layout: it only sets the defaults Keyboard keeps to itself
+        super(context, R.xml.keyboard_template);
+        mCompiled = true;
+        layout.addKeys(this, context.getResources());
+    }
+
     public LatinKeyboard(Context context, int layoutTemplateResId,
                          CharSequence characters, int columns, int horizontalPadding) {
         super(context, layoutTemplateResId, characters, columns, horizontalPadding);
@@ -80,11 +111,65 @@ public class LatinKeyboard extends Keyboard {
         return key;
     }
 
+    /** The compiled counterpart of {@link #createKeyFromXml}, called for every key added. */
+    void onCompiledKey(LatinKey key, Row parent) {
+        if (key.codes[0] == 10) {
+            mEnterKey = key;
+        } else if (key.codes[0] == ' ') {
+            mSpaceKey = key;
+        } else if (key.codes[0] == Keyboard.KEYCODE_MODE_CHANGE) {
+            mModeChangeKey = key;
+            mSavedModeChangeKey = key.copy(parent);
+        } else if (key.codes[0] == LatinKeyboardView.KEYCODE_LANGUAGE_SWITCH) {
+            mLanguageSwitchKey = key;
+            mSavedLanguageSwitchKey = key.copy(parent);
+        } else if (key.codes[0] == Keyboard.KEYCODE_SHIFT && mShiftKey == null) {
+            mShiftKey = key;
+        }
+    }
+
+    void setCompiledSize(int width, int height) {
+        mCompiledWidth = width;
+        mCompiledHeight = height;
+    }
+
+    // Keyboard keeps its size and shift key in private fields that only its XML parsing
+    // fills in, so compiled keyboards answer for them here.
+
+    @Override
+    public int getHeight() {
+        return mCompiled ? mCompiledHeight : super.getHeight();
+    }
+
+    @Override
+    public int getMinWidth() {
+        return mCompiled ? mCompiledWidth : super.getMinWidth();
+    }
+
+    @Override
+    public boolean setShifted(boolean shiftState) {
+        if (mCompiled && mShiftKey != null) {
+            mShiftKey.on = shiftState;
+        }
+        return super.setShifted(shiftState);
+    }
+
+    @Override
+    public int getShiftKeyIndex() {
+        return mCompiled ? getKeys().indexOf(mShiftKey) : super.getShiftKeyIndex();
+    }
+
     /**
      * Dynamically change the visibility of the language switch key (a.k.a. globe key).
      * @param visible True if the language switch key should be visible.
      */
     void setLanguageSwitchKeyVisibility(boolean visible) {
+        if (visible == mLanguageSwitchKeyVisible) {
+            return;
+        }
+        mLanguageSwitchKeyVisible = visible;
+        mGeneration++;
+        mLayoutGeneration++;
         if (visible) {
             // The language switch key should be visible. Restore the size of the mode change key
             // and language switch key using the saved layout.
@@ -112,7 +197,8 @@ public class LatinKeyboard extends Keyboard {
             return;
         }
 
-        switch (options&(EditorInfo.IME_MASK_ACTION|EditorInfo.IME_FLAG_NO_ENTER_ACTION)) {
+        int action = options&(EditorInfo.IME_MASK_ACTION|EditorInfo.IME_FLAG_NO_ENTER_ACTION);
+        switch (action) {
             case EditorInfo.IME_ACTION_GO:
                 mEnterKey.iconPreview = null;
                 mEnterKey.icon = null;
@@ -135,30 +221,106 @@ public class LatinKeyboard extends Keyboard {
             default:
                 mEnterKey.icon = res.getDrawable(R.drawable.sym_keyboard_return);
                 mEnterKey.label = null;
+                // Every other action looks the same
+                action = EditorInfo.IME_ACTION_UNSPECIFIED;
                 break;
         }
+        mEnterKeyVariant = action;
+    }
+
+    int getEnterKeyVariant() {
+        return mEnterKeyVariant;
     }
 
-    void setSpaceIcon(final Drawable icon) {
-        if (mSpaceKey != null) {
-            mSpaceKey.icon = icon;
+    /** Changes whenever keys were changed in a way shift and enter state do not capture. */
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    /** Key lookup for touches, rebuilt when keys moved, e.g. after the globe key was hidden. */
+    KeyProximityGrid getProximityGrid() {
+        if (mProximityGrid == null || mProximityGridGeneration != mLayoutGeneration) {
+            final List<Key> keys = getKeys();
+            final int count = keys.size();
+            final int[] x = new int[count];
+            final int[] y = new int[count];
+            final int[] widths = new int[count];
+            final int[] heights = new int[count];
+            final int[] edgeFlags = new int[count];
+            for (int i = 0; i < count; i++) {
+                final Key key = keys.get(i);
+                x[i] = key.x;
+                y[i] = key.y;
+                if (key.codes[0] == KEYCODE_CANCEL) {
+                    // Same target as LatinKey.isInside
+                    y[i] += LatinKey.CANCEL_KEY_OFFSET;
+                }
+                widths[i] = key.width;
+                heights[i] = key.height;
+                edgeFlags[i] = key.edgeFlags;
+            }
+            // Same threshold as Keyboard.getNearestKeys: 1.8 default key widths
+            mProximityGrid = new KeyProximityGrid(getMinWidth(), getHeight(), x, y, widths,
+                    heights, edgeFlags, (int) (getKeyWidth() * 1.8f));
+            mProximityGridGeneration = mLayoutGeneration;
+        }
+        return mProximityGrid;
+    }
+
+    /**
+     * Shows the icon of the current subtype on the space key.
+     * @return true if the icon changed and the keyboard has to be drawn again.
+     */
+    boolean setSpaceIcon(Resources res, int iconResId) {
+        if (mSpaceKey == null || iconResId == mSpaceIconResId) {
+            return false;
         }
+        mSpaceIconResId = iconResId;
+        mSpaceKey.icon = res.getDrawable(iconResId);
+        mGeneration++;
+        return true;
     }
 
     static class LatinKey extends Key {
 
+        /** How far down the close key's touch target is moved. */
+        static final int CANCEL_KEY_OFFSET = 10;
+
         public LatinKey(Resources res, Row parent, int x, int y,
                         XmlResourceParser parser) {
             super(res, parent, x, y, parser);
         }
 
+        LatinKey(Row parent) {
+            super(parent);
+        }
+
+        /** A detached copy of the attributes a second parse of the same XML would give. */
+        LatinKey copy(Row parent) {
+            LatinKey copy = new LatinKey(parent);
+            copy.codes = codes;
+            copy.label = label;
+            copy.icon = icon;
+            copy.iconPreview = iconPreview;
+            copy.width = width;
+            copy.height = height;
+            copy.gap = gap;
+            copy.x = x;
+            copy.y = y;
+            copy.edgeFlags = edgeFlags;
+            copy.sticky = sticky;
+            copy.modifier = modifier;
+            copy.repeatable = repeatable;
+            return copy;
+        }
+
         /**
          * Overriding this method so that we can reduce the target area for the key that
          * closes the keyboard. 
          */
         @Override
         public boolean isInside(int x, int y) {
-            return super.isInside(x, codes[0] == KEYCODE_CANCEL ? y - 10 : y);
+            return super.isInside(x, codes[0] == KEYCODE_CANCEL ? y - CANCEL_KEY_OFFSET : y);
         }
     }
 
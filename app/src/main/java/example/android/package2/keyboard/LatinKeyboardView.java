@@ -1,39 +1,790 @@
 package example.android.package2.keyboard;
 
 import android.content.Context;
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RecordingCanvas;
+import android.graphics.Rect;
+import android.graphics.RenderNode;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.Keyboard.Key;
 import android.inputmethodservice.KeyboardView;
+import android.os.Build;
+import android.os.Bundle;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.accessibility.AccessibilityManager;
 import android.view.inputmethod.InputMethodSubtype;
+import android.widget.Button;
 
-public class LatinKeyboardView extends KeyboardView {
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.accessibility.AccessibilityNodeInfoCompat;
+import androidx.customview.widget.ExploreByTouchHelper;
+
+import com.example.aosp_poc.R;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Draws a {@link LatinKeyboard} and turns touches into key events for the
+ * {@link KeyboardView.OnKeyboardActionListener}.
+ *
+ * Replaces the framework KeyboardView, which paints every key into a software bitmap and
+ * repaints all of them on any change. Here all keys in their resting state form a layer,
+ * recorded once into a {@link RenderNode} (Android 10 and later, hardware accelerated) or
+ * rendered into a bitmap otherwise, and kept in a {@link KeyLayerCache} per shift state and
+ * enter key variant. A frame draws the layer and then the pressed key on top, so a key
+ * press draws one key and a shift change swaps layers.
+ *
+ * Touch handling covers what the keyboards use: press and release, sliding between keys,
+ * key repeat, long press, rollover to a second finger and the four swipes. For touch
+ * exploration every key is a virtual view, see {@link KeyAccessibilityHelper}.
+ *
+ * Unlike KeyboardView, a pressed key shows no preview above it, and there are no popup
+ * keyboards; only the pressed look of the key itself changes.
+ */
+public class LatinKeyboardView extends View {
 
     static final int KEYCODE_OPTIONS = -100;
     // TODO: Move this into android.inputmethodservice.Keyboard
     static final int KEYCODE_LANGUAGE_SWITCH = -101;
 
+    private static final int NOT_A_KEY = -1;
+    private static final int REPEAT_START_DELAY = 400;
+    private static final int REPEAT_INTERVAL = 50;
+    private static final int MAX_NEAREST_KEYS = 8;
+
+    private Keyboard mKeyboard;
+    private Key[] mKeys = new Key[0];
+    private final KeyProximityGrid.Proximity mTouchProximity =
+            new KeyProximityGrid.Proximity(MAX_NEAREST_KEYS);
+    private KeyboardView.OnKeyboardActionListener mKeyboardActionListener;
+
+    // ============================================
+    // Drawing
+
+    private final Drawable mKeyBackground;
+    private final Rect mKeyPadding = new Rect();
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float mKeyTextSize;
+    private final float mLabelTextSize;
+
+    /** Upper case label per key, and the label it was made from. */
+    private CharSequence[] mShiftedLabels = new CharSequence[0];
+    private CharSequence[] mShiftedLabelSources = new CharSequence[0];
+
+    /** Enough for a few bitmap layers of a full width phone keyboard; display lists are tiny. */
+    private static final long LAYER_CACHE_BYTES = 8L * 1024 * 1024;
+    private final KeyLayerCache mLayers = new KeyLayerCache(LAYER_CACHE_BYTES);
+    private boolean mHardwareLayers;
+    /** Configuration the cached layers were drawn for. */
+    private final Configuration mLayerConfiguration;
+
+    // ============================================
+    // Touch
+
+    private int mActivePointerId = -1;
+    private int mCurrentKey = NOT_A_KEY;
+    private int mPressedCode;
+    /** onPress was sent for the key in progress, so onRelease is owed. */
+    private boolean mPressSent;
+    private float mDownX;
+    private float mDownY;
+    /** The key already fired by repeat or long press; release must not fire it again. */
+    private boolean mKeyHandled;
+    private VelocityTracker mVelocityTracker;
+    private final int mSwipeThreshold;
+
+    private final KeyAccessibilityHelper mAccessibilityHelper;
+    private final AccessibilityManager mAccessibilityManager;
+
+    private final Runnable mRepeatKey = new Runnable() {
+        @Override
+        public void run() {
+            if (mCurrentKey != NOT_A_KEY) {
+                sendKey(mKeys[mCurrentKey]);
+                postDelayed(this, REPEAT_INTERVAL);
+            }
+        }
+    };
+
+    private final Runnable mLongPress = new Runnable() {
+        @Override
+        public void run() {
+            if (mCurrentKey != NOT_A_KEY && onLongPress(mKeys[mCurrentKey])) {
+                mKeyHandled = true;
+                setKeyPressed(mCurrentKey, false);
+                mCurrentKey = NOT_A_KEY;
+            }
+        }
+    };
+
     public LatinKeyboardView(Context context, AttributeSet attrs) {
-        super(context, attrs);
+        this(context, attrs, 0);
     }
 
     public LatinKeyboardView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
+        mKeyBackground = context.getDrawable(R.drawable.btn_keyboard_key).mutate();
+        mKeyBackground.getPadding(mKeyPadding);
+        mKeyTextSize = getResources().getDimension(R.dimen.key_text_size);
+        mLabelTextSize = getResources().getDimension(R.dimen.key_label_text_size);
+        mPaint.setTextAlign(Paint.Align.CENTER);
+        mPaint.setColor(context.getColor(R.color.key_text));
+        mPaint.setShadowLayer(2.75f, 0, 0, context.getColor(R.color.key_text_shadow));
+        mSwipeThreshold = (int) (500 * getResources().getDisplayMetrics().density);
+        if (getBackground() == null) {
+            setBackgroundColor(context.getColor(R.color.keyboard_background));
+        }
+        mLayerConfiguration = new Configuration(getResources().getConfiguration());
+        mAccessibilityManager = context.getSystemService(AccessibilityManager.class);
+        mAccessibilityHelper = new KeyAccessibilityHelper(this);
+        ViewCompat.setAccessibilityDelegate(this, mAccessibilityHelper);
+    }
+
+    // ============================================
+    // Keyboard
+
+    public void setOnKeyboardActionListener(KeyboardView.OnKeyboardActionListener listener) {
+        mKeyboardActionListener = listener;
+    }
+
+    protected KeyboardView.OnKeyboardActionListener getOnKeyboardActionListener() {
+        return mKeyboardActionListener;
+    }
+
+    public void setKeyboard(Keyboard keyboard) {
+        cancelKey();
+        mKeyboard = keyboard;
+        List<Key> keys = keyboard.getKeys();
+        mKeys = keys.toArray(new Key[0]);
+        mShiftedLabels = new CharSequence[mKeys.length];
+        mShiftedLabelSources = new CharSequence[mKeys.length];
+        // Layers of this keyboard stay cached; its look is part of the cache key
+        requestLayout();
+        invalidate();
+        mAccessibilityHelper.invalidateRoot();
+    }
+
+    public Keyboard getKeyboard() {
+        return mKeyboard;
+    }
+
+    /**
+     * Sets the shift state of the keyboard and shows the keys for it.
+     * @return true if the state changed.
+     */
+    public boolean setShifted(boolean shifted) {
+        if (mKeyboard != null && mKeyboard.setShifted(shifted)) {
+            invalidateShiftKeys();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isShifted() {
+        return mKeyboard != null && mKeyboard.isShifted();
+    }
+
+    /**
+     * Shows the keys for the shift state, after it was changed on the keyboard. The layer
+     * for the state is reused when it was drawn before.
+     */
+    public void invalidateShiftKeys() {
+        invalidate();
+        // Letter keys are read out in the new case
+        mAccessibilityHelper.invalidateRoot();
+    }
+
+    /** Redraws every key, after keys of the current keyboard were changed directly. */
+    public void invalidateAllKeys() {
+        if (mKeyboard != null) {
+            mLayers.evict(mKeyboard);
+        }
+        invalidate();
+        mAccessibilityHelper.invalidateRoot();
+    }
+
+    void setSubtypeOnSpaceKey(final InputMethodSubtype subtype) {
+        if (subtype == null) {
+            // No enabled subtype, e.g. right after install; keep the default space key
+            return;
+        }
+        final LatinKeyboard keyboard = (LatinKeyboard)getKeyboard();
+        // Called on every field focus, mostly with the icon already shown
+        if (keyboard.setSpaceIcon(getResources(), subtype.getIconResId())) {
+            // New generation of the keyboard; the cache drops the old one's layers
+            invalidate();
+        }
+    }
+
+    /** Drops any key in progress, e.g. when the keyboard is hidden. */
+    public void closing() {
+        cancelKey();
+    }
+
+    /** There are no popups to dismiss, so back is always left to the service. */
+    public boolean handleBack() {
+        return false;
     }
 
-    @Override
     protected boolean onLongPress(Key key) {
         if (key.codes[0] == Keyboard.KEYCODE_CANCEL) {
             getOnKeyboardActionListener().onKey(KEYCODE_OPTIONS, null);
             return true;
+        }
+        return false;
+    }
+
+    // ============================================
+    // Drawing
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int paddingWidth = getPaddingLeft() + getPaddingRight();
+        int paddingHeight = getPaddingTop() + getPaddingBottom();
+        if (mKeyboard == null) {
+            setMeasuredDimension(paddingWidth, paddingHeight);
+            return;
+        }
+        int width = mKeyboard.getMinWidth() + paddingWidth;
+        if (MeasureSpec.getSize(widthMeasureSpec) < width + 10) {
+            width = MeasureSpec.getSize(widthMeasureSpec);
+        }
+        setMeasuredDimension(width, mKeyboard.getHeight() + paddingHeight);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mKeyboard == null || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        boolean hardware = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                && canvas.isHardwareAccelerated();
+        if (hardware != mHardwareLayers) {
+            mLayers.evictAll();
+            mHardwareLayers = hardware;
+        }
+
+        int generation = 0;
+        int enterVariant = 0;
+        if (mKeyboard instanceof LatinKeyboard) {
+            generation = ((LatinKeyboard) mKeyboard).getGeneration();
+            enterVariant = ((LatinKeyboard) mKeyboard).getEnterKeyVariant();
+        }
+        boolean shifted = mKeyboard.isShifted();
+        int width = getWidth();
+        KeyLayerCache.Layer layer = mLayers.get(mKeyboard, generation, shifted, enterVariant, width);
+        if (layer == null) {
+            layer = hardware ? new RenderNodeLayer(this) : new BitmapLayer(this);
+            mLayers.put(mKeyboard, generation, shifted, enterVariant, width, layer);
+        }
+        layer.draw(canvas);
+
+        // The pressed key goes over its resting look in the layer
+        if (mCurrentKey != NOT_A_KEY && mKeys[mCurrentKey].pressed) {
+            drawKeyAt(canvas, mCurrentKey, true);
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mLayers.evictAll();
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        int changes = mLayerConfiguration.diff(newConfig);
+        if ((changes & (ActivityInfo.CONFIG_UI_MODE | ActivityInfo.CONFIG_DENSITY
+                | ActivityInfo.CONFIG_FONT_SCALE | ActivityInfo.CONFIG_ASSETS_PATHS)) != 0) {
+            // Theme, density or text size changed: the layers show the old look
+            mLayers.evictAll();
+            invalidate();
+        }
+        mLayerConfiguration.setTo(newConfig);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelKey();
+        mLayers.evictAll();
+    }
+
+    void dump(PrintWriter pw, String prefix) {
+        mLayers.dump(pw, prefix);
+    }
+
+    /** Draws every key in its resting state, in view coordinates. */
+    private void drawKeys(Canvas canvas) {
+        for (int i = 0; i < mKeys.length; i++) {
+            drawKeyAt(canvas, i, false);
+        }
+    }
+
+    private void drawKeyAt(Canvas canvas, int index, boolean pressed) {
+        Key key = mKeys[index];
+        int save = canvas.save();
+        canvas.translate(getPaddingLeft() + key.x, getPaddingTop() + key.y);
+        drawKey(canvas, index, pressed);
+        canvas.restoreToCount(save);
+    }
+
+    /** Draws key {@code index} with its top left corner at the origin. */
+    private void drawKey(Canvas canvas, int index, boolean pressed) {
+        Key key = mKeys[index];
+        if (key.width <= 0 || key.height <= 0) {
+            return;
+        }
+        boolean wasPressed = key.pressed;
+        key.pressed = pressed;
+        mKeyBackground.setState(key.getCurrentDrawableState());
+        key.pressed = wasPressed;
+        mKeyBackground.setBounds(0, 0, key.width, key.height);
+        mKeyBackground.draw(canvas);
+
+        CharSequence label = getLabel(index);
+        if (label != null) {
+            if (label.length() > 1 && key.codes.length < 2) {
+                mPaint.setTextSize(mLabelTextSize);
+                mPaint.setTypeface(Typeface.DEFAULT_BOLD);
+            } else {
+                mPaint.setTextSize(mKeyTextSize);
+                mPaint.setTypeface(Typeface.DEFAULT);
+            }
+            float x = (key.width - mKeyPadding.left - mKeyPadding.right) / 2f + mKeyPadding.left;
+            float y = (key.height - mKeyPadding.top - mKeyPadding.bottom) / 2f
+                    + (mPaint.getTextSize() - mPaint.descent()) / 2f + mKeyPadding.top;
+            canvas.drawText(label, 0, label.length(), x, y, mPaint);
+        } else if (key.icon != null) {
+            Drawable icon = key.icon;
+            int width = icon.getIntrinsicWidth();
+            int height = icon.getIntrinsicHeight();
+            int left = (key.width - mKeyPadding.left - mKeyPadding.right - width) / 2
+                    + mKeyPadding.left;
+            int top = (key.height - mKeyPadding.top - mKeyPadding.bottom - height) / 2
+                    + mKeyPadding.top;
+            icon.setBounds(left, top, left + width, top + height);
+            icon.draw(canvas);
+        }
+    }
+
+    /** The label to draw, upper cased while shifted the same way KeyboardView did. */
+    private CharSequence getLabel(int index) {
+        CharSequence label = mKeys[index].label;
+        if (!mKeyboard.isShifted() || !isCaseSensitive(label)) {
+            return label;
+        }
+        if (mShiftedLabelSources[index] != label) {
+            mShiftedLabelSources[index] = label;
+            mShiftedLabels[index] = label.toString().toUpperCase();
+        }
+        return mShiftedLabels[index];
+    }
+
+    private static boolean isCaseSensitive(CharSequence label) {
+        return label != null && label.length() > 0 && label.length() < 3
+                && Character.isLowerCase(label.charAt(0));
+    }
+
+    /** The keys recorded into a display list, replayed by the render thread. */
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private static final class RenderNodeLayer implements KeyLayerCache.Layer {
+        private final RenderNode mNode = new RenderNode("keys");
+
+        RenderNodeLayer(LatinKeyboardView view) {
+            mNode.setPosition(0, 0, view.getWidth(), view.getHeight());
+            RecordingCanvas canvas = mNode.beginRecording();
+            try {
+                view.drawKeys(canvas);
+            } finally {
+                mNode.endRecording();
+            }
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            canvas.drawRenderNode(mNode);
+        }
+
+        @Override
+        public long getByteCount() {
+            return mNode.computeApproximateMemoryUsage();
+        }
+
+        @Override
+        public void release() {
+            mNode.discardDisplayList();
+        }
+    }
+
+    /** The keys rendered into a bitmap, for software canvases and older releases. */
+    private static final class BitmapLayer implements KeyLayerCache.Layer {
+        private final Bitmap mBitmap;
+
+        BitmapLayer(LatinKeyboardView view) {
+            mBitmap = Bitmap.createBitmap(view.getWidth(), view.getHeight(),
+                    Bitmap.Config.ARGB_8888);
+            view.drawKeys(new Canvas(mBitmap));
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            canvas.drawBitmap(mBitmap, 0, 0, null);
+        }
+
+        @Override
+        public long getByteCount() {
+            return mBitmap.getAllocationByteCount();
+        }
+
+        @Override
+        public void release() {
+            mBitmap.recycle();
+        }
+    }
+
+    // ============================================
+    // Touch
+
+    @Override
+    public boolean onTouchEvent(MotionEvent me) {
+        if (mKeyboard == null) {
+            return false;
+        }
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(me);
+
+        switch (me.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                startKey(me, 0);
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // Rollover: the first finger's key goes out before the second one's
+                releaseKey();
+                startKey(me, me.getActionIndex());
+                break;
+            case MotionEvent.ACTION_MOVE: {
+                int pointerIndex = me.findPointerIndex(mActivePointerId);
+                if (pointerIndex >= 0) {
+                    moveKey(me.getX(pointerIndex), me.getY(pointerIndex));
+                }
+                break;
+            }
+            case MotionEvent.ACTION_POINTER_UP:
+                if (me.getPointerId(me.getActionIndex()) == mActivePointerId) {
+                    releaseKey();
+                }
+                break;
+            case MotionEvent.ACTION_UP: {
+                int pointerIndex = me.findPointerIndex(mActivePointerId);
+                if (pointerIndex >= 0 && detectSwipe(me.getX(pointerIndex), me.getY(pointerIndex))) {
+                    cancelKey();
+                } else {
+                    releaseKey();
+                }
+                mVelocityTracker.clear();
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL:
+                cancelKey();
+                mVelocityTracker.clear();
+                break;
+        }
+        return true;
+    }
+
+    private void startKey(MotionEvent me, int pointerIndex) {
+        mActivePointerId = me.getPointerId(pointerIndex);
+        mDownX = me.getX(pointerIndex);
+        mDownY = me.getY(pointerIndex);
+        mKeyHandled = false;
+        mCurrentKey = getKeyIndex(mDownX, mDownY);
+        if (mCurrentKey == NOT_A_KEY) {
+            return;
+        }
+        Key key = mKeys[mCurrentKey];
+        mPressedCode = key.codes[0];
+        mPressSent = true;
+        mKeyboardActionListener.onPress(mPressedCode);
+        setKeyPressed(mCurrentKey, true);
+        if (key.repeatable) {
+            // Repeatable keys fire on touch down, then keep firing while held
+            mKeyHandled = true;
+            sendKey(key);
+            postDelayed(mRepeatKey, REPEAT_START_DELAY);
         } else {
-            return super.onLongPress(key);
+            postDelayed(mLongPress, ViewConfiguration.getLongPressTimeout());
         }
     }
 
-    void setSubtypeOnSpaceKey(final InputMethodSubtype subtype) {
-        final LatinKeyboard keyboard = (LatinKeyboard)getKeyboard();
-        keyboard.setSpaceIcon(getResources().getDrawable(subtype.getIconResId()));
-        invalidateAllKeys();
+    private void moveKey(float x, float y) {
+        int keyIndex = getKeyIndex(x, y);
+        if (keyIndex == mCurrentKey || mActivePointerId == -1) {
+            return;
+        }
+        removeCallbacks(mRepeatKey);
+        removeCallbacks(mLongPress);
+        setKeyPressed(mCurrentKey, false);
+        mCurrentKey = keyIndex;
+        if (mKeyHandled) {
+            // Sliding off a repeating or long pressed key ends it
+            mCurrentKey = NOT_A_KEY;
+            return;
+        }
+        if (keyIndex != NOT_A_KEY) {
+            setKeyPressed(keyIndex, true);
+            postDelayed(mLongPress, ViewConfiguration.getLongPressTimeout());
+        }
+    }
+
+    /** Fires the key under the finger, unless repeat or long press already did. */
+    private void releaseKey() {
+        if (mActivePointerId == -1) {
+            return;
+        }
+        removeCallbacks(mRepeatKey);
+        removeCallbacks(mLongPress);
+        if (mCurrentKey != NOT_A_KEY) {
+            setKeyPressed(mCurrentKey, false);
+            if (!mKeyHandled) {
+                sendKey(mKeys[mCurrentKey]);
+            }
+        }
+        finishKey();
+    }
+
+    private void cancelKey() {
+        if (mActivePointerId == -1) {
+            return;
+        }
+        removeCallbacks(mRepeatKey);
+        removeCallbacks(mLongPress);
+        if (mCurrentKey != NOT_A_KEY) {
+            setKeyPressed(mCurrentKey, false);
+        }
+        finishKey();
+    }
+
+    private void finishKey() {
+        mActivePointerId = -1;
+        mCurrentKey = NOT_A_KEY;
+        if (mPressSent) {
+            mPressSent = false;
+            mKeyboardActionListener.onRelease(mPressedCode);
+        }
+    }
+
+    private boolean detectSwipe(float x, float y) {
+        mVelocityTracker.computeCurrentVelocity(1000);
+        float velocityX = mVelocityTracker.getXVelocity(mActivePointerId);
+        float velocityY = mVelocityTracker.getYVelocity(mActivePointerId);
+        float deltaX = x - mDownX;
+        float deltaY = y - mDownY;
+        float absX = Math.abs(velocityX);
+        float absY = Math.abs(velocityY);
+        int travelX = getWidth() / 2;
+        int travelY = getHeight() / 2;
+
+        if (velocityX > mSwipeThreshold && absY < absX && deltaX > travelX) {
+            mKeyboardActionListener.swipeRight();
+        } else if (velocityX < -mSwipeThreshold && absY < absX && deltaX < -travelX) {
+            mKeyboardActionListener.swipeLeft();
+        } else if (velocityY < -mSwipeThreshold && absX < absY && deltaY < -travelY) {
+            mKeyboardActionListener.swipeUp();
+        } else if (velocityY > mSwipeThreshold && absX < absY / 2 && deltaY > travelY) {
+            mKeyboardActionListener.swipeDown();
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void sendKey(Key key) {
+        if (key.text != null) {
+            mKeyboardActionListener.onText(key.text);
+        } else {
+            mKeyboardActionListener.onKey(key.codes[0], key.codes);
+        }
+    }
+
+    private void setKeyPressed(int keyIndex, boolean pressed) {
+        if (keyIndex != NOT_A_KEY && mKeys[keyIndex].pressed != pressed) {
+            // Set directly rather than through Key.onPressed/onReleased, which would also
+            // toggle sticky keys; their state follows Keyboard.setShifted
+            mKeys[keyIndex].pressed = pressed;
+            invalidate();
+        }
+    }
+
+    /**
+     * The key under the latest touch and the keys around it, nearest first, for correction
+     * and gestures. Overwritten by the next touch event.
+     */
+    KeyProximityGrid.Proximity getTouchProximity() {
+        return mTouchProximity;
+    }
+
+    private int getKeyIndex(float x, float y) {
+        int keyX = (int) x - getPaddingLeft();
+        int keyY = (int) y - getPaddingTop();
+        if (mKeyboard instanceof LatinKeyboard) {
+            return ((LatinKeyboard) mKeyboard).getProximityGrid()
+                    .findNearestKeys(keyX, keyY, mTouchProximity);
+        }
+        for (int index : mKeyboard.getNearestKeys(keyX, keyY)) {
+            if (mKeys[index].isInside(keyX, keyY)) {
+                return index;
+            }
+        }
+        return NOT_A_KEY;
+    }
+
+    // ============================================
+    // Accessibility
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        if (mKeyboard != null && event.getActionMasked() == MotionEvent.ACTION_HOVER_EXIT
+                && mAccessibilityManager != null
+                && mAccessibilityManager.isTouchExplorationEnabled()) {
+            // Lifting the finger off an explored key types it, as KeyboardView did
+            int keyIndex = getKeyAt(event.getX(), event.getY());
+            if (keyIndex != NOT_A_KEY) {
+                typeKey(keyIndex);
+            }
+        }
+        return mAccessibilityHelper.dispatchHoverEvent(event) || super.dispatchHoverEvent(event);
+    }
+
+    /** Sends key {@code index} the way a tap on it would, without the touch state. */
+    private void typeKey(int index) {
+        Key key = mKeys[index];
+        mKeyboardActionListener.onPress(key.codes[0]);
+        sendKey(key);
+        mKeyboardActionListener.onRelease(key.codes[0]);
+    }
+
+    /** Returns the key under the point in view coordinates, without proximity. */
+    private int getKeyAt(float x, float y) {
+        int keyX = (int) x - getPaddingLeft();
+        int keyY = (int) y - getPaddingTop();
+        if (mKeyboard instanceof LatinKeyboard) {
+            return ((LatinKeyboard) mKeyboard).getProximityGrid().getKeyIndex(keyX, keyY);
+        }
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i].width > 0 && mKeys[i].isInside(keyX, keyY)) {
+                return i;
+            }
+        }
+        return NOT_A_KEY;
+    }
+
+    /** What is read out for key {@code index}: its label, or what its icon stands for. */
+    private CharSequence getKeyDescription(int index) {
+        Key key = mKeys[index];
+        CharSequence label = getLabel(index);
+        if (label != null) {
+            return label;
+        }
+        switch (key.codes[0]) {
+            case Keyboard.KEYCODE_SHIFT:
+                return getContext().getString(mKeyboard.isShifted()
+                        ? R.string.key_description_shift_on : R.string.key_description_shift);
+            case Keyboard.KEYCODE_DELETE:
+                return getContext().getString(R.string.key_description_delete);
+            case Keyboard.KEYCODE_CANCEL:
+                return getContext().getString(R.string.key_description_hide);
+            case KEYCODE_LANGUAGE_SWITCH:
+                return getContext().getString(R.string.key_description_language_switch);
+            case ' ':
+                return getContext().getString(R.string.key_description_space);
+            case '\n':
+                return getContext().getString(R.string.key_description_enter);
+        }
+        if (key.text != null) {
+            return key.text;
+        }
+        return new String(Character.toChars(key.codes[0]));
+    }
+
+    /**
+     * Exposes every key as a virtual view, so touch exploration reads out the key under the
+     * finger and a double tap types the focused key. Built on the same key geometry as the
+     * touch handling.
+     */
+    private static final class KeyAccessibilityHelper extends ExploreByTouchHelper {
+        private final LatinKeyboardView mView;
+        private final Rect mBounds = new Rect();
+
+        KeyAccessibilityHelper(LatinKeyboardView view) {
+            super(view);
+            mView = view;
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            if (mView.mKeyboard == null) {
+                return INVALID_ID;
+            }
+            int keyIndex = mView.getKeyAt(x, y);
+            return keyIndex == NOT_A_KEY ? INVALID_ID : keyIndex;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            Key[] keys = mView.mKeys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].width > 0 && keys[i].height > 0) {
+                    virtualViewIds.add(i);
+                }
+            }
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId,
+                @NonNull AccessibilityNodeInfoCompat node) {
+            if (virtualViewId >= mView.mKeys.length) {
+                // The keyboard changed under a stale id; the node must still have bounds
+                node.setContentDescription("");
+                node.setBoundsInParent(mBounds);
+                return;
+            }
+            Key key = mView.mKeys[virtualViewId];
+            int left = mView.getPaddingLeft() + key.x;
+            int top = mView.getPaddingTop() + key.y;
+            mBounds.set(left, top, left + key.width, top + key.height);
+            node.setBoundsInParent(mBounds);
+            node.setContentDescription(mView.getKeyDescription(virtualViewId));
+            node.setClassName(Button.class.getName());
+            node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action,
+                Bundle arguments) {
+            if (action != AccessibilityNodeInfoCompat.ACTION_CLICK
+                    || virtualViewId >= mView.mKeys.length) {
+                return false;
+            }
+            mView.typeKey(virtualViewId);
+            return true;
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,28 +3,37 @@ package example.android.package2.keyboard;
 import android.annotation.SuppressLint;
 import android.app.Dialog;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.inputmethodservice.InputMethodService;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.KeyboardView;
+import android.graphics.PixelFormat;
 import android.os.Build;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.text.InputType;
 import android.text.method.MetaKeyKeyListener;
 import android.util.DisplayMetrics;
+import android.view.Choreographer;
+import android.view.Gravity;
 import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewStub;
 import android.view.Window;
 import android.view.WindowManager;
 import android.view.inputmethod.CompletionInfo;
 import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.ExtractedText;
 import android.view.inputmethod.InputConnection;
 import android.view.inputmethod.InputMethodManager;
 import android.view.inputmethod.InputMethodSubtype;
 import android.widget.Button;
 import example.android.package2.emoji.manager.EmojiManager;
+import example.android.package2.logging.ImeLog;
 import example.android.package2.emoji.extensions.SoftKeyboardEmojiExtensionKt;
 import example.android.package2.sharing.extensions.SoftKeyboardSharingExtensionKt;
 import example.android.package2.suggestion.AutofillManager;
@@ -35,7 +44,12 @@ import com.example.aosp_poc.R;
 import android.util.Log;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
-import android.widget.RelativeLayout;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
 public class SoftKeyboard extends InputMethodService
         implements KeyboardView.OnKeyboardActionListener {
@@ -50,9 +64,29 @@ public class SoftKeyboard extends InputMethodService
     private LatinKeyboardView mInputView;
     private CompletionInfo[] mCompletions;
     private StringBuilder mComposing = new StringBuilder();
+    private EditorTextMirror mTextMirror;
+    private WordTracker mWordTracker;
+    private final KeystrokeMetrics mKeystrokeMetrics = new KeystrokeMetrics();
+    private final InputConnectionStats mInputConnectionStats = new InputConnectionStats();
+    private final InstrumentedInputConnection mInputConnection =
+            new InstrumentedInputConnection(mInputConnectionStats);
+    private DerivedWorkScheduler mDerivedWork;
+
+    // What the emoji row should catch up with on the next frame
+    private static final int EMOJI_UPDATE_NONE = 0;
+    private static final int EMOJI_UPDATE_WORD_CHANGE = 1;
+    private static final int EMOJI_UPDATE_WORD_COMPLETION = 2;
+    private int mPendingEmojiUpdate = EMOJI_UPDATE_NONE;
+
+    // Printable hardware keys waiting for the next frame, see translateKeyDown
+    private final StringBuilder mHardKeyBuffer = new StringBuilder();
+    private boolean mHardKeyFlushPosted;
+    private final Choreographer.FrameCallback mHardKeyFlush = frameTimeNanos -> {
+        mHardKeyFlushPosted = false;
+        flushHardKeys();
+    };
     private boolean mPredictionOn;
     private boolean mCompletionOn;
-    private int mLastDisplayWidth;
     private boolean mCapsLock;
     private long mLastShiftTime;
     private long mMetaState;
@@ -60,15 +94,95 @@ public class SoftKeyboard extends InputMethodService
     private LatinKeyboard mSymbolsShiftedKeyboard;
     private LatinKeyboard mQwertyKeyboard;
     private LatinKeyboard mCurKeyboard;
-    private String mWordSeparators;
+    // Enough for both orientations, folded and unfolded
+    private final KeyboardSetCache mKeyboardSets = new KeyboardSetCache(4);
+    private CharClassifier mCharClassifier;
+    // One classifier per subtype locale, built on first use
+    private final Map<String, CharClassifier> mCharClassifiers = new HashMap<>();
 
     private static final String TAG = "FloatingKeyboard";
+
+    // Debug records for the per-key and per-frame paths; formatted only when dumped
+    private static final int LOG_KEY = ImeLog.event("softkeyboard", "onKey code=%d floating=%b");
+    private static final int LOG_PRESS = ImeLog.event("softkeyboard", "onPress code=%d floating=%b");
+    private static final int LOG_RELEASE = ImeLog.event("softkeyboard", "onRelease code=%d floating=%b");
+    private static final int LOG_CHARACTER = ImeLog.event("softkeyboard", "character code=%d capitalized=%b");
+    private static final int LOG_BACKSPACE = ImeLog.event("softkeyboard", "backspace selected=%d composing=%d");
+    private static final int LOG_SHIFT_KEY = ImeLog.event("softkeyboard", "shift key shifted=%b capsLock=%b");
+    private static final int LOG_SHIFT_STATE = ImeLog.event("softkeyboard", "shift state caps=%x shifted=%b");
+    private static final int LOG_COMMIT_TYPED = ImeLog.event("EmojiDebug", "commitTyped length=%d");
+    private static final int LOG_WORD_CHANGE = ImeLog.event("EmojiDebug", "word change length=%d composing=%d");
+    private static final int LOG_WORD_COMPLETION = ImeLog.event("EmojiDebug", "word completion length=%d");
+    private static final int LOG_INSETS_FLOATING = ImeLog.event("softkeyboard", "floating insets contentTop=%d");
+    private static final int LOG_REGION_TOP_LEFT = ImeLog.event("softkeyboard", "touchable region left=%d top=%d");
+    private static final int LOG_REGION_BOTTOM_RIGHT = ImeLog.event("softkeyboard", "touchable region right=%d bottom=%d");
+    private static final int LOG_INSETS_NORMAL = ImeLog.event("softkeyboard", "normal insets input=%d keyboardStart=%d");
+    private static final int LOG_INSETS_BARS = ImeLog.event("softkeyboard", "normal insets emojiRow=%d topBar=%d");
+    private static final int LOG_DRAG = ImeLog.event("softkeyboard", "drag move x=%f y=%f");
+    private static final int LOG_RESIZE = ImeLog.event("Resize", "resize scale=%f");
+    private static final int LOG_HARD_KEY_BURST = ImeLog.event("softkeyboard", "hard key burst length=%d committed=%d");
+    // Window the floating keyboard moves to, sized to the scaled frame and its handles
     private WindowManager overlayWindowManager;
-    private View overlayView;
+    private KeyboardContainer overlayView;
     private boolean isOverlayVisible = false;
+    private WindowManager.LayoutParams mOverlayParams;
+    // Where the IME window is on screen; overlay positions are relative to it
+    private final int[] mOverlayOrigin = new int[2];
+    private ViewGroup.LayoutParams mDockedFrameParams;
+    // Screen position of the floating frame before scaling, as if it were not in a window
+    private float mFloatX;
+    private float mFloatY;
+    private final View.OnLayoutChangeListener mFloatingFrameLayoutListener =
+            (v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) -> {
+                if (right - left != oldRight - oldLeft || bottom - top != oldBottom - oldTop) {
+                    updateFloatingOverlay();
+                    positionResizeButtons();
+                }
+            };
     private boolean mKeyboardsInitialized = false;
 
-    private RelativeLayout kFrame;
+    // The input view is kept across onCreateInputView calls while only these change
+    private static final int REUSABLE_CONFIG_CHANGES = Configuration.CONFIG_KEYBOARD
+            | Configuration.CONFIG_KEYBOARD_HIDDEN | Configuration.CONFIG_NAVIGATION
+            | Configuration.CONFIG_TOUCHSCREEN | Configuration.CONFIG_MCC
+            | Configuration.CONFIG_MNC;
+    private View mInputRoot;
+    private Configuration mInputRootConfig;
+    private int mInputViewReuses;
+    private final InsetsCache mInsetsCache = new InsetsCache();
+    private final FloatingTransformController mFrameTransform =
+            new FloatingTransformController(new FloatingTransformController.Listener() {
+                @Override
+                public void onMove(float x, float y) {
+                    mFloatX = x;
+                    mFloatY = y;
+                }
+
+                @Override
+                public void onScale(float scale) {
+                    kFrame.setScaleX(scale);
+                    kFrame.setScaleY(scale);
+                }
+
+                @Override
+                public void onTransformApplied() {
+                    updateFloatingOverlay();
+                    positionResizeButtons();
+                    scheduleFloatingInsetsUpdate();
+                }
+            });
+
+    // The touchable region catches up with a drag at most this often, and once it ends
+    private static final long FLOATING_INSETS_INTERVAL_MS = 100;
+    private long mLastFloatingInsetsUpdate;
+    private boolean mFloatingInsetsUpdatePosted;
+    private final Runnable mFloatingInsetsUpdate = () -> {
+        mFloatingInsetsUpdatePosted = false;
+        requestFloatingInsetsUpdate();
+    };
+
+    private KeyboardContainer kFrame;
+    private View mNormalModeBar;
     private LinearLayout kNavBar;
     private LinearLayout navBarIndicator;
 
@@ -80,6 +194,7 @@ public class SoftKeyboard extends InputMethodService
     // Chat detection fields
     private boolean isChatTextBox = false;
     private View emojiRowContainer;
+    private ViewStub mEmojiRowStub;
     private Button floatToggleButton;
     private FrameLayout kTLBtn;
     private FrameLayout kTRBtn;
@@ -91,10 +206,8 @@ public class SoftKeyboard extends InputMethodService
     private static final float MIN_SCALE_LANDSCAPE = 0.4f;
     private static final float MAX_SCALE_LANDSCAPE = 0.9f;
 
-    // Position storage
-    private static float savedFloatX = Float.NaN;
-    private static float savedFloatY = Float.NaN;
-    private static float savedFloatScale = 0.8f;
+    private static final float DEFAULT_FLOAT_SCALE = 0.8f;
+    private FloatingGeometryStore mFloatingGeometry;
 
     // Temp vars for resize calculations
     private float temp1 = 0; // X offset for scaling
@@ -113,7 +226,11 @@ public class SoftKeyboard extends InputMethodService
         logMethodCall("onCreate");
 
         mInputMethodManager = (InputMethodManager) getSystemService(INPUT_METHOD_SERVICE);
-        mWordSeparators = getResources().getString(R.string.word_separators);
+        mCharClassifier = getCharClassifier(mInputMethodManager.getCurrentInputMethodSubtype());
+        mTextMirror = new EditorTextMirror(this);
+        mWordTracker = new WordTracker(mTextMirror);
+        mDerivedWork = new DerivedWorkScheduler(this::runDerivedWork);
+        mFloatingGeometry = new FloatingGeometryStore(this);
 
         Log.d("SuggestionDebug", "SoftKeyboard: onCreate() completed");
     }
@@ -150,26 +267,54 @@ public class SoftKeyboard extends InputMethodService
     @Override
     public void onInitializeInterface() {
         final Context displayContext = getDisplayContext();
-        int displayWidth = getMaxWidth();
-
-        if (mQwertyKeyboard != null && displayWidth == mLastDisplayWidth && mKeyboardsInitialized) {
+        final int displayWidth = getMaxWidth();
+        final int densityDpi = displayContext.getResources().getConfiguration().densityDpi;
+        final InputMethodSubtype subtype = mInputMethodManager.getCurrentInputMethodSubtype();
+
+        KeyboardSetCache.KeyboardSet keyboards =
+                mKeyboardSets.get(displayWidth, densityDpi, subtype);
+        if (keyboards == null) {
+            keyboards = new KeyboardSetCache.KeyboardSet(displayContext);
+            mKeyboardSets.put(displayWidth, densityDpi, subtype, keyboards);
+            Log.d("SoftKeyboard", "Keyboards initialized");
+        } else if (keyboards.qwerty == mQwertyKeyboard && mKeyboardsInitialized) {
             return;
+        } else {
+            // Built for an earlier configuration; the globe key may have changed since
+            keyboards.setLanguageSwitchKeyVisibility(
+                    mInputMethodManager.shouldOfferSwitchingToNextInputMethod(getToken()));
+            Log.d("SoftKeyboard", "Keyboards reused");
         }
-        mLastDisplayWidth = displayWidth;
 
-        // Always create normal keyboards initially
-        mQwertyKeyboard = new LatinKeyboard(displayContext, R.xml.qwerty);
-        mSymbolsKeyboard = new LatinKeyboard(displayContext, R.xml.symbols);
-        mSymbolsShiftedKeyboard = new LatinKeyboard(displayContext, R.xml.symbols_shift);
+        mQwertyKeyboard = keyboards.qwerty;
+        mSymbolsKeyboard = keyboards.symbols;
+        mSymbolsShiftedKeyboard = keyboards.symbolsShifted;
         mCurKeyboard = mQwertyKeyboard;
         mKeyboardsInitialized = true;
-
-        Log.d("SoftKeyboard", "Keyboards initialized");
     }
     @Override
     public View onCreateInputView() {
         logMethodCall("onCreateInputView");
+        final Configuration config = getResources().getConfiguration();
+        if (mInputRoot != null && (mInputRootConfig.diff(config) & ~REUSABLE_CONFIG_CHANGES) == 0) {
+            // Nothing the views depend on changed, keep them and their managers
+            final ViewParent parent = mInputRoot.getParent();
+            if (parent instanceof ViewGroup) {
+                ((ViewGroup) parent).removeView(mInputRoot);
+            }
+            mInputViewReuses++;
+            processPendingEditorInfo();
+            Log.d("softkeyboard", "onCreateInputView reused the input view");
+            return mInputRoot;
+        }
+
+        // The old frame goes back to its old root and is dropped with it
+        hideFloatingOverlay();
+        mFrameTransform.cancel();
+
         View normalLayout = getLayoutInflater().inflate(R.layout.normal_keyboard_layout_with_emoji, null);
+        mInputRoot = normalLayout;
+        mInputRootConfig = new Configuration(config);
 
         // Initialize views
         parentContainer = normalLayout.findViewById(R.id.parent_keyboard_container);
@@ -177,8 +322,12 @@ public class SoftKeyboard extends InputMethodService
         kNavBar = normalLayout.findViewById(R.id.navBar);
         navBarIndicator = normalLayout.findViewById(R.id.navBar_indicator);
         mInputView = normalLayout.findViewById(R.id.keyboard);
+        mNormalModeBar = normalLayout.findViewById(R.id.normal_mode_bar);
 
-        emojiRowContainer = normalLayout.findViewById(R.id.emoji_row_container);
+        // The emoji row is inflated once the keyboard has drawn, see updateEmojiRowVisibility
+        mEmojiRowStub = normalLayout.findViewById(R.id.emoji_row_container);
+        emojiRowContainer = null;
+        normalEmojiManager = null;
 
         if (mInputView != null) {
             mInputView.setOnKeyboardActionListener(this);
@@ -195,20 +344,14 @@ public class SoftKeyboard extends InputMethodService
         setupFloatToggle(normalLayout);
         setupDragHandling();
 
-        // Setup emoji support
-        normalEmojiManager = SoftKeyboardEmojiExtensionKt.setupEmojiSupport(this, normalLayout);
         setupSharingButtons(normalLayout);
 
         debugAutofillState("onCreateInputView - after autofill init");
-        autofillManager = new AutofillManager(this, normalLayout);
+        // Its suggestion bar is only inflated when there is something to suggest
+        autofillManager = new AutofillManager(this, normalLayout, mTextMirror);
         Log.d("SuggestionDebug", "SoftKeyboard: autofillManager initialized in onCreateInputView");
 
-        // IMPORTANT: Process any pending field focus that happened before autofill was ready
-        if (pendingEditorInfo != null) {
-            Log.d("SuggestionDebug", "SoftKeyboard: Processing pending EditorInfo from onStartInput");
-            autofillManager.onFieldFocused(pendingEditorInfo);
-            pendingEditorInfo = null; // Clear after processing
-        }
+        processPendingEditorInfo();
 
         updateEmojiRowVisibility();
 
@@ -217,12 +360,23 @@ public class SoftKeyboard extends InputMethodService
         return normalLayout;
 
     }
+    private void processPendingEditorInfo() {
+        // IMPORTANT: Process any pending field focus that happened before autofill was ready
+        if (pendingEditorInfo != null) {
+            Log.d("SuggestionDebug", "SoftKeyboard: Processing pending EditorInfo from onStartInput");
+            autofillManager.onFieldFocused(pendingEditorInfo);
+            pendingEditorInfo = null; // Clear after processing
+        }
+    }
     @Override
     public void onStartInput(EditorInfo attribute, boolean restarting) {
         logMethodCall("onStartInput");
         super.onStartInput(attribute, restarting);
 
         mComposing.setLength(0);
+        mInputConnectionStats.onStartInput(attribute != null ? attribute.packageName : null);
+        mTextMirror.onStartInput(attribute);
+        mWordTracker.reset();
 
         if (!restarting) {
             mMetaState = 0;
@@ -321,143 +475,57 @@ public class SoftKeyboard extends InputMethodService
     }
     @Override
     public void onComputeInsets(InputMethodService.Insets outInsets) {
-        super.onComputeInsets(outInsets);
-
-        if (isFloatingMode && kFrame != null && kFrame.getWidth() > 0 && kFrame.getHeight() > 0
-                && kFrame.getVisibility() == View.VISIBLE) {
-
-            Log.d("softkeyboard", "=== FLOATING MODE INSETS ===");
-
-            final int inputHeight = mInputView.getHeight();
-
-            DisplayMetrics metrics = getResources().getDisplayMetrics();
-            int containerHeight = 0;
-            if (parentContainer != null) {
-                containerHeight = parentContainer.getHeight();
-                Log.d("softkeyboard", "Parent container height: " + containerHeight);
-            } else {
-                containerHeight = inputHeight;
-                Log.w("softkeyboard", "Parent container null, using inputHeight as fallback: " + containerHeight);
+        if (isFloatingMode && isOverlayVisible) {
+            // The keyboard floats in its own window and this one covers nothing of the host.
+            // Content and visible insets stay at the bottom of the window wherever the
+            // keyboard goes, so the host is never resized or laid out again
+            final int windowHeight = parentContainer.getRootView().getHeight();
+
+            // Only the touchable region follows the keyboard: the overlay window's bounds,
+            // already relative to this window. See scheduleFloatingInsetsUpdate
+            final int left = Math.max(0, mOverlayParams.x);
+            final int top = Math.max(0, mOverlayParams.y);
+            final int right = mOverlayParams.x + mOverlayParams.width;
+            final int bottom = mOverlayParams.y + mOverlayParams.height;
+
+            if (mInsetsCache.updateFloating(windowHeight, left, top, right, bottom)
+                    && ImeLog.DEBUG) {
+                ImeLog.d(LOG_INSETS_FLOATING, windowHeight);
+                ImeLog.d(LOG_REGION_TOP_LEFT, left, top);
+                ImeLog.d(LOG_REGION_BOTTOM_RIGHT, right, bottom);
             }
-
-            int dynamicOffset = containerHeight;
-
-            Log.d("softkeyboard", "Using container height as dynamic offset: " + dynamicOffset);
-
-            outInsets.contentTopInsets = inputHeight + dynamicOffset;
-            outInsets.visibleTopInsets = inputHeight + dynamicOffset;
-
-            outInsets.touchableInsets = InputMethodService.Insets.TOUCHABLE_INSETS_REGION;
-
-            // Actual floating keyboard bounds
-            float kFrameX = kFrame.getX();
-            float kFrameY = kFrame.getY();
-            float scaleX = kFrame.getScaleX();
-            float scaleY = kFrame.getScaleY();
-
-            // Calculate scaled dimensions
-            float scaledWidth = kFrame.getWidth() * scaleX;
-            float scaledHeight = kFrame.getHeight() * scaleY;
-
-            // Account for scaling from center
-            float xOffset = (kFrame.getWidth() - scaledWidth) / 2f;
-            float yOffset = (kFrame.getHeight() - scaledHeight) / 2f;
-
-            int resizeButtonSize = (int) (16 * getResources().getDisplayMetrics().density); // 16 dp in pixels
-            int resizeButtonPadding = (int) (6 * getResources().getDisplayMetrics().density); // padding
-            int extraSpace = resizeButtonSize + resizeButtonPadding;
-
-            // Calculate visual bounds with extra space for resize buttons
-            int left = Math.max(0, (int)(kFrameX + xOffset - extraSpace));
-            int top = Math.max(0, (int)(kFrameY + yOffset - extraSpace));
-            int right = (int)(kFrameX + xOffset + scaledWidth + extraSpace);
-            int bottom = (int)(kFrameY + yOffset + scaledHeight + extraSpace);
-
-            // Validate bounds against screen
-            metrics = getResources().getDisplayMetrics();
-            right = Math.min(right, metrics.widthPixels);
-            bottom = Math.min(bottom, metrics.heightPixels);
-
-            // Set touchable region to include the floating keyboard + resize button space
-            android.graphics.Region region = new android.graphics.Region();
-            region.set(left, top, right, bottom);
-            outInsets.touchableRegion.set(region);
-
-            Log.d("softkeyboard", "FLOATING insets with resize buttons - contentTop: " + outInsets.contentTopInsets +
-                    ", visibleTop: " + outInsets.visibleTopInsets);
-            Log.d("softkeyboard", "Touchable region (with resize buttons): " + left + "," + top + "," + right + "," + bottom);
+            mInsetsCache.applyFloatingInsets(outInsets);
 
         } else {
             // NORMAL MODE - Standard IME behavior
-            Log.d("softkeyboard", "=== NORMAL MODE INSETS ===");
+            super.onComputeInsets(outInsets);
 
-            int inputHeight = 0;
-            if (mInputView != null) {
-                inputHeight = mInputView.getHeight();
-            } else {
-                Log.w("softkeyboard", "mInputView is null in onComputeInsets()");
-            }
+            final int inputHeight = mInputView != null ? mInputView.getHeight() : 0;
 
-            // Calculate heights for proper inset calculation
+            // Bars that are gone keep their last height, so only visible ones count
             int emojiRowHeight = 0;
             int topBarHeight = 0;
-
-            if (emojiRowContainer != null) {
+            if (emojiRowContainer != null && emojiRowContainer.getVisibility() == View.VISIBLE) {
                 emojiRowHeight = emojiRowContainer.getHeight();
-                Log.d("softkeyboard", "Emoji row height: " + emojiRowHeight + ", visibility: " +
-                        (emojiRowContainer.getVisibility() == View.VISIBLE ? "VISIBLE" : "GONE/INVISIBLE"));
             }
-
-// DEBUG: Let's find out what's happening with the top bar
-            if (mInputView != null) {
-                View normalModeBar = mInputView.findViewById(R.id.normal_mode_bar);
-                Log.d("softkeyboard", "normalModeBar found: " + (normalModeBar != null));
-
-                if (normalModeBar != null) {
-                    Log.d("softkeyboard", "normalModeBar visibility: " + normalModeBar.getVisibility());
-                    Log.d("softkeyboard", "normalModeBar width: " + normalModeBar.getWidth());
-                    Log.d("softkeyboard", "normalModeBar height: " + normalModeBar.getHeight());
-                    Log.d("softkeyboard", "normalModeBar measuredHeight: " + normalModeBar.getMeasuredHeight());
-
-                    topBarHeight = normalModeBar.getHeight();
-
-                    // If height is 0, let's try to force measure
-                    if (topBarHeight == 0) {
-                        Log.d("softkeyboard", "Top bar height is 0, trying to force measure...");
-                        normalModeBar.measure(
-                                View.MeasureSpec.makeMeasureSpec(normalModeBar.getWidth(), View.MeasureSpec.EXACTLY),
-                                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED)
-                        );
-                        topBarHeight = normalModeBar.getMeasuredHeight();
-                        Log.d("softkeyboard", "After force measure, height: " + topBarHeight);
-
-                        // If STILL 0, use hardcoded value based on your XML (40dp)
-                        if (topBarHeight == 0) {
-                            topBarHeight = (int) (40 * getResources().getDisplayMetrics().density);
-                            Log.d("softkeyboard", "Using hardcoded fallback height: " + topBarHeight + "px (40dp)");
-                        }
-                    }
-                } else {
-                    Log.e("softkeyboard", "normalModeBar (R.id.normal_mode_bar) not found!");
-                    // Use hardcoded value since we can't find the view
-                    topBarHeight = (int) (40 * getResources().getDisplayMetrics().density);
-                    Log.d("softkeyboard", "Using hardcoded height since view not found: " + topBarHeight + "px");
-                }
-            } else {
-                Log.e("softkeyboard", "mInputView is null!");
+            if (mNormalModeBar != null && mNormalModeBar.getVisibility() == View.VISIBLE) {
+                topBarHeight = mNormalModeBar.getHeight();
             }
 
-// Calculate where actual keyboard content starts
-            int keyboardContentStart = emojiRowHeight + topBarHeight;
-
-            Log.d("softkeyboard", "=== INSETS DEBUG ===");
-            Log.d("softkeyboard", "Total input height: " + inputHeight);
-            Log.d("softkeyboard", "Emoji row height: " + emojiRowHeight);
-            Log.d("softkeyboard", "Top bar height: " + topBarHeight);
-            Log.d("softkeyboard", "Keyboard content start offset: " + keyboardContentStart);
-            Log.d("softkeyboard", "Detected as chat app: " + isChatTextBox);
+            if (mInsetsCache.updateDocked(inputHeight, emojiRowHeight, topBarHeight)
+                    && ImeLog.DEBUG) {
+                // Where the actual keyboard content starts
+                ImeLog.d(LOG_INSETS_NORMAL, inputHeight, emojiRowHeight + topBarHeight);
+                ImeLog.d(LOG_INSETS_BARS, emojiRowHeight, topBarHeight);
+            }
         }
     }
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // The screen bounds the touchable region is clipped to may have changed
+        mInsetsCache.invalidate();
+        super.onConfigurationChanged(newConfig);
+    }
 
     // Float related functions:
     private void setupFloatToggle(View layout) {
@@ -495,27 +563,45 @@ public class SoftKeyboard extends InputMethodService
         Log.d("softkeyboard", "=== ENTERING FLOATING MODE ===");
 
         isFloatingMode = true;
-        setupFloatingContainer();
 
         DisplayMetrics metrics = getResources().getDisplayMetrics();
         int screenWidth = metrics.widthPixels;
         int screenHeight = metrics.heightPixels;
 
+        // Place and scale the frame before its window exists, so it is laid out once
+        final long geometry = mFloatingGeometry.get(floatingGeometryKey());
+        final float scale;
         float targetX, targetY;
-        if (Float.isNaN(savedFloatX) || Float.isNaN(savedFloatY)) {
+        if (geometry == FloatingGeometryStore.NONE) {
+            scale = DEFAULT_FLOAT_SCALE;
             targetX = (screenWidth - kFrame.getWidth()) / 2f;
             targetY = (screenHeight - kFrame.getHeight()) / 2f;
         } else {
-            targetX = savedFloatX;
-            targetY = savedFloatY;
+            scale = applyScaleBounds(FloatingGeometryStore.scale(geometry));
+            targetX = FloatingGeometryStore.x(geometry);
+            targetY = FloatingGeometryStore.y(geometry);
+        }
+
+        // Keep the scaled frame on screen, e.g. after the navigation bar changed
+        final float xOffset = kFrame.getWidth() * (1 - scale) / 2f;
+        final float yOffset = kFrame.getHeight() * (1 - scale) / 2f;
+        targetX = Math.max(-xOffset,
+                Math.min(targetX, screenWidth - kFrame.getWidth() + xOffset));
+        targetY = Math.max(-yOffset,
+                Math.min(targetY, screenHeight - kFrame.getHeight() + yOffset));
+
+        Log.d("softkeyboard", "Restoring saved scale: " + scale);
+        kFrame.setScaleX(scale);
+        kFrame.setScaleY(scale);
+        mFloatX = targetX;
+        mFloatY = targetY;
+        if (!showFloatingOverlay()) {
+            kFrame.setScaleX(1.0f);
+            kFrame.setScaleY(1.0f);
+            isFloatingMode = false;
+            return;
         }
 
-        Log.d("softkeyboard", "Restoring saved scale: " + savedFloatScale);
-        kFrame.setScaleX(savedFloatScale);
-        kFrame.setScaleY(savedFloatScale);
-        kFrame.setX(targetX);
-        kFrame.setY(targetY);
-
         if (kNavBar != null) {
             kNavBar.setVisibility(View.VISIBLE);
         }
@@ -537,11 +623,22 @@ public class SoftKeyboard extends InputMethodService
         showResizeButtons();
         hideResizeButtonsDelayed();
 
-        Log.d("softkeyboard", "Floating mode setup completed with saved scale: " + savedFloatScale);
+        Log.d("softkeyboard", "Floating mode setup completed with saved scale: " + scale);
+    }
+    private String floatingGeometryKey() {
+        final EditorInfo ei = getCurrentInputEditorInfo();
+        final DisplayMetrics metrics = getResources().getDisplayMetrics();
+        return FloatingGeometryStore.key(ei != null ? ei.packageName : null,
+                getResources().getConfiguration().orientation,
+                metrics.widthPixels, metrics.heightPixels);
+    }
+    private void saveFloatingGeometry() {
+        mFloatingGeometry.put(floatingGeometryKey(), mFloatX, mFloatY, kFrame.getScaleX());
     }
     private void positionResizeButtons() {
         if (kFrame == null) return;
 
+        // The frame and the handles share a parent, the overlay window's when floating
         float kFrameX = kFrame.getX();
         float kFrameY = kFrame.getY();
         float scaleX = kFrame.getScaleX();
@@ -584,65 +681,132 @@ public class SoftKeyboard extends InputMethodService
             kBRBtn.setX(visualRight - buttonOffset);
             kBRBtn.setY(visualBottom - buttonOffset);
         }
+    }
+    private boolean showFloatingOverlay() {
+        final IBinder token = parentContainer.getWindowToken();
+        if (token == null) {
+            Log.w("softkeyboard", "Input view not attached, staying docked");
+            return false;
+        }
+        if (overlayWindowManager == null) {
+            overlayWindowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+        }
+        if (overlayView == null) {
+            overlayView = new KeyboardContainer(this);
+        }
+        parentContainer.getRootView().getLocationOnScreen(mOverlayOrigin);
+
+        // The frame keeps its docked width and is scaled down inside the smaller window
+        final KeyboardContainer.LayoutParams frameParams = new KeyboardContainer.LayoutParams(
+                kFrame.getWidth(), ViewGroup.LayoutParams.WRAP_CONTENT);
+        frameParams.floating = true;
+        mDockedFrameParams = kFrame.getLayoutParams();
+        final ViewGroup root = (ViewGroup) parentContainer;
+        root.removeView(kFrame);
+        overlayView.addView(kFrame, frameParams);
+        for (View handle : new View[] {kTLBtn, kTRBtn, kBLBtn, kBRBtn}) {
+            if (handle != null) {
+                root.removeView(handle);
+                overlayView.addView(handle);
+            }
+        }
 
-        Log.d("softkeyboard", "Resize buttons (16dp) positioned at corners of floating keyboard");
+        mOverlayParams = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.TYPE_APPLICATION_PANEL,
+                WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL
+                        | WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS,
+                PixelFormat.TRANSLUCENT);
+        mOverlayParams.token = token;
+        mOverlayParams.gravity = Gravity.TOP | Gravity.START;
+        mOverlayParams.setTitle("FloatingKeyboard");
+        isOverlayVisible = true;
+        updateFloatingOverlay();
+        overlayWindowManager.addView(overlayView, mOverlayParams);
+        kFrame.addOnLayoutChangeListener(mFloatingFrameLayoutListener);
+        Log.d("softkeyboard", "Floating overlay shown");
+        return true;
     }
-    private void setupFloatingContainer() {
-        if (parentContainer == null || kFrame == null) return;
+    private void hideFloatingOverlay() {
+        if (!isOverlayVisible) return;
 
-        try {
-            Log.d("softkeyboard", "=== Setting up floating container ===");
+        if (mFloatingInsetsUpdatePosted) {
+            parentContainer.removeCallbacks(mFloatingInsetsUpdate);
+            mFloatingInsetsUpdatePosted = false;
+        }
 
-            // Just ensure container doesn't clip the floating keyboard or resize buttons
-            if (parentContainer instanceof ViewGroup) {
-                ((ViewGroup) parentContainer).setClipChildren(false);
-                ((ViewGroup) parentContainer).setClipToPadding(false);
-                Log.d("softkeyboard", "Container clipping disabled");
-            }
+        isOverlayVisible = false;
+        kFrame.removeOnLayoutChangeListener(mFloatingFrameLayoutListener);
+        overlayWindowManager.removeViewImmediate(overlayView);
+        overlayView.removeAllViews();
 
-            // Set container to allow full positioning without changing window
-            DisplayMetrics metrics = getResources().getDisplayMetrics();
-            ViewGroup.LayoutParams containerParams = parentContainer.getLayoutParams();
-            if (containerParams != null) {
-                containerParams.width = ViewGroup.LayoutParams.MATCH_PARENT;
-                // extra height for resize buttons that extend outside
-                int resizeButtonExtraHeight = (int) (32 * metrics.density); // 16dp * 2 for top and bottom
-                containerParams.height = metrics.heightPixels + resizeButtonExtraHeight;
-                parentContainer.setLayoutParams(containerParams);
+        final ViewGroup root = (ViewGroup) parentContainer;
+        root.addView(kFrame, 0, mDockedFrameParams);
+        for (View handle : new View[] {kTLBtn, kTRBtn, kBLBtn, kBRBtn}) {
+            if (handle != null) {
+                root.addView(handle);
             }
+        }
+        Log.d("softkeyboard", "Floating overlay hidden");
+    }
+    /**
+     * Has the touchable region follow the overlay window, without asking for new insets on
+     * every frame of a drag: at most once per {@link #FLOATING_INSETS_INTERVAL_MS}, and
+     * once more after the last move.
+     */
+    private void scheduleFloatingInsetsUpdate() {
+        if (mFloatingInsetsUpdatePosted || parentContainer == null) return;
 
+        final long wait = mLastFloatingInsetsUpdate + FLOATING_INSETS_INTERVAL_MS
+                - SystemClock.uptimeMillis();
+        if (wait <= 0) {
+            requestFloatingInsetsUpdate();
+        } else {
+            mFloatingInsetsUpdatePosted = true;
+            parentContainer.postDelayed(mFloatingInsetsUpdate, wait);
+        }
+    }
+    private void requestFloatingInsetsUpdate() {
+        mLastFloatingInsetsUpdate = SystemClock.uptimeMillis();
+        // The IME window asks for insets on its next traversal; only the empty docked root
+        // is laid out, the keyboard is in the overlay
+        if (parentContainer != null) {
             parentContainer.requestLayout();
-            Log.d("softkeyboard", "Container configured for floating with resize button space");
-
-        } catch (Exception e) {
-            Log.e("softkeyboard", "Error setting up floating container", e);
         }
     }
-    private void resetFloatingContainer() {
-        if (parentContainer == null) return;
-
-        try {
-            Log.d("softkeyboard", "=== Resetting floating container ===");
-
-            // Reset container properties
-            if (parentContainer instanceof ViewGroup) {
-                ((ViewGroup) parentContainer).setClipChildren(true);
-                ((ViewGroup) parentContainer).setClipToPadding(true);
-            }
-
-            // Reset container size
-            ViewGroup.LayoutParams containerParams = parentContainer.getLayoutParams();
-            if (containerParams != null) {
-                containerParams.width = ViewGroup.LayoutParams.MATCH_PARENT;
-                containerParams.height = ViewGroup.LayoutParams.WRAP_CONTENT;
-                parentContainer.setLayoutParams(containerParams);
+    /**
+     * Fits the overlay window to the scaled frame plus room for the resize handles, and
+     * places the frame in it at {@link #mFloatX}, {@link #mFloatY} on screen.
+     */
+    private void updateFloatingOverlay() {
+        if (!isOverlayVisible) return;
+
+        final float scale = kFrame.getScaleX();
+        final int width = kFrame.getWidth();
+        final int height = kFrame.getHeight();
+        final float scaledWidth = width * scale;
+        final float scaledHeight = height * scale;
+        final float density = getResources().getDisplayMetrics().density;
+        final int extraSpace = (int) (16 * density) + (int) (6 * density);
+
+        // Scaling is from the center, see positionResizeButtons
+        final int left = (int) Math.floor(mFloatX + (width - scaledWidth) / 2f) - extraSpace;
+        final int top = (int) Math.floor(mFloatY + (height - scaledHeight) / 2f) - extraSpace;
+        kFrame.setX(mFloatX - left);
+        kFrame.setY(mFloatY - top);
+
+        final int x = left - mOverlayOrigin[0];
+        final int y = top - mOverlayOrigin[1];
+        final int windowWidth = (int) Math.ceil(scaledWidth) + 2 * extraSpace;
+        final int windowHeight = (int) Math.ceil(scaledHeight) + 2 * extraSpace;
+        if (mOverlayParams.x != x || mOverlayParams.y != y
+                || mOverlayParams.width != windowWidth || mOverlayParams.height != windowHeight) {
+            mOverlayParams.x = x;
+            mOverlayParams.y = y;
+            mOverlayParams.width = windowWidth;
+            mOverlayParams.height = windowHeight;
+            if (overlayView.isAttachedToWindow()) {
+                overlayWindowManager.updateViewLayout(overlayView, mOverlayParams);
             }
-
-            parentContainer.requestLayout();
-            Log.d("softkeyboard", "Container reset completed");
-
-        } catch (Exception e) {
-            Log.e("softkeyboard", "Error resetting container", e);
         }
     }
     private void exitFloatingMode() {
@@ -650,13 +814,17 @@ public class SoftKeyboard extends InputMethodService
 
         Log.d("softkeyboard", "=== EXITING FLOATING MODE ===");
 
-        savedFloatScale = kFrame.getScaleX();
-        Log.d("softkeyboard", "Saving current scale: " + savedFloatScale);
+        // A move still waiting for its frame would undo the reset below
+        mFrameTransform.cancel();
+
+        final float scale = kFrame.getScaleX();
+        saveFloatingGeometry();
+        Log.d("softkeyboard", "Saving current scale: " + scale);
 
         isFloatingMode = false;
         updateFloatToggleButtonText();
 
-        resetFloatingContainer();
+        hideFloatingOverlay();
 
         if (kNavBar != null) {
             kNavBar.setVisibility(View.GONE);
@@ -683,7 +851,7 @@ public class SoftKeyboard extends InputMethodService
             }
         });
 
-        Log.d("softkeyboard", "Exit floating mode completed, scale saved: " + savedFloatScale);
+        Log.d("softkeyboard", "Exit floating mode completed, scale saved: " + scale);
     }
     @SuppressLint("ClickableViewAccessibility")
     private void setupDragHandling() {
@@ -700,16 +868,16 @@ public class SoftKeyboard extends InputMethodService
                     cancelDelayedHide();
 
                     kFrame.setAlpha(0.5f);
-                    initialTouchX = kFrame.getX() - event.getRawX();
-                    initialTouchY = kFrame.getY() - event.getRawY();
+                    initialTouchX = mFloatX - event.getRawX();
+                    initialTouchY = mFloatY - event.getRawY();
 
                     showResizeButtons();
                     return true;
 
                 case MotionEvent.ACTION_MOVE:
-                    Log.d("softkeyboard", "DRAG: ACTION_MOVE - dragging");
                     float targetX = event.getRawX() + initialTouchX;
                     float targetY = event.getRawY() + initialTouchY;
+                    if (ImeLog.DEBUG) ImeLog.d(LOG_DRAG, targetX, targetY);
 
                     DisplayMetrics metrics = getResources().getDisplayMetrics();
                     int screenWidth = metrics.widthPixels;
@@ -762,18 +930,16 @@ public class SoftKeyboard extends InputMethodService
                         return true;
                     }
 
-                    kFrame.animate().x(clampedX).y(clampedY).setDuration(0).start();
-
-                    // MODIFICATION: Update resize button positions during drag
-                    positionResizeButtons();
+                    // Applied on the next frame, resize buttons included
+                    mFrameTransform.moveTo(clampedX, clampedY);
 
                     return true;
 
                 case MotionEvent.ACTION_UP:
                     Log.d("softkeyboard", "DRAG: ACTION_UP - drag ended");
+                    mFrameTransform.flush();
                     kFrame.setAlpha(1.0f);
-                    savedFloatX = kFrame.getX();
-                    savedFloatY = kFrame.getY();
+                    saveFloatingGeometry();
 
                     if (!isResizeInProgress) {
                         hideResizeButtonsDelayed();
@@ -806,8 +972,8 @@ public class SoftKeyboard extends InputMethodService
 
                     centerX = kFrame.getWidth() / 2f;
                     centerY = kFrame.getHeight() / 2f;
-                    startX = kFrame.getX() + centerX;
-                    startY = kFrame.getY() + centerY;
+                    startX = mFloatX + centerX;
+                    startY = mFloatY + centerY;
                     startR = (float) Math.hypot(e.getRawX() - startX, e.getRawY() - startY);
                     startScale = kFrame.getScaleX();
                     return true;
@@ -822,21 +988,21 @@ public class SoftKeyboard extends InputMethodService
                         temp1 = (kFrame.getWidth() - kFrame.getWidth() * newScale) / 2;
                         temp2 = (kFrame.getHeight() - kFrame.getHeight() * newScale) / 2;
 
-                        kFrame.animate().scaleX(newScale).scaleY(newScale).setDuration(0).start();
-                        positionResizeButtons();
+                        mFrameTransform.scaleTo(newScale);
 
-                        Log.d("Resize", "BR - New scale: " + newScale);
+                        if (ImeLog.DEBUG) ImeLog.d(LOG_RESIZE, newScale, 0f);
                     }
                     return true;
 
                 } else if (e.getAction() == MotionEvent.ACTION_UP || e.getAction() == MotionEvent.ACTION_CANCEL) {
                     isResizeInProgress = false;
-                    savedFloatScale = kFrame.getScaleX();
+                    mFrameTransform.flush();
+                    saveFloatingGeometry();
 
                     // Restore full opacity after resize
                     kFrame.setAlpha(1.0f);
 
-                    Log.d("Resize", "BR - Resize operation ended, scale saved: " + savedFloatScale);
+                    Log.d("Resize", "BR - Resize operation ended, scale saved: " + kFrame.getScaleX());
 
                     hideResizeButtonsDelayed();
                     return true;
@@ -862,8 +1028,8 @@ public class SoftKeyboard extends InputMethodService
 
                     centerX = kFrame.getWidth() / 2f;
                     centerY = kFrame.getHeight() / 2f;
-                    startX = kFrame.getX() + centerX;
-                    startY = kFrame.getY() + centerY;
+                    startX = mFloatX + centerX;
+                    startY = mFloatY + centerY;
                     startR = (float) Math.hypot(e.getRawX() - startX, e.getRawY() - startY);
                     startScale = kFrame.getScaleX();
                     return true;
@@ -878,21 +1044,21 @@ public class SoftKeyboard extends InputMethodService
                         temp1 = (kFrame.getWidth() - kFrame.getWidth() * newScale) / 2;
                         temp2 = (kFrame.getHeight() - kFrame.getHeight() * newScale) / 2;
 
-                        kFrame.animate().scaleX(newScale).scaleY(newScale).setDuration(0).start();
-                        positionResizeButtons();
+                        mFrameTransform.scaleTo(newScale);
 
-                        Log.d("Resize", "TL - New scale: " + newScale);
+                        if (ImeLog.DEBUG) ImeLog.d(LOG_RESIZE, newScale, 0f);
                     }
                     return true;
 
                 } else if (e.getAction() == MotionEvent.ACTION_UP || e.getAction() == MotionEvent.ACTION_CANCEL) {
                     isResizeInProgress = false;
-                    savedFloatScale = kFrame.getScaleX();
+                    mFrameTransform.flush();
+                    saveFloatingGeometry();
 
                     // Restore full opacity
                     kFrame.setAlpha(1.0f);
 
-                    Log.d("Resize", "TL - Resize operation ended, scale saved: " + savedFloatScale);
+                    Log.d("Resize", "TL - Resize operation ended, scale saved: " + kFrame.getScaleX());
 
                     hideResizeButtonsDelayed();
                     return true;
@@ -918,8 +1084,8 @@ public class SoftKeyboard extends InputMethodService
 
                     centerX = kFrame.getWidth() / 2f;
                     centerY = kFrame.getHeight() / 2f;
-                    startX = kFrame.getX() + centerX;
-                    startY = kFrame.getY() + centerY;
+                    startX = mFloatX + centerX;
+                    startY = mFloatY + centerY;
                     startR = (float) Math.hypot(e.getRawX() - startX, e.getRawY() - startY);
                     startScale = kFrame.getScaleX();
                     return true;
@@ -934,21 +1100,21 @@ public class SoftKeyboard extends InputMethodService
                         temp1 = (kFrame.getWidth() - kFrame.getWidth() * newScale) / 2;
                         temp2 = (kFrame.getHeight() - kFrame.getHeight() * newScale) / 2;
 
-                        kFrame.animate().scaleX(newScale).scaleY(newScale).setDuration(0).start();
-                        positionResizeButtons();
+                        mFrameTransform.scaleTo(newScale);
 
-                        Log.d("Resize", "TR - New scale: " + newScale);
+                        if (ImeLog.DEBUG) ImeLog.d(LOG_RESIZE, newScale, 0f);
                     }
                     return true;
 
                 } else if (e.getAction() == MotionEvent.ACTION_UP || e.getAction() == MotionEvent.ACTION_CANCEL) {
                     isResizeInProgress = false;
-                    savedFloatScale = kFrame.getScaleX();
+                    mFrameTransform.flush();
+                    saveFloatingGeometry();
 
                     // Restore full opacity
                     kFrame.setAlpha(1.0f);
 
-                    Log.d("Resize", "TR - Resize operation ended, scale saved: " + savedFloatScale);
+                    Log.d("Resize", "TR - Resize operation ended, scale saved: " + kFrame.getScaleX());
 
                     hideResizeButtonsDelayed();
                     return true;
@@ -974,8 +1140,8 @@ public class SoftKeyboard extends InputMethodService
 
                     centerX = kFrame.getWidth() / 2f;
                     centerY = kFrame.getHeight() / 2f;
-                    startX = kFrame.getX() + centerX;
-                    startY = kFrame.getY() + centerY;
+                    startX = mFloatX + centerX;
+                    startY = mFloatY + centerY;
                     startR = (float) Math.hypot(e.getRawX() - startX, e.getRawY() - startY);
                     startScale = kFrame.getScaleX();
                     return true;
@@ -989,19 +1155,19 @@ public class SoftKeyboard extends InputMethodService
                     if (isScaleWithinScreenBounds(newScale)) {
                         temp1 = (kFrame.getWidth() - kFrame.getWidth() * newScale) / 2;
                         temp2 = (kFrame.getHeight() - kFrame.getHeight() * newScale) / 2;
-                        kFrame.animate().scaleX(newScale).scaleY(newScale).setDuration(0).start();
-                        positionResizeButtons();
+                        mFrameTransform.scaleTo(newScale);
                     }
                     return true;
 
                 } else if (e.getAction() == MotionEvent.ACTION_UP || e.getAction() == MotionEvent.ACTION_CANCEL) {
                     isResizeInProgress = false;
-                    savedFloatScale = kFrame.getScaleX();
+                    mFrameTransform.flush();
+                    saveFloatingGeometry();
 
                     // Restore full opacity
                     kFrame.setAlpha(1.0f);
 
-                    Log.d("Resize", "BL - Resize operation ended, scale saved: " + savedFloatScale);
+                    Log.d("Resize", "BL - Resize operation ended, scale saved: " + kFrame.getScaleX());
 
                     hideResizeButtonsDelayed();
                     return true;
@@ -1038,8 +1204,8 @@ public class SoftKeyboard extends InputMethodService
         float scaledHeight = kFrame.getHeight() * scale;
 
         // Get current position
-        float currentX = kFrame.getX();
-        float currentY = kFrame.getY();
+        float currentX = mFloatX;
+        float currentY = mFloatY;
 
         // Calculate offsets due to scaling from center
         float xOffset = (kFrame.getWidth() - scaledWidth) / 2f;
@@ -1108,6 +1274,8 @@ public class SoftKeyboard extends InputMethodService
         // Force recreation of keyboards with proper sizing
         onInitializeInterface();
 
+        // Start over from a fresh view rather than the floating one
+        mInputRoot = null;
         View newInputView = onCreateInputView();
         setInputView(newInputView);
 
@@ -1165,87 +1333,26 @@ public class SoftKeyboard extends InputMethodService
     private boolean detectChatTextBox(EditorInfo editorInfo) {
         if (editorInfo == null) return false;
 
-        boolean isChatDetected = false;
-
         int inputType = editorInfo.inputType;
+        int imeOptions = editorInfo.imeOptions;
+        boolean isChatDetected = ChatFieldDetector.isChatField(
+                inputType, imeOptions, editorInfo.hintText);
+
         int inputClass = inputType & InputType.TYPE_MASK_CLASS;
         int inputVariation = inputType & InputType.TYPE_MASK_VARIATION;
         int inputFlags = inputType & InputType.TYPE_MASK_FLAGS;
+        int actionId = imeOptions & EditorInfo.IME_MASK_ACTION;
 
         Log.d("ChatDetection", "=== ANALYZING INPUT FIELD ===");
         Log.d("ChatDetection", "Full inputType: 0x" + Integer.toHexString(inputType));
         Log.d("ChatDetection", "inputClass: 0x" + Integer.toHexString(inputClass) + " (" + getInputClassName(inputClass) + ")");
         Log.d("ChatDetection", "inputVariation: 0x" + Integer.toHexString(inputVariation) + " (" + getInputVariationName(inputVariation) + ")");
         Log.d("ChatDetection", "inputFlags: 0x" + Integer.toHexString(inputFlags));
-
         logInputFlags(inputFlags);
-
-        // Check IME options first - CRITICAL: Exclude search fields
-        int imeOptions = editorInfo.imeOptions;
-        int actionId = imeOptions & EditorInfo.IME_MASK_ACTION;
-
         Log.d("ChatDetection", "imeOptions: 0x" + Integer.toHexString(imeOptions));
         Log.d("ChatDetection", "actionId: 0x" + Integer.toHexString(actionId) + " (" + getImeActionName(actionId) + ")");
-
-        // CRITICAL: If it's a search field, it's definitely NOT a chat field
-        if (actionId == EditorInfo.IME_ACTION_SEARCH) {
-            Log.d("ChatDetection", "✗ NOT CHAT - Search field detected");
-            Log.d("ChatDetection", "FINAL RESULT: NON-CHAT FIELD (SEARCH)");
-            Log.d("ChatDetection", "=============================");
-            return false;
-        }
-
-        // Now check for chat characteristics only if it's NOT a search field
-        if (inputClass == InputType.TYPE_CLASS_TEXT) {
-            // Strategy 1: Check for messaging-friendly variations
-            if (inputVariation == InputType.TYPE_TEXT_VARIATION_SHORT_MESSAGE ||
-                    inputVariation == InputType.TYPE_TEXT_VARIATION_LONG_MESSAGE) {
-                Log.d("ChatDetection", "✓ CHAT detected via input variation");
-                isChatDetected = true;
-            }
-
-            // Strategy 2: Check for multiline + cap sentences combination (like Telegram chat)
-            if ((inputFlags & InputType.TYPE_TEXT_FLAG_MULTI_LINE) != 0 &&
-                    (inputFlags & InputType.TYPE_TEXT_FLAG_CAP_SENTENCES) != 0) {
-                Log.d("ChatDetection", "✓ CHAT detected via multiline + cap sentences");
-                isChatDetected = true;
-            }
-
-            // Strategy 3: Check for auto-correct flags (common in messaging)
-            if ((inputFlags & InputType.TYPE_TEXT_FLAG_AUTO_CORRECT) != 0 &&
-                    (inputFlags & InputType.TYPE_TEXT_FLAG_CAP_SENTENCES) != 0) {
-                Log.d("ChatDetection", "✓ CHAT detected via auto-correct + cap sentences");
-                isChatDetected = true;
-            }
-        }
-
-        // Strategy 4: Check hint text for messaging keywords (restricted list)
-        // But only if hint doesn't contain "search"
-        CharSequence hintText = editorInfo.hintText;
-        Log.d("ChatDetection", "hintText: '" + hintText + "'");
-        if (hintText != null) {
-            String hint = hintText.toString().toLowerCase();
-
-            // Exclude if hint contains "search"
-            if (hint.contains("search")) {
-                Log.d("ChatDetection", "✗ NOT CHAT - Hint contains 'search'");
-            } else if (hint.contains("message") || hint.contains("chat") ||
-                    hint.contains("say") || hint.contains("reply")) {
-                Log.d("ChatDetection", "✓ CHAT detected via hint text: " + hint);
-                isChatDetected = true;
-            }
-        }
-
-        // Strategy 5: Check for IME_ACTION_SEND (definitive chat indicator)
-        if (actionId == EditorInfo.IME_ACTION_SEND) {
-            Log.d("ChatDetection", "✓ CHAT detected via IME_ACTION_SEND");
-            isChatDetected = true;
-        }
-
-        // Log package name for reference
-        String packageName = editorInfo.packageName;
-        Log.d("ChatDetection", "packageName: " + packageName);
-
+        Log.d("ChatDetection", "hintText: '" + editorInfo.hintText + "'");
+        Log.d("ChatDetection", "packageName: " + editorInfo.packageName);
         Log.d("ChatDetection", "FINAL RESULT: " + (isChatDetected ? "CHAT FIELD" : "NON-CHAT FIELD"));
         Log.d("ChatDetection", "=============================");
 
@@ -1265,11 +1372,14 @@ public class SoftKeyboard extends InputMethodService
         // Commit any composing text first to preserve it
         if (mComposing.length() > 0) {
             ic.commitText(mComposing, 1);
+            mTextMirror.onCommitText(mComposing);
             mComposing.setLength(0);  // Clear the composing buffer
         }
 
         // Insert the emoji
         ic.commitText(emojiUnicode, 1);
+        mTextMirror.onCommitText(emojiUnicode);
+        mWordTracker.invalidate();
 
         // End batch edit
         ic.endBatchEdit();
@@ -1300,53 +1410,22 @@ public class SoftKeyboard extends InputMethodService
             int composingLength = mComposing.length();
             Log.d("EmojiDebug", "Composing text: '" + mComposing.toString() + "' (length: " + composingLength + ")");
 
-            ic.finishComposingText(); // Commit the composing text
-            ic.deleteSurroundingText(composingLength, 0); // Delete it
+            // The commit below replaces the composing region, so there is nothing to delete
             mComposing.setLength(0); // Clear internal buffer
 
         } else {
-            // Case 2: No composing text - need to find and replace the current word
-            Log.d("EmojiDebug", "Case 2: No composing text, finding current word in committed text");
-
-            CharSequence textBefore = ic.getTextBeforeCursor(50, 0);
-            CharSequence textAfter = ic.getTextAfterCursor(10, 0);
-
-            if (textBefore == null) textBefore = "";
-            if (textAfter == null) textAfter = "";
-
-            String beforeStr = textBefore.toString();
-            String afterStr = textAfter.toString();
+            // Case 2: No composing text - the word tracker already knows the word span
+            Log.d("EmojiDebug", "Case 2: No composing text, replacing current word from the word tracker");
 
-            Log.d("EmojiDebug", "Text before cursor: '" + beforeStr + "'");
-            Log.d("EmojiDebug", "Text after cursor: '" + afterStr + "'");
-
-            // Find the current word boundaries
-            int charsToDeleteBefore = 0;
-            int charsToDeleteAfter = 0;
-
-            // Count characters to delete before cursor (back to start of word)
-            for (int i = beforeStr.length() - 1; i >= 0; i--) {
-                char c = beforeStr.charAt(i);
-                if (Character.isWhitespace(c) || isPunctuation(c)) {
-                    break;
-                }
-                charsToDeleteBefore++;
-            }
-
-            // Count characters to delete after cursor (forward to end of word)
-            for (int i = 0; i < afterStr.length(); i++) {
-                char c = afterStr.charAt(i);
-                if (Character.isWhitespace(c) || isPunctuation(c)) {
-                    break;
-                }
-                charsToDeleteAfter++;
-            }
+            int charsToDeleteBefore = mWordTracker.getLengthBeforeCursor();
+            int charsToDeleteAfter = mWordTracker.getLengthAfterCursor();
 
             Log.d("EmojiDebug", "Characters to delete - before: " + charsToDeleteBefore + ", after: " + charsToDeleteAfter);
 
             // Delete the current word
             if (charsToDeleteBefore > 0 || charsToDeleteAfter > 0) {
                 ic.deleteSurroundingText(charsToDeleteBefore, charsToDeleteAfter);
+                mTextMirror.onDeleteSurroundingText(charsToDeleteBefore, charsToDeleteAfter);
                 Log.d("EmojiDebug", "Deleted current word using deleteSurroundingText(" + charsToDeleteBefore + ", " + charsToDeleteAfter + ")");
             }
         }
@@ -1354,11 +1433,13 @@ public class SoftKeyboard extends InputMethodService
         // Insert the emoji
         Log.d("EmojiDebug", "Inserting emoji: " + emojiUnicode);
         ic.commitText(emojiUnicode, 1);
+        mTextMirror.onCommitText(emojiUnicode);
+        mWordTracker.invalidate();
 
         ic.endBatchEdit();
 
         // Debug after operation
-        CharSequence textAfter = ic.getTextBeforeCursor(20, 0);
+        CharSequence textAfter = mTextMirror.getTextBeforeCursor(20);
         Log.d("EmojiDebug", "Text after operation (20 chars): '" + textAfter + "'");
         Log.d("EmojiDebug", "=== END REPLACE OPERATION ===");
 
@@ -1370,181 +1451,88 @@ public class SoftKeyboard extends InputMethodService
             normalEmojiManager.resetToDefault();
         }
     }
-    private String getLastWordFromCommittedText() {
-        InputConnection ic = getCurrentInputConnection();
-        if (ic == null) return "";
-
-        try {
-            // Get text before cursor (up to 50 characters to find last word)
-            CharSequence textBeforeCursor = ic.getTextBeforeCursor(50, 0);
-            if (textBeforeCursor == null || textBeforeCursor.length() == 0) {
-                return "";
-            }
-
-            String text = textBeforeCursor.toString();
-            // Split by spaces and get the last word
-            String[] words = text.split("\\s+");
-            if (words.length > 0) {
-                String lastWord = words[words.length - 1].trim();
-                // Remove punctuation from the end
-                lastWord = lastWord.replaceAll("[^a-zA-Z0-9]$", "");
-                return lastWord;
-            }
-        } catch (Exception e) {
-            Log.e("SoftKeyboard", "Error getting last word", e);
-        }
-
-        return "";
+    private CharSequence getLastWordFromCommittedText() {
+        // Maintained by the word tracker as keys are processed; no editor read or regex needed
+        return mWordTracker.getLastWord();
     }
-    private void notifyEmojiManagersWordCompletion(String lastWord) {
-        Log.d("EmojiDebug", "notifyEmojiManagersWordCompletion: last word: '" + lastWord + "'");
+    private void notifyEmojiManagersWordCompletion(CharSequence lastWord) {
+        if (ImeLog.DEBUG) ImeLog.d(LOG_WORD_COMPLETION, lastWord.length());
 
         if (normalEmojiManager != null) {
+            long start = KeystrokeMetrics.now();
             normalEmojiManager.handleWordCompletion(lastWord);
+            mKeystrokeMetrics.recordEmoji(start);
         }
     }
     private void notifyEmojiManagersWordChange() {
-        String currentWord = getCurrentWord();
+        CharSequence currentWord = getCurrentWord();
 
-        Log.d("EmojiDebug", "notifyEmojiManagersWordChange: current word: '" + currentWord + "'");
-        Log.d("EmojiDebug", "mComposing length: " + mComposing.length() + ", text: '" + mComposing.toString() + "'");
+        if (ImeLog.DEBUG) ImeLog.d(LOG_WORD_CHANGE, currentWord.length(), mComposing.length());
 
         if (normalEmojiManager != null) {
+            long start = KeystrokeMetrics.now();
             if (mComposing.length() > 0) {
                 // We have composing text - use composing text change
-                Log.d("EmojiDebug", "Using handleComposingTextChange because mComposing has content");
                 normalEmojiManager.handleComposingTextChange(currentWord);
             } else {
                 // No composing text - but we need to be smarter about this
                 // Check if we're at the end of a word (cursor immediately after word characters)
                 if (isAtEndOfWord()) {
-                    Log.d("EmojiDebug", "At end of word, treating as composing text change");
                     normalEmojiManager.handleComposingTextChange(currentWord);
                 } else {
-                    Log.d("EmojiDebug", "Not at end of word, treating as word completion");
                     normalEmojiManager.handleWordCompletion(currentWord);
                 }
             }
+            mKeystrokeMetrics.recordEmoji(start);
         }
-
-
     }
-    private String getCurrentWord() {
-        InputConnection ic = getCurrentInputConnection();
-        if (ic == null) return "";
-
+    private CharSequence getCurrentWord() {
         // First check if we have composing text
         if (mComposing.length() > 0) {
-            Log.d("EmojiDebug", "getCurrentWord: Using composing text: '" + mComposing.toString() + "'");
-            return mComposing.toString();
+            return mComposing;
         }
 
-        // No composing text, extract current word from committed text
-        try {
-            // Get text before and after cursor
-            CharSequence textBefore = ic.getTextBeforeCursor(50, 0);
-            CharSequence textAfter = ic.getTextAfterCursor(10, 0);
-
-            if (textBefore == null) textBefore = "";
-            if (textAfter == null) textAfter = "";
-
-            Log.d("EmojiDebug", "getCurrentWord: textBefore: '" + textBefore + "'");
-            Log.d("EmojiDebug", "getCurrentWord: textAfter: '" + textAfter + "'");
-
-            // Find the current word by looking at character boundaries
-            String beforeStr = textBefore.toString();
-            String afterStr = textAfter.toString();
-
-            // Find start of current word (work backwards from cursor)
-            int wordStart = beforeStr.length();
-            for (int i = beforeStr.length() - 1; i >= 0; i--) {
-                char c = beforeStr.charAt(i);
-                if (Character.isWhitespace(c) || isPunctuation(c)) {
-                    wordStart = i + 1;
-                    break;
-                }
-                if (i == 0) {
-                    wordStart = 0;
-                }
-            }
-
-            // Find end of current word (work forwards from cursor)
-            int wordEnd = 0;
-            for (int i = 0; i < afterStr.length(); i++) {
-                char c = afterStr.charAt(i);
-                if (Character.isWhitespace(c) || isPunctuation(c)) {
-                    wordEnd = i;
-                    break;
-                }
-                if (i == afterStr.length() - 1) {
-                    wordEnd = afterStr.length();
-                }
-            }
-
-            // Extract the current word
-            String wordPart1 = beforeStr.substring(wordStart);
-            String wordPart2 = afterStr.substring(0, wordEnd);
-            String currentWord = (wordPart1 + wordPart2).trim();
-
-            Log.d("EmojiDebug", "getCurrentWord: extracted word: '" + currentWord + "'");
-            Log.d("EmojiDebug", "getCurrentWord: wordStart=" + wordStart + ", wordEnd=" + wordEnd);
-            Log.d("EmojiDebug", "getCurrentWord: wordPart1='" + wordPart1 + "', wordPart2='" + wordPart2 + "'");
-
-            return currentWord;
-
-        } catch (Exception e) {
-            Log.e("EmojiDebug", "Error in getCurrentWord", e);
-            return "";
-        }
+        // No composing text, the word tracker holds the word around the cursor
+        return mWordTracker.getCurrentWord();
     }
     private boolean isAtEndOfWord() {
-        InputConnection ic = getCurrentInputConnection();
-        if (ic == null) return false;
-
-        try {
-            // Get one character after cursor
-            CharSequence charAfterCursor = ic.getTextAfterCursor(1, 0);
-
-            // If there's no character after cursor, we're at end of text (treat as end of word)
-            if (charAfterCursor == null || charAfterCursor.length() == 0) {
-                Log.d("EmojiDebug", "isAtEndOfWord: true (end of text)");
-                return true;
-            }
-
-            char nextChar = charAfterCursor.charAt(0);
-
-            // If next character is whitespace or punctuation, we're at end of word
-            boolean atEndOfWord = Character.isWhitespace(nextChar) || isPunctuation(nextChar);
-
-            Log.d("EmojiDebug", "isAtEndOfWord: " + atEndOfWord + " (next char: '" + nextChar + "')");
-            return atEndOfWord;
-
-        } catch (Exception e) {
-            Log.e("EmojiDebug", "Error in isAtEndOfWord", e);
-            return false;
-        }
+        // At the end of a word when no word characters follow the cursor (or at end of text)
+        return mWordTracker.getLengthAfterCursor() == 0;
     }
     private void updateEmojiRowVisibility() {
-        if (emojiRowContainer != null) {
+        if (emojiRowContainer == null) {
+            // Not inflated yet, only worth building once a chat field needs it
+            if (isChatTextBox && mEmojiRowStub != null) {
+                final View root = mInputRoot;
+                DeferredStub.inflateAfterDraw(mEmojiRowStub, emojiRow -> {
+                    if (root == mInputRoot) {
+                        onEmojiRowInflated(emojiRow);
+                    }
+                });
+                mEmojiRowStub = null;
+            }
+        } else {
             int visibility = isChatTextBox ? View.VISIBLE : View.GONE;
             emojiRowContainer.setVisibility(visibility);
 
             Log.d("softkeyboard", "Emoji row visibility: " + (isChatTextBox ? "VISIBLE" : "GONE"));
         }
     }
+    private void onEmojiRowInflated(View emojiRow) {
+        emojiRowContainer = emojiRow;
+        normalEmojiManager = SoftKeyboardEmojiExtensionKt.setupEmojiSupport(this, emojiRow);
+        updateEmojiRowVisibility();
+    }
 
     // IME functions
     @Override
     public void onCurrentInputMethodSubtypeChanged(InputMethodSubtype subtype) {
+        mCharClassifier = getCharClassifier(subtype);
         if (mInputView != null) {
             mInputView.setSubtypeOnSpaceKey(subtype);
         }
     }
     private void updateShiftKeyState(EditorInfo attr) {
-        Log.d("softkeyboard", "=== updateShiftKeyState called ===");
-        Log.d("softkeyboard", "Before update - shift: " + (mInputView != null && mQwertyKeyboard == mInputView.getKeyboard() ? mQwertyKeyboard.isShifted() : "N/A"));
-        Log.d("softkeyboard", "Before update - caps lock: " + mCapsLock);
-
         if (attr != null && mInputView != null && mQwertyKeyboard == mInputView.getKeyboard()) {
             int caps = 0;
             EditorInfo ei = getCurrentInputEditorInfo();
@@ -1552,34 +1540,23 @@ public class SoftKeyboard extends InputMethodService
                 caps = getCurrentInputConnection().getCursorCapsMode(attr.inputType);
             }
 
-            Log.d("softkeyboard", "Cursor caps mode: " + caps);
-
             // IMPORTANT: Don't override manual shift/caps lock state
             boolean shouldBeShifted = mCapsLock || caps != 0;
 
             // If we manually set shift (not caps lock), preserve it
             if (!mCapsLock && mQwertyKeyboard.isShifted()) {
                 shouldBeShifted = true;
-                Log.d("softkeyboard", "Preserving manual shift state");
             }
 
             mInputView.setShifted(shouldBeShifted);
-            Log.d("softkeyboard", "After update - shift set to: " + shouldBeShifted);
+            if (ImeLog.DEBUG) ImeLog.d(LOG_SHIFT_STATE, caps, shouldBeShifted ? 1 : 0);
         }
-
-        Log.d("softkeyboard", "=== updateShiftKeyState completed ===");
     }
     @Override
     public void onKey(int primaryCode, int[] keyCodes) {
-        Log.d("softkeyboard", "=== onKey called ===");
-        Log.d("softkeyboard", "primaryCode: " + primaryCode);
-        Log.d("softkeyboard", "Keyboard.KEYCODE_SHIFT = " + Keyboard.KEYCODE_SHIFT);
-        Log.d("softkeyboard", "isFloatingMode: " + isFloatingMode);
-
-        // Check if this is the shift key
-        if (primaryCode == Keyboard.KEYCODE_SHIFT) {
-            Log.d("softkeyboard", "SHIFT KEY MATCHED!");
-        }
+        if (ImeLog.DEBUG) ImeLog.d(LOG_KEY, primaryCode, isFloatingMode ? 1 : 0);
+        flushHardKeys();
+        mKeystrokeMetrics.onKeyStart();
 
         InputConnection ic = getCurrentInputConnection();
         if (ic == null) {
@@ -1587,115 +1564,156 @@ public class SoftKeyboard extends InputMethodService
             return;
         }
 
-        Log.d("softkeyboard", "Input connection available, processing key");
-
         if (isWordSeparator(primaryCode)) {
-            // Handle separator (including space)
+            // Handle separator (including space): the composing word and the separator
+            // go to the editor in one batch so it only relayouts once.
+            mKeystrokeMetrics.onCommitStart();
+            ic.beginBatchEdit();
             if (mComposing.length() > 0) {
-                commitTyped(getCurrentInputConnection());
+                commitTyped(ic);
             }
             sendKey(primaryCode);
+            ic.endBatchEdit();
+            mKeystrokeMetrics.onCommitEnd();
+            mWordTracker.onCharacter(primaryCode);
             updateShiftKeyState(getCurrentInputEditorInfo());
 
-            // Keep only emoji notification for chat functionality
-            if (primaryCode == ' ') {
-                String lastWord = getLastWordFromCommittedText();
-                notifyEmojiManagersWordCompletion(lastWord);
-            } else {
-                notifyEmojiManagersWordChange();
-            }
-
-            // ADD THIS: Notify autofill after separator input
-            if (autofillManager != null) {
-                autofillManager.onFieldChanged();
-            }
+            // Emoji row and autofill catch up on the next frame
+            scheduleDerivedWork(primaryCode == ' '
+                    ? EMOJI_UPDATE_WORD_COMPLETION : EMOJI_UPDATE_WORD_CHANGE);
             return;
         }
 
         // Process the key normally
         switch (primaryCode) {
             case Keyboard.KEYCODE_DELETE:
-                Log.d("softkeyboard", "Processing backspace");
-
-                if (ic != null) {
-                    // Check if there's selected text first
-                    CharSequence selectedText = ic.getSelectedText(0);
+                if (mComposing.length() > 0) {
+                    // Still composing - shrink the word locally instead of asking the editor
+                    mKeystrokeMetrics.onCommitStart();
+                    deleteComposingChar(ic);
+                    mKeystrokeMetrics.onCommitEnd();
+                    mWordTracker.onDeleteBefore();
+                } else if (ic != null) {
+                    // Check if there's selected text first; a collapsed cursor needs no round trip
+                    CharSequence selectedText = mTextMirror.mayHaveSelection() ? ic.getSelectedText(0) : null;
                     if (selectedText != null && selectedText.length() > 0) {
                         // Delete selected text
+                        mKeystrokeMetrics.onCommitStart();
                         ic.commitText("", 1);
-                        Log.d("softkeyboard", "Deleted selected text: " + selectedText.length() + " chars");
+                        mKeystrokeMetrics.onCommitEnd();
+                        mTextMirror.onCommitText("");
+                        mWordTracker.invalidate();
+                        if (ImeLog.DEBUG) ImeLog.d(LOG_BACKSPACE, selectedText.length(), 0);
                     } else {
                         // No selection - normal single character deletion
+                        mKeystrokeMetrics.onCommitStart();
                         ic.deleteSurroundingText(1, 0);
-                        Log.d("softkeyboard", "Deleted single character");
+                        mKeystrokeMetrics.onCommitEnd();
+                        mTextMirror.onDeleteSurroundingText(1, 0);
+                        mWordTracker.onDeleteBefore();
                     }
                 }
 
-                notifyEmojiManagersWordChange();
+                scheduleDerivedWork(EMOJI_UPDATE_WORD_CHANGE);
                 break;
 
             case Keyboard.KEYCODE_SHIFT:
-                Log.d("softkeyboard", "SHIFT KEY DETECTED - Processing shift");
                 handleShiftKey();
                 return; // Important: return here, don't break
 
             case Keyboard.KEYCODE_MODE_CHANGE:
-                Log.d("softkeyboard", "Processing mode change");
                 handleModeChange();
                 break;
 
             case '\n':
-                Log.d("softkeyboard", "Processing enter/return");
+                mKeystrokeMetrics.onCommitStart();
                 ic.sendKeyEvent(new KeyEvent(KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_ENTER));
                 ic.sendKeyEvent(new KeyEvent(KeyEvent.ACTION_UP, KeyEvent.KEYCODE_ENTER));
+                mKeystrokeMetrics.onCommitEnd();
+                mTextMirror.invalidate();
                 break;
 
             default:
                 if (primaryCode > 0) {
                     char code = (char) primaryCode;
 
-                    Log.d("softkeyboard", "=== Character processing start ===");
-                    Log.d("softkeyboard", "mCurKeyboard.isShifted(): " + (mCurKeyboard != null ? mCurKeyboard.isShifted() : "null keyboard"));
-                    Log.d("softkeyboard", "mCapsLock: " + mCapsLock);
-                    Log.d("softkeyboard", "mInputView.isShifted(): " + (mInputView != null ? mInputView.isShifted() : "null inputview"));
-
                     // IMPORTANT: Check shift/caps state BEFORE any modifications
                     boolean shouldCapitalize = false;
                     if (Character.isLetter(code)) {
                         shouldCapitalize = mCapsLock || (mCurKeyboard != null && mCurKeyboard.isShifted());
-                        Log.d("softkeyboard", "shouldCapitalize: " + shouldCapitalize + " (caps: " + mCapsLock + ", shift: " + (mCurKeyboard != null ? mCurKeyboard.isShifted() : "null") + ")");
                     }
 
                     // Apply capitalization
                     if (shouldCapitalize) {
                         code = Character.toUpperCase(code);
-                        Log.d("softkeyboard", "Applied caps/shift: " + code);
                     } else {
                         code = Character.toLowerCase(code);
                     }
 
-                    Log.d("softkeyboard", "Processing character: " + code + " (code: " + primaryCode + ")");
-                    ic.commitText(String.valueOf(code), 1);
+                    if (ImeLog.DEBUG) ImeLog.d(LOG_CHARACTER, code, shouldCapitalize ? 1 : 0);
+                    mKeystrokeMetrics.onCommitStart();
+                    if (mPredictionOn) {
+                        // Keep the word in the composing region; it is committed on the next
+                        // separator, on selection divergence or when the input finishes.
+                        mComposing.append(code);
+                        ic.beginBatchEdit();
+                        ic.setComposingText(mComposing, 1);
+                        ic.endBatchEdit();
+                        mTextMirror.onSetComposingText(mComposing);
+                    } else {
+                        // Password, email and URI fields get no composing region
+                        String text = String.valueOf(code);
+                        ic.commitText(text, 1);
+                        mTextMirror.onCommitText(text);
+                    }
+                    mKeystrokeMetrics.onCommitEnd();
+                    mWordTracker.onCharacter(code);
 
                     // IMPORTANT: Reset shift state AFTER character processing (but ONLY if not in caps lock mode)
                     if (!mCapsLock && mCurKeyboard != null && mCurKeyboard.isShifted()) {
-                        Log.d("softkeyboard", "About to reset shift state");
                         mCurKeyboard.setShifted(false);
-                        mInputView.invalidateAllKeys();
-                        Log.d("softkeyboard", "Shift reset after character input");
+                        mInputView.invalidateShiftKeys();
                     }
 
-                    notifyEmojiManagersWordChange();
-                    Log.d("softkeyboard", "=== Character processing end ===");
+                    scheduleDerivedWork(EMOJI_UPDATE_WORD_CHANGE);
                 } else {
                     Log.w("softkeyboard", "Unhandled primaryCode: " + primaryCode);
                 }
                 break;
         }
 
-        // ADD THIS: Notify autofill after any key processing (except SHIFT which returns early)
+        // Autofill tracks the field after any key processing (except SHIFT which returns early)
+        scheduleDerivedWork(EMOJI_UPDATE_NONE);
+    }
+
+    /**
+     * Coalesces the work that follows a key into one pass on the next frame, so a burst of
+     * keys updates the emoji row and autofill once, with the latest text.
+     */
+    private void scheduleDerivedWork(int emojiUpdate) {
+        if (emojiUpdate != EMOJI_UPDATE_NONE) {
+            mPendingEmojiUpdate = emojiUpdate;
+        }
+        mDerivedWork.onInput();
+    }
+    private void runDerivedWork() {
+        int emojiUpdate = mPendingEmojiUpdate;
+        mPendingEmojiUpdate = EMOJI_UPDATE_NONE;
+        if (emojiUpdate == EMOJI_UPDATE_WORD_COMPLETION) {
+            notifyEmojiManagersWordCompletion(getLastWordFromCommittedText());
+        } else if (emojiUpdate == EMOJI_UPDATE_WORD_CHANGE) {
+            notifyEmojiManagersWordChange();
+        }
+        notifyAutofillFieldChanged();
+    }
+    public DerivedWorkScheduler getDerivedWorkScheduler() {
+        return mDerivedWork;
+    }
+    private void notifyAutofillFieldChanged() {
         if (autofillManager != null) {
+            long start = KeystrokeMetrics.now();
             autofillManager.onFieldChanged();
+            mKeystrokeMetrics.recordAutofill(start);
         }
     }
     private void sendKey(int keyCode) {
@@ -1707,52 +1725,41 @@ public class SoftKeyboard extends InputMethodService
                 if (keyCode >= '0' && keyCode <= '9') {
                     keyDownUp(keyCode - '0' + KeyEvent.KEYCODE_0);
                 } else {
-                    getCurrentInputConnection().commitText(String.valueOf((char) keyCode), 1);
+                    String text = String.valueOf((char) keyCode);
+                    getCurrentInputConnection().commitText(text, 1);
+                    mTextMirror.onCommitText(text);
                 }
                 break;
         }
     }
     private void handleShiftKey() {
-        Log.d("softkeyboard", "=== handleShiftKey called ===");
-
         if (mInputView != null && mCurKeyboard == mQwertyKeyboard) {
             long now = System.currentTimeMillis();
 
-            Log.d("softkeyboard", "Current shift state: " + mCurKeyboard.isShifted());
-            Log.d("softkeyboard", "Current caps lock: " + mCapsLock);
-            Log.d("softkeyboard", "Time since last shift: " + (now - mLastShiftTime));
-
             if (mLastShiftTime + 800 > now) {
                 // Double tap within 800ms - toggle caps lock
                 mCapsLock = !mCapsLock;
                 mCurKeyboard.setShifted(mCapsLock);
                 mLastShiftTime = 0;
-                Log.d("softkeyboard", "Double tap - Caps lock toggled: " + mCapsLock);
             } else {
                 // Single tap
                 if (mCapsLock) {
                     // If caps lock is on, turn it off
                     mCapsLock = false;
                     mCurKeyboard.setShifted(false);
-                    Log.d("softkeyboard", "Single tap - Caps lock turned off");
                 } else {
                     // Normal single tap - toggle shift
                     boolean newShiftState = !mCurKeyboard.isShifted();
                     mCurKeyboard.setShifted(newShiftState);
-                    Log.d("softkeyboard", "Single tap - Shift toggled to: " + newShiftState);
                 }
                 mLastShiftTime = now;
             }
 
-            Log.d("softkeyboard", "Final shift state: " + mCurKeyboard.isShifted());
-            Log.d("softkeyboard", "Final caps lock: " + mCapsLock);
+            if (ImeLog.DEBUG) ImeLog.d(LOG_SHIFT_KEY, mCurKeyboard.isShifted() ? 1 : 0, mCapsLock ? 1 : 0);
 
-            // Force visual update
-            mInputView.invalidateAllKeys();
-            mInputView.invalidate();
+            // Redraw the letters and the shift key
+            mInputView.invalidateShiftKeys();
             updateShiftKeyState(getCurrentInputEditorInfo());
-
-            Log.d("softkeyboard", "=== handleShiftKey completed ===");
         } else {
             Log.e("softkeyboard", "handleShiftKey failed - mInputView: " + mInputView + ", mCurKeyboard: " + mCurKeyboard + ", mQwertyKeyboard: " + mQwertyKeyboard);
         }
@@ -1770,8 +1777,43 @@ public class SoftKeyboard extends InputMethodService
         }
     }
     public boolean isWordSeparator(int code) {
-        String separators = mWordSeparators;
-        return separators.contains(String.valueOf((char)code));
+        return mCharClassifier.isSeparator(code);
+    }
+    /**
+     * Returns the classifier for the word separators of the subtype's locale. The separator
+     * string is resolved through the resources of that locale, so a new subtype only needs a
+     * localized {@code word_separators} string.
+     */
+    private CharClassifier getCharClassifier(InputMethodSubtype subtype) {
+        Locale locale = getSubtypeLocale(subtype);
+        String key = locale != null ? locale.toLanguageTag() : "";
+        CharClassifier classifier = mCharClassifiers.get(key);
+        if (classifier == null) {
+            Context context = this;
+            if (locale != null) {
+                Configuration configuration = new Configuration(getResources().getConfiguration());
+                configuration.setLocale(locale);
+                context = createConfigurationContext(configuration);
+            }
+            classifier = new CharClassifier(context.getString(R.string.word_separators));
+            mCharClassifiers.put(key, classifier);
+        }
+        return classifier;
+    }
+    private static Locale getSubtypeLocale(InputMethodSubtype subtype) {
+        if (subtype == null) {
+            return null;
+        }
+        String languageTag = subtype.getLanguageTag();
+        if (!languageTag.isEmpty()) {
+            return Locale.forLanguageTag(languageTag);
+        }
+        // Subtypes declared with imeSubtypeLocale only, e.g. "en_GB"
+        String[] parts = subtype.getLocale().split("_");
+        if (parts[0].isEmpty()) {
+            return null;
+        }
+        return parts.length > 1 ? new Locale(parts[0], parts[1]) : new Locale(parts[0]);
     }
     private void setLatinKeyboard(LatinKeyboard nextKeyboard) {
         setActiveKeyboard(nextKeyboard);
@@ -1783,9 +1825,8 @@ public class SoftKeyboard extends InputMethodService
         nextKeyboard.setLanguageSwitchKeyVisibility(shouldSupportLanguageSwitchKey);
 
         if (mInputView != null) {
+            // Redraws and relayouts every key
             mInputView.setKeyboard(nextKeyboard);
-            mInputView.invalidateAllKeys();
-            mInputView.requestLayout();
         }
 
         mCurKeyboard = nextKeyboard;
@@ -1876,8 +1917,21 @@ public class SoftKeyboard extends InputMethodService
             if (ic != null) {
                 ic.finishComposingText();
             }
+            mTextMirror.onFinishComposingText();
+        }
+
+        if (!mTextMirror.onUpdateSelection(newSelStart, newSelEnd)) {
+            // The cursor moved on its own; rebuild the word state on the next lookup
+            mWordTracker.invalidate();
         }
     }
+
+    @Override
+    public void onUpdateExtractedText(int token, ExtractedText text) {
+        super.onUpdateExtractedText(token, text);
+        mTextMirror.onUpdateExtractedText(text);
+        mWordTracker.invalidate();
+    }
     private boolean translateKeyDown(int keyCode, KeyEvent event) {
         mMetaState = MetaKeyKeyListener.handleKeyDown(mMetaState,
                 keyCode, event);
@@ -1888,28 +1942,100 @@ public class SoftKeyboard extends InputMethodService
             return false;
         }
 
-        boolean dead = false;
-
         if ((c & KeyCharacterMap.COMBINING_ACCENT) != 0) {
-            dead = true;
+            // A dead key shows its accent in the composing region until the next key
             c = c & KeyCharacterMap.COMBINING_ACCENT_MASK;
+            onKey(c, null);
+            return true;
         }
 
-        if (mComposing.length() > 0) {
+        if (mHardKeyBuffer.length() == 0 && mComposing.length() > 0) {
             char accent = mComposing.charAt(mComposing.length() - 1);
             int composed = KeyEvent.getDeadChar(accent, c);
 
             if (composed != 0) {
-                c = composed;
                 mComposing.setLength(mComposing.length() - 1);
+                mWordTracker.onDeleteBefore();
+                onKey(composed, null);
+                return true;
             }
         }
 
-        onKey(c, null);
+        if (c == '\n') {
+            // Sent as a key event so the editor can act on it (numpad enter)
+            onKey(c, null);
+            return true;
+        }
 
+        // Keys of a burst (scanner, fast typist) are sent together on the next frame
+        mHardKeyBuffer.appendCodePoint(c);
+        if (!mHardKeyFlushPosted) {
+            mHardKeyFlushPosted = true;
+            Choreographer.getInstance().postFrameCallback(mHardKeyFlush);
+        }
         return true;
     }
 
+    /**
+     * Sends the buffered hardware keys to the editor in one batch: everything up to the
+     * last word separator is committed, the rest becomes the composing word. Runs before any
+     * other edit so keys are never reordered.
+     */
+    private void flushHardKeys() {
+        if (mHardKeyFlushPosted) {
+            Choreographer.getInstance().removeFrameCallback(mHardKeyFlush);
+            mHardKeyFlushPosted = false;
+        }
+        final int length = mHardKeyBuffer.length();
+        if (length == 0) {
+            return;
+        }
+        InputConnection ic = getCurrentInputConnection();
+        if (ic == null) {
+            mHardKeyBuffer.setLength(0);
+            return;
+        }
+
+        int committed = 0;
+        int lastCodePoint = 0;
+        for (int i = 0; i < length; ) {
+            lastCodePoint = Character.codePointAt(mHardKeyBuffer, i);
+            i += Character.charCount(lastCodePoint);
+            if (isWordSeparator(lastCodePoint)) {
+                committed = i;
+            }
+            mWordTracker.onCharacter(lastCodePoint);
+        }
+        if (ImeLog.DEBUG) ImeLog.d(LOG_HARD_KEY_BURST, length, committed);
+
+        mKeystrokeMetrics.onCommitStart();
+        ic.beginBatchEdit();
+        if (committed > 0) {
+            mComposing.append(mHardKeyBuffer, 0, committed);
+            ic.commitText(mComposing, 1);
+            mTextMirror.onCommitText(mComposing);
+            mComposing.setLength(0);
+        }
+        if (committed < length) {
+            mComposing.append(mHardKeyBuffer, committed, length);
+            ic.setComposingText(mComposing, 1);
+            mTextMirror.onSetComposingText(mComposing);
+        }
+        ic.endBatchEdit();
+        mKeystrokeMetrics.onCommitEnd();
+        mHardKeyBuffer.setLength(0);
+
+        if (!mCapsLock && mCurKeyboard != null && mCurKeyboard.isShifted()) {
+            mCurKeyboard.setShifted(false);
+            if (mInputView != null) {
+                mInputView.invalidateShiftKeys();
+            }
+        }
+        updateShiftKeyState(getCurrentInputEditorInfo());
+        scheduleDerivedWork(lastCodePoint == ' '
+                ? EMOJI_UPDATE_WORD_COMPLETION : EMOJI_UPDATE_WORD_CHANGE);
+    }
+
     @Override
     public boolean onKeyDown(int keyCode, KeyEvent event) {
         switch (keyCode) {
@@ -1926,6 +2052,7 @@ public class SoftKeyboard extends InputMethodService
                 break;
 
             case KeyEvent.KEYCODE_DEL:
+                flushHardKeys();
                 // Special handling of the delete key: if we currently are
                 // composing text for the user, we want to modify that instead
                 // of let the application to the delete itself.
@@ -1936,12 +2063,14 @@ public class SoftKeyboard extends InputMethodService
                 break;
 
             case KeyEvent.KEYCODE_ENTER:
+                flushHardKeys();
                 if (autofillManager != null) {
                     autofillManager.onKeyboardHidden(); // Save current field
                 }
                 return super.onKeyDown(keyCode, event);
 
             case KeyEvent.KEYCODE_TAB:
+                flushHardKeys();
                 if (autofillManager != null) {
                     autofillManager.onKeyboardHidden();
                 }
@@ -1956,6 +2085,7 @@ public class SoftKeyboard extends InputMethodService
                             && (event.getMetaState() & KeyEvent.META_ALT_ON) != 0) {
                         // A silly example: in our input method, Alt+Space
                         // is a shortcut for 'android' in lower case.
+                        flushHardKeys();
                         InputConnection ic = getCurrentInputConnection();
                         if (ic != null) {
                             // First, tell the editor that it is no longer in the
@@ -1975,6 +2105,11 @@ public class SoftKeyboard extends InputMethodService
                     if (mPredictionOn && translateKeyDown(keyCode, event)) {
                         return true;
                     }
+                    // Shift and friends only change the next character; anything else
+                    // (arrows, shortcuts) must see the buffered text first
+                    if (!KeyEvent.isModifierKey(keyCode)) {
+                        flushHardKeys();
+                    }
                 }
         }
 
@@ -1996,20 +2131,14 @@ public class SoftKeyboard extends InputMethodService
         return super.onKeyUp(keyCode, event);
     }
 
-    private boolean isPunctuation(char c) {
-        return ".,!?;:()[]{}\"'".indexOf(c) != -1;
-    }
-
     private void commitTyped(InputConnection inputConnection) {
         if (mComposing.length() > 0) {
-            // DEBUG LOG - Add this
-            Log.d("EmojiDebug", "commitTyped: committing '" + mComposing.toString() + "' (length: " + mComposing.length() + ")");
+            if (ImeLog.DEBUG) ImeLog.d(LOG_COMMIT_TYPED, mComposing.length());
 
-            inputConnection.commitText(mComposing, mComposing.length());
+            inputConnection.commitText(mComposing, 1);
+            mTextMirror.onCommitText(mComposing);
             mComposing.setLength(0);
 
-            Log.d("EmojiDebug", "commitTyped: mComposing cleared");
-
             // Reset emoji managers to default when text is committed
             if (normalEmojiManager != null) {
                 normalEmojiManager.resetToDefault();
@@ -2017,14 +2146,35 @@ public class SoftKeyboard extends InputMethodService
         }
     }
 
+    /**
+     * Removes the last character of the word being composed and pushes the shorter word to
+     * the editor. Clearing the last character also clears the composing region.
+     */
+    private void deleteComposingChar(InputConnection ic) {
+        final int length = mComposing.length();
+        if (length > 1) {
+            mComposing.delete(length - 1, length);
+            ic.setComposingText(mComposing, 1);
+            mTextMirror.onSetComposingText(mComposing);
+        } else {
+            mComposing.setLength(0);
+            ic.commitText("", 0);
+            mTextMirror.onCommitText("");
+        }
+    }
+
     private void keyDownUp(int keyEventCode) {
         getCurrentInputConnection().sendKeyEvent(
                 new KeyEvent(KeyEvent.ACTION_DOWN, keyEventCode));
         getCurrentInputConnection().sendKeyEvent(
                 new KeyEvent(KeyEvent.ACTION_UP, keyEventCode));
+        // The editor decides what a key event does, so re-read the text when it is needed
+        mTextMirror.invalidate();
+        mWordTracker.invalidate();
     }
 
     public void onText(CharSequence text) {
+        flushHardKeys();
         InputConnection ic = getCurrentInputConnection();
         if (ic == null) return;
         ic.beginBatchEdit();
@@ -2033,6 +2183,8 @@ public class SoftKeyboard extends InputMethodService
         }
         ic.commitText(text, 0);
         ic.endBatchEdit();
+        mTextMirror.invalidate();
+        mWordTracker.invalidate();
         updateShiftKeyState(getCurrentInputEditorInfo());
     }
 
@@ -2040,28 +2192,26 @@ public class SoftKeyboard extends InputMethodService
         InputConnection ic = getCurrentInputConnection();
         if (ic == null) return;
 
-        CharSequence selectedText = ic.getSelectedText(0);
+        CharSequence selectedText = mTextMirror.mayHaveSelection() ? ic.getSelectedText(0) : null;
         if (selectedText != null && selectedText.length() > 0) {
             ic.commitText("", 1);
-            Log.d("EmojiDebug", "handleBackspace: deleted selected text (" + selectedText.length() + " chars)");
+            mTextMirror.onCommitText("");
+            mWordTracker.invalidate();
+            if (ImeLog.DEBUG) ImeLog.d(LOG_BACKSPACE, selectedText.length(), 0);
             updateShiftKeyState(getCurrentInputEditorInfo());
             return;
         }
 
         final int length = mComposing.length();
-        Log.d("EmojiDebug", "handleBackspace: mComposing length before: " + length + ", text: '" + mComposing.toString() + "'");
+        if (ImeLog.DEBUG) ImeLog.d(LOG_BACKSPACE, 0, length);
 
-        if (length > 1) {
-            mComposing.delete(length - 1, length);
-            ic.setComposingText(mComposing, 1);
-            Log.d("EmojiDebug", "Backspace: removed 1 char from composing, new: '" + mComposing.toString() + "'");
-        } else if (length > 0) {
-            mComposing.setLength(0);
-            ic.commitText("", 0);
-            Log.d("EmojiDebug", "Backspace: cleared composing text");
+        if (length > 0) {
+            deleteComposingChar(ic);
+            mWordTracker.onDeleteBefore();
         } else {
             ic.deleteSurroundingText(1, 0);
-            Log.d("EmojiDebug", "Backspace: sent delete single char (no composing text)");
+            mTextMirror.onDeleteSurroundingText(1, 0);
+            mWordTracker.onDeleteBefore();
         }
         updateShiftKeyState(getCurrentInputEditorInfo());
     }
@@ -2079,6 +2229,16 @@ public class SoftKeyboard extends InputMethodService
         }
     }
 
+    /**
+     * Everything in the keyboard talks to the editor through this connection, so every
+     * call is counted and timed for {@link #dump}.
+     */
+    @Override
+    public InputConnection getCurrentInputConnection() {
+        InputConnection ic = super.getCurrentInputConnection();
+        return ic != null ? mInputConnection.wrap(ic) : null;
+    }
+
     private IBinder getToken() {
         final Dialog dialog = getWindow();
         if (dialog == null) {
@@ -2109,17 +2269,50 @@ public class SoftKeyboard extends InputMethodService
 
     @Override
     public void onPress(int primaryCode) {
-        Log.d("softkeyboard", "onPress: " + primaryCode + " (floating: " + isFloatingMode + ")");
-
+        if (ImeLog.DEBUG) ImeLog.d(LOG_PRESS, primaryCode, isFloatingMode ? 1 : 0);
+        mKeystrokeMetrics.onPress();
     }
 
     @Override
     public void onRelease(int primaryCode) {
-        Log.d("softkeyboard", "onRelease: " + primaryCode + " (floating: " + isFloatingMode + ")");
+        if (ImeLog.DEBUG) ImeLog.d(LOG_RELEASE, primaryCode, isFloatingMode ? 1 : 0);
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter fout, String[] args) {
+        super.dump(fd, fout, args);
+        fout.println("SoftKeyboard: floating=" + isFloatingMode + " chat=" + isChatTextBox
+                + " prediction=" + mPredictionOn + " composing=" + mComposing.length()
+                + " inputViewReuses=" + mInputViewReuses);
+        mKeystrokeMetrics.dump(fout, "  ");
+        mInputConnectionStats.dump(fout, "  ");
+        mKeyboardSets.dump(fout, "  ");
+        mInsetsCache.dump(fout, "  ");
+        mFrameTransform.dump(fout, "  ");
+        mFloatingGeometry.dump(fout, "  ");
+        if (mInputView != null) {
+            mInputView.dump(fout, "  ");
+        }
+        ImeLog.dump(fout, "  ");
     }
 
     @Override
     public void onFinishInput() {
+        // Let autofill see the last keys before the field is saved
+        flushHardKeys();
+        mDerivedWork.flush();
+        mPendingEmojiUpdate = EMOJI_UPDATE_NONE;
+
+        // Commit the word still being composed so the editor keeps what the user typed
+        if (mComposing.length() > 0) {
+            InputConnection ic = getCurrentInputConnection();
+            if (ic != null) {
+                ic.finishComposingText();
+            }
+            mComposing.setLength(0);
+            mTextMirror.onFinishComposingText();
+        }
+
         // Save current field data BEFORE clearing everything
         if (autofillManager != null) {
             autofillManager.onKeyboardHidden();
@@ -2127,6 +2320,7 @@ public class SoftKeyboard extends InputMethodService
 
         super.onFinishInput();
         mComposing.setLength(0);
+        mTextMirror.onFinishInput();
         setCandidatesViewShown(false);
         mCurKeyboard = mQwertyKeyboard;
         if (mInputView != null) {
@@ -2146,6 +2340,9 @@ public class SoftKeyboard extends InputMethodService
     @Override
     public void onDestroy() {
         cancelDelayedHide();
+        mFrameTransform.cancel();
+        hideFloatingOverlay();
+        mDerivedWork.quit();
 
         super.onDestroy();
     }
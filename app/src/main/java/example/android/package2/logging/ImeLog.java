@@ -0,0 +1,159 @@
+package example.android.package2.logging;
+
+import com.example.aosp_poc.BuildConfig;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Logging for the per-keystroke and per-frame paths of the keyboard.
+ *
+ * Nothing is formatted while typing. A call site registers its message once with
+ * {@link #event}, then records only the event id and up to two numeric arguments into a
+ * fixed-size ring buffer. Messages are put together when the buffer is dumped, e.g. with
+ * {@code adb shell dumpsys activity service example.android.package2.keyboard.SoftKeyboard}.
+ *
+ * Guard call sites with {@link #DEBUG}:
+ * <pre>
+ *     if (ImeLog.DEBUG) ImeLog.d(LOG_KEY, primaryCode);
+ * </pre>
+ * It is the {@code IME_LOG} build config field, a literal {@code false} in release builds,
+ * so javac folds the guard and drops the whole statement: nothing, not even argument
+ * evaluation, is left behind. ({@code BuildConfig.DEBUG} would not do: it is generated as
+ * {@code Boolean.parseBoolean("true")}, which is not a constant expression.)
+ *
+ * Formats understand {@code %d} (integer), {@code %x} (hex), {@code %b} (0 is false) and
+ * {@code %f} (a float recorded through {@link #d(int, float, float)}).
+ */
+public final class ImeLog {
+
+    /** Debug records are compiled in only for debug builds. */
+    public static final boolean DEBUG = BuildConfig.IME_LOG;
+
+    /** Records kept in the ring buffer; older ones are overwritten. */
+    static final int CAPACITY = 1024;
+
+    // Each record is four longs: timestamp, event id, first and second argument
+    private static final int STRIDE = 4;
+    private static final long[] sRecords = new long[CAPACITY * STRIDE];
+    private static int sNext;
+    private static long sTotal;
+
+    private static final List<String> sTags = new ArrayList<>();
+    private static final List<String> sFormats = new ArrayList<>();
+
+    private ImeLog() {
+    }
+
+    /**
+     * Registers a message and returns the id to record it with. Call once, from a static
+     * initializer or a companion object, never per event.
+     */
+    public static synchronized int event(String tag, String format) {
+        sTags.add(tag);
+        sFormats.add(format);
+        return sFormats.size() - 1;
+    }
+
+    // ============================================
+    // Recording
+
+    public static void d(int event) {
+        if (DEBUG) record(event, 0, 0);
+    }
+
+    public static void d(int event, int a) {
+        if (DEBUG) record(event, a, 0);
+    }
+
+    public static void d(int event, int a, int b) {
+        if (DEBUG) record(event, a, b);
+    }
+
+    public static void d(int event, long a, long b) {
+        if (DEBUG) record(event, a, b);
+    }
+
+    public static void d(int event, boolean a) {
+        if (DEBUG) record(event, a ? 1 : 0, 0);
+    }
+
+    /** Records two floats; print them with {@code %f}. */
+    public static void d(int event, float a, float b) {
+        if (DEBUG) record(event, Float.floatToRawIntBits(a), Float.floatToRawIntBits(b));
+    }
+
+    private static synchronized void record(int event, long a, long b) {
+        int offset = sNext * STRIDE;
+        sRecords[offset] = System.nanoTime();
+        sRecords[offset + 1] = event;
+        sRecords[offset + 2] = a;
+        sRecords[offset + 3] = b;
+        sNext = (sNext + 1) % CAPACITY;
+        sTotal++;
+    }
+
+    // ============================================
+    // Dumping
+
+    /** Prints the buffered records, oldest first, with times relative to the newest one. */
+    public static synchronized void dump(PrintWriter pw, String prefix) {
+        int count = (int) Math.min(sTotal, CAPACITY);
+        pw.println(prefix + "ImeLog: " + count + " of " + sTotal + " records"
+                + (DEBUG ? "" : " (disabled in this build)"));
+        if (count == 0) {
+            return;
+        }
+        int first = (sNext - count + CAPACITY) % CAPACITY;
+        long newest = sRecords[((sNext - 1 + CAPACITY) % CAPACITY) * STRIDE];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int offset = ((first + i) % CAPACITY) * STRIDE;
+            int event = (int) sRecords[offset + 1];
+            line.setLength(0);
+            line.append(prefix).append("  ");
+            line.append(String.format("%9.3f", (sRecords[offset] - newest) / 1_000_000.0)).append("ms ");
+            line.append(sTags.get(event)).append(": ");
+            format(line, sFormats.get(event), sRecords[offset + 2], sRecords[offset + 3]);
+            pw.println(line);
+        }
+    }
+
+    /** Drops all records, e.g. between test runs. */
+    public static synchronized void clear() {
+        sNext = 0;
+        sTotal = 0;
+    }
+
+    static void format(StringBuilder out, String format, long a, long b) {
+        int argument = 0;
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c != '%' || i + 1 == format.length()) {
+                out.append(c);
+                continue;
+            }
+            char conversion = format.charAt(++i);
+            if (conversion == '%') {
+                out.append('%');
+                continue;
+            }
+            long value = argument++ == 0 ? a : b;
+            switch (conversion) {
+                case 'x':
+                    out.append("0x").append(Long.toHexString(value));
+                    break;
+                case 'b':
+                    out.append(value != 0);
+                    break;
+                case 'f':
+                    out.append(Float.intBitsToFloat((int) value));
+                    break;
+                default:
+                    out.append(value);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package example.android.package2.logging;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fixed-bucket latency histogram for timings taken on the typing path.
+ *
+ * Values are recorded in nanoseconds and bucketed by microsecond with four sub-buckets per
+ * power of two, so every percentile is within 25% of the real value from one microsecond
+ * up to about 68 seconds. Recording is a few shifts and an array increment and never allocates.
+ */
+public final class LatencyHistogram {
+
+    // Below 2^SUB_BITS microseconds every value has its own bucket; above that there are
+    // SUB_BUCKETS buckets per power of two
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS) * SUB_BUCKETS;
+
+    private final String mName;
+    private final long[] mBuckets = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mMaxNanos;
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        mBuckets[bucketOf(nanos / 1000)]++;
+        mCount++;
+        if (nanos > mMaxNanos) {
+            mMaxNanos = nanos;
+        }
+    }
+
+    /** Records the time elapsed since {@code startNanos}, taken from {@link System#nanoTime()}. */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the upper bound in microseconds of the bucket holding that percentile, or 0
+     * when nothing was recorded.
+     */
+    public synchronized long getPercentileMicros(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(mCount * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), mMaxNanos / 1000 + 1);
+            }
+        }
+        return mMaxNanos / 1000;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(mBuckets, 0);
+        mCount = 0;
+        mMaxNanos = 0;
+    }
+
+    public synchronized void dump(PrintWriter pw, String prefix) {
+        pw.println(String.format(Locale.US, "%s%-18s n=%-7d p50=%-7s p95=%-7s p99=%-7s max=%s",
+                prefix, mName, mCount,
+                formatMicros(getPercentileMicros(50)),
+                formatMicros(getPercentileMicros(95)),
+                formatMicros(getPercentileMicros(99)),
+                formatMicros(mMaxNanos / 1000)));
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /** Smallest value in microseconds that no longer falls into {@code bucket}. */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (1L << exponent) + ((long) (sub + 1) << (exponent - SUB_BITS));
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros < 1000) {
+            return micros + "us";
+        }
+        return String.format(Locale.US, "%.1fms", micros / 1000.0);
+    }
+}
@@ -4,20 +4,23 @@ import android.inputmethodservice.InputMethodService
 import android.util.Log
 import android.view.View
 import android.view.inputmethod.EditorInfo
+import example.android.package2.keyboard.EditorTextMirror
+import example.android.package2.logging.ImeLog
 
 /**
  * Main autofill coordination with proper field completion detection
  */
 class AutofillManager(
     private val inputMethodService: InputMethodService,
-    private val rootView: View
+    private val rootView: View,
+    private val textMirror: EditorTextMirror
 ) {
 
     private val formDataManager = FormDataManager(inputMethodService)
     private val suggestionBarUI = SuggestionBarUI(inputMethodService, rootView)
 
-    private var currentFieldType: FormDataManager.FieldType = FormDataManager.FieldType.UNKNOWN
-    private var previousFieldType: FormDataManager.FieldType = FormDataManager.FieldType.UNKNOWN
+    private var currentFieldType: FieldType = FieldType.UNKNOWN
+    private var previousFieldType: FieldType = FieldType.UNKNOWN
     private var lastFieldContent = ""
     private var currentFieldHash = ""
     private var lastProcessedFieldHash = ""
@@ -46,7 +49,7 @@ class AutofillManager(
         }
 
         // Save previous field data before switching (if we have valid previous data)
-        if (lastProcessedFieldHash.isNotEmpty() && previousFieldType != FormDataManager.FieldType.UNKNOWN) {
+        if (lastProcessedFieldHash.isNotEmpty() && previousFieldType != FieldType.UNKNOWN) {
             Log.d("SuggestionDebug", "Saving previous field before switching")
             savePreviousFieldIfCompleted()
         }
@@ -65,7 +68,7 @@ class AutofillManager(
         Log.d("SuggestionDebug", "Current field content on focus: '$lastFieldContent'")
 
         when (currentFieldType) {
-            FormDataManager.FieldType.UNKNOWN -> {
+            FieldType.UNKNOWN -> {
                 suggestionBarUI.hideSuggestionBar()
                 Log.d("SuggestionDebug", "Unknown field type - hiding suggestions")
             }
@@ -83,7 +86,7 @@ class AutofillManager(
         val newContent = getCurrentFieldContent()
         if (newContent != lastFieldContent) {
             lastFieldContent = newContent
-            Log.d("SuggestionDebug", "Field content updated: '$lastFieldContent'")
+            if (ImeLog.DEBUG) ImeLog.d(LOG_FIELD_CHANGED, newContent.length)
         }
     }
 
@@ -103,7 +106,7 @@ class AutofillManager(
         Log.d("SuggestionDebug", "Previous field type: $previousFieldType")
         Log.d("SuggestionDebug", "Content to save: '$contentToSave'")
 
-        if (previousFieldType != FormDataManager.FieldType.UNKNOWN &&
+        if (previousFieldType != FieldType.UNKNOWN &&
             contentToSave.isNotBlank() &&
             contentToSave.length >= 2) { // Minimum 2 characters
 
@@ -124,7 +127,7 @@ class AutofillManager(
         Log.d("SuggestionDebug", "Current field type: $currentFieldType")
         Log.d("SuggestionDebug", "Content to save: '$contentToSave'")
 
-        if (currentFieldType != FormDataManager.FieldType.UNKNOWN &&
+        if (currentFieldType != FieldType.UNKNOWN &&
             contentToSave.isNotBlank() &&
             contentToSave.length >= 2) {
 
@@ -153,23 +156,19 @@ class AutofillManager(
     // Helper Methods
 
     private fun getCurrentFieldContent(): String {
-        val ic = inputMethodService.currentInputConnection ?: return ""
+        if (inputMethodService.currentInputConnection == null) return ""
 
         try {
-            // Get text before and after cursor to reconstruct full field content
-            val textBefore = ic.getTextBeforeCursor(1000, 0) ?: ""
-            val textAfter = ic.getTextAfterCursor(1000, 0) ?: ""
-            val fullText = textBefore.toString() + textAfter.toString()
-
-            Log.d("SuggestionDebug", "Getting field content - before: '$textBefore', after: '$textAfter', full: '$fullText'")
-            return fullText
+            // The keyboard keeps a local copy of the text around the cursor, so reading the
+            // field does not need a round trip into the host app
+            return textMirror.getFieldText()
         } catch (e: Exception) {
             Log.e("SuggestionDebug", "Error getting field content", e)
             return ""
         }
     }
 
-    private fun showSuggestionsForField(fieldType: FormDataManager.FieldType) {
+    private fun showSuggestionsForField(fieldType: FieldType) {
         val suggestions = formDataManager.getSuggestions(fieldType)
 
         Log.d("SuggestionDebug", "Showing suggestions for $fieldType: ${suggestions.size} items")
@@ -190,9 +189,13 @@ class AutofillManager(
     // ============================================
     // Public Interface
 
-    fun getCurrentFieldType(): FormDataManager.FieldType = currentFieldType
+    fun getCurrentFieldType(): FieldType = currentFieldType
 
     fun hasCurrentSuggestions(): Boolean {
         return formDataManager.hasSuggestions(currentFieldType)
     }
-}
\ No newline at end of file
+
+    private companion object {
+        private val LOG_FIELD_CHANGED = ImeLog.event("SuggestionDebug", "field content length=%d")
+    }
+}
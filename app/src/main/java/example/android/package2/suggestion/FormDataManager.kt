@@ -2,9 +2,9 @@ package example.android.package2.suggestion
 
 import android.content.Context
 import android.content.SharedPreferences
-import android.text.InputType
 import android.util.Log
 import android.view.inputmethod.EditorInfo
+import example.android.package2.logging.ImeLog
 
 /**
  * Enhanced form data management with smart deduplication
@@ -16,49 +16,16 @@ class FormDataManager(context: Context) {
     // ============================================
     // Field Type Detection
 
-    enum class FieldType {
-        FIRST_NAME, LAST_NAME, FULL_NAME,
-        EMAIL, PHONE,
-        ADDRESS, CITY, STATE, ZIP,
-        COMPANY, USERNAME,
-        UNKNOWN
-    }
-
     fun detectFieldType(editorInfo: EditorInfo?): FieldType {
         if (editorInfo == null) return FieldType.UNKNOWN
 
-        val hint = editorInfo.hintText?.toString()?.lowercase() ?: ""
         val inputType = editorInfo.inputType
 
         Log.d("SuggestionDebug", "=== FIELD DETECTION DEBUG ===")
         Log.d("SuggestionDebug", "Raw hint: '${editorInfo.hintText}'")
         Log.d("SuggestionDebug", "Input type: 0x${Integer.toHexString(inputType)}")
 
-        // Hint text analysis
-        val detectedType = when {
-            hint.contains("first") && hint.contains("name") -> FieldType.FIRST_NAME
-            hint.contains("last") && hint.contains("name") -> FieldType.LAST_NAME
-            hint.contains("full") && hint.contains("name") -> FieldType.FULL_NAME
-            hint.contains("email") -> FieldType.EMAIL
-            hint.contains("phone") -> FieldType.PHONE
-            hint.contains("address") -> FieldType.ADDRESS
-            hint.contains("city") -> FieldType.CITY
-            hint.contains("state") -> FieldType.STATE
-            hint.contains("zip") -> FieldType.ZIP
-            hint.contains("company") -> FieldType.COMPANY
-            hint.contains("username") -> FieldType.USERNAME
-            else -> {
-                // Input type fallback
-                val inputVariation = inputType and InputType.TYPE_MASK_VARIATION
-                when {
-                    inputVariation == InputType.TYPE_TEXT_VARIATION_EMAIL_ADDRESS -> FieldType.EMAIL
-                    inputVariation == InputType.TYPE_TEXT_VARIATION_PERSON_NAME -> FieldType.FULL_NAME
-                    inputVariation == InputType.TYPE_TEXT_VARIATION_POSTAL_ADDRESS -> FieldType.ADDRESS
-                    inputType and InputType.TYPE_CLASS_PHONE != 0 -> FieldType.PHONE
-                    else -> FieldType.UNKNOWN
-                }
-            }
-        }
+        val detectedType = FieldTypeDetector.detectFieldType(editorInfo.hintText, inputType)
 
         Log.d("SuggestionDebug", "Final detected type: $detectedType")
         return detectedType
@@ -85,10 +52,10 @@ class FormDataManager(context: Context) {
         Log.d("SuggestionDebug", "Existing data for $key: $existingData")
 
         // Smart deduplication - remove variations of the same value
-        val normalizedValue = normalizeValue(cleanValue)
+        val normalizedValue = FieldTypeDetector.normalizeValue(cleanValue)
         val removedItems = mutableListOf<String>()
         existingData.removeAll {
-            val shouldRemove = normalizeValue(it) == normalizedValue
+            val shouldRemove = FieldTypeDetector.normalizeValue(it) == normalizedValue
             if (shouldRemove) removedItems.add(it)
             shouldRemove
         }
@@ -118,21 +85,13 @@ class FormDataManager(context: Context) {
         val key = fieldType.name
         val suggestions = prefs.getStringSet(key, emptySet())?.toList() ?: emptyList()
 
-        Log.d("SuggestionDebug", "=== getSuggestions called ===")
-        Log.d("SuggestionDebug", "Field type: $fieldType, Key: $key")
-        Log.d("SuggestionDebug", "Raw suggestions: $suggestions")
-
         // Filter out short or invalid suggestions
         val filteredSuggestions = suggestions.filter {
-            val isValid = it.trim().length >= 2 && isValidSuggestion(it, fieldType)
-            if (!isValid) {
-                Log.d("SuggestionDebug", "Filtered out invalid suggestion: '$it'")
-            }
-            isValid
+            it.trim().length >= 2 && isValidSuggestion(it, fieldType)
         }
 
         val finalSuggestions = filteredSuggestions.reversed() // Most recent first
-        Log.d("SuggestionDebug", "✓ Returning ${finalSuggestions.size} filtered suggestions: $finalSuggestions")
+        if (ImeLog.DEBUG) ImeLog.d(LOG_SUGGESTIONS, fieldType.ordinal, finalSuggestions.size)
         return finalSuggestions
     }
 
@@ -143,11 +102,6 @@ class FormDataManager(context: Context) {
     // ============================================
     // Helper Methods
 
-    private fun normalizeValue(value: String): String {
-        // Normalize for comparison - lowercase, no extra spaces
-        return value.lowercase().trim().replace(Regex("\\s+"), " ")
-    }
-
     private fun isValidSuggestion(value: String, fieldType: FieldType): Boolean {
         val trimmed = value.trim()
 
@@ -158,4 +112,8 @@ class FormDataManager(context: Context) {
             else -> trimmed.length >= 2
         }
     }
-}
\ No newline at end of file
+
+    private companion object {
+        private val LOG_SUGGESTIONS = ImeLog.event("SuggestionDebug", "getSuggestions fieldType=%d count=%d")
+    }
+}
@@ -4,11 +4,13 @@ import android.inputmethodservice.InputMethodService
 import android.util.Log
 import android.view.View
 import android.view.ViewGroup
+import android.view.ViewStub
 import android.view.inputmethod.InputConnection
 import android.widget.TextView
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import com.example.aosp_poc.R
+import example.android.package2.keyboard.DeferredStub
 
 /**
  * Enhanced suggestion display and interaction handling
@@ -19,8 +21,12 @@ class SuggestionBarUI(
 ) {
 
     private var suggestionBar: RecyclerView? = null
+    private var suggestionBarStub: ViewStub? = null
     private var suggestionAdapter: SuggestionAdapter? = null
 
+    // Whether the bar should show, kept while it is still being inflated
+    private var isBarShown = false
+
     init {
         setupSuggestionBar()
     }
@@ -29,26 +35,30 @@ class SuggestionBarUI(
     // Suggestion Bar Setup
 
     private fun setupSuggestionBar() {
-        suggestionBar = rootView.findViewById(R.id.suggestion_bar)
-        suggestionBar?.let { bar ->
-            suggestionAdapter = SuggestionAdapter { suggestion ->
-                onSuggestionClicked(suggestion)
-            }
-
-            bar.adapter = suggestionAdapter
-            bar.layoutManager = LinearLayoutManager(
-                inputMethodService,
-                LinearLayoutManager.HORIZONTAL,
-                false
-            )
-
-            // Start hidden
-            bar.visibility = View.GONE
+        suggestionAdapter = SuggestionAdapter { suggestion ->
+            onSuggestionClicked(suggestion)
+        }
 
-            Log.d("SuggestionManager", "Suggestion bar setup completed")
+        // The bar is inflated the first time it is shown, most fields never need it
+        when (val view = rootView.findViewById<View>(R.id.suggestion_bar)) {
+            is ViewStub -> suggestionBarStub = view
+            is RecyclerView -> bindSuggestionBar(view)
         }
     }
 
+    private fun bindSuggestionBar(bar: RecyclerView) {
+        suggestionBar = bar
+        bar.adapter = suggestionAdapter
+        bar.layoutManager = LinearLayoutManager(
+            inputMethodService,
+            LinearLayoutManager.HORIZONTAL,
+            false
+        )
+        bar.visibility = if (isBarShown) View.VISIBLE else View.GONE
+
+        Log.d("SuggestionManager", "Suggestion bar setup completed")
+    }
+
     // ============================================
     // Public Interface
 
@@ -58,11 +68,17 @@ class SuggestionBarUI(
     }
 
     fun showSuggestionBar() {
+        isBarShown = true
         suggestionBar?.visibility = View.VISIBLE
+        suggestionBarStub?.let { stub ->
+            suggestionBarStub = null
+            DeferredStub.inflateAfterDraw(stub) { view -> bindSuggestionBar(view as RecyclerView) }
+        }
         Log.d("SuggestionDebug", "SuggestionBarUI: Suggestion bar shown")
     }
 
     fun hideSuggestionBar() {
+        isBarShown = false
         suggestionBar?.visibility = View.GONE
         Log.d("SuggestionDebug", "SuggestionBarUI: Suggestion bar hidden")
     }
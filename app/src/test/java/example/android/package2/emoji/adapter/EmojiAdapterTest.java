@@ -0,0 +1,105 @@
+package example.android.package2.emoji.adapter;
+
+import android.content.Context;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import example.android.package2.emoji.data.Emoji;
+import kotlin.Unit;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class EmojiAdapterTest {
+
+    private static final Emoji GRIN = new Emoji("😀", "Grinning Face", "faces");
+    private static final Emoji JOY = new Emoji("😂", "Face with Tears of Joy", "faces");
+    private static final Emoji THUMBS = new Emoji("👍", "Thumbs Up", "hands");
+
+    private final List<Emoji> mClicked = new ArrayList<>();
+    private final List<Emoji> mLongClicked = new ArrayList<>();
+
+    private EmojiAdapter adapter() {
+        return new EmojiAdapter(
+                emoji -> {
+                    mClicked.add(emoji);
+                    return Unit.INSTANCE;
+                },
+                emoji -> {
+                    mLongClicked.add(emoji);
+                    return Unit.INSTANCE;
+                });
+    }
+
+    private static RecyclerView row(EmojiAdapter adapter) {
+        Context context = RuntimeEnvironment.getApplication();
+        RecyclerView recyclerView = new RecyclerView(context);
+        recyclerView.setLayoutManager(
+                new LinearLayoutManager(context, LinearLayoutManager.HORIZONTAL, false));
+        recyclerView.setAdapter(adapter);
+        recyclerView.measure(MeasureSpec.makeMeasureSpec(1080, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(200, MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 1080, 200);
+        return recyclerView;
+    }
+
+    @Test
+    public void cellsTakeTheMetricsAndTheirEmoji() {
+        EmojiAdapter adapter = adapter();
+        adapter.setCellMetrics(120, 20f);
+        adapter.submitList(Arrays.asList(GRIN, JOY));
+
+        RecyclerView recyclerView = row(adapter);
+
+        assertEquals(2, recyclerView.getChildCount());
+        View cell = recyclerView.getChildAt(1);
+        assertEquals(120, cell.getWidth());
+        assertEquals(120, cell.getHeight());
+        EmojiAdapter.EmojiViewHolder holder =
+                (EmojiAdapter.EmojiViewHolder) recyclerView.getChildViewHolder(cell);
+        assertEquals(JOY.getUnicode(), holder.getEmojiText().getText().toString());
+        float expectedPx = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 20f,
+                cell.getResources().getDisplayMetrics());
+        assertEquals(expectedPx, holder.getEmojiText().getTextSize(), 0.01f);
+    }
+
+    @Test
+    public void clicksResolveTheEmojiByPosition() {
+        EmojiAdapter adapter = adapter();
+        adapter.submitList(Arrays.asList(GRIN, JOY, THUMBS));
+        RecyclerView recyclerView = row(adapter);
+
+        recyclerView.getChildAt(2).performClick();
+        recyclerView.getChildAt(0).performLongClick();
+
+        assertEquals(Arrays.asList(THUMBS), mClicked);
+        assertEquals(Arrays.asList(GRIN), mLongClicked);
+    }
+
+    @Test
+    public void emojisKeepTheirIdAcrossLists() {
+        EmojiAdapter first = adapter();
+        first.submitList(Arrays.asList(GRIN, JOY));
+        EmojiAdapter second = adapter();
+        second.submitList(Arrays.asList(THUMBS, JOY));
+
+        assertTrue(first.hasStableIds());
+        assertEquals(first.getItemId(1), second.getItemId(1));
+        assertNotEquals(first.getItemId(0), second.getItemId(0));
+    }
+}
@@ -0,0 +1,111 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+import android.inputmethodservice.Keyboard;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that keyboards built from the compiled layouts match the ones
+ * {@link Keyboard} parses from the same XML, on a few screen sizes and densities.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class CompiledKeyboardLayoutTest {
+
+    private static final String[] SCREENS = {
+            "w320dp-h470dp-mdpi",
+            "w411dp-h891dp-xxhdpi",
+            "w393dp-h851dp-port-420dpi",
+            "w891dp-h411dp-land-xxhdpi",
+            "w1280dp-h800dp-xhdpi",
+    };
+
+    @Test
+    public void qwerty() {
+        assertMatchesXml(CompiledKeyboardLayouts.QWERTY);
+    }
+
+    @Test
+    public void symbols() {
+        assertMatchesXml(CompiledKeyboardLayouts.SYMBOLS);
+    }
+
+    @Test
+    public void symbolsShift() {
+        assertMatchesXml(CompiledKeyboardLayouts.SYMBOLS_SHIFT);
+    }
+
+    @Test
+    public void shiftKeyFollowsShiftState() {
+        Context context = RuntimeEnvironment.getApplication();
+        LatinKeyboard keyboard = new LatinKeyboard(context, CompiledKeyboardLayouts.QWERTY);
+        Keyboard.Key shiftKey = keyboard.getKeys().get(keyboard.getShiftKeyIndex());
+        assertEquals(Keyboard.KEYCODE_SHIFT, shiftKey.codes[0]);
+
+        assertTrue(keyboard.setShifted(true));
+        assertTrue(shiftKey.on);
+        assertTrue(keyboard.setShifted(false));
+        assertFalse(shiftKey.on);
+    }
+
+    private static void assertMatchesXml(CompiledKeyboardLayout layout) {
+        for (String screen : SCREENS) {
+            RuntimeEnvironment.setQualifiers(screen);
+            Context context = RuntimeEnvironment.getApplication();
+            LatinKeyboard xml = new LatinKeyboard(context, layout.xmlResId);
+            LatinKeyboard compiled = new LatinKeyboard(context, layout);
+
+            assertEquals(screen, xml.getMinWidth(), compiled.getMinWidth());
+            assertEquals(screen, xml.getHeight(), compiled.getHeight());
+            assertEquals(screen, xml.getShiftKeyIndex(), compiled.getShiftKeyIndex());
+            List<Keyboard.Key> xmlKeys = xml.getKeys();
+            List<Keyboard.Key> compiledKeys = compiled.getKeys();
+            assertEquals(screen, xmlKeys.size(), compiledKeys.size());
+            for (int i = 0; i < xmlKeys.size(); i++) {
+                assertKeyEquals(screen + " key " + i, xmlKeys.get(i), compiledKeys.get(i));
+            }
+
+            // The globe key shrinks and grows back from the saved copies
+            xml.setLanguageSwitchKeyVisibility(false);
+            compiled.setLanguageSwitchKeyVisibility(false);
+            for (int i = 0; i < xmlKeys.size(); i++) {
+                assertKeyEquals(screen + " hidden globe, key " + i, xmlKeys.get(i),
+                        compiledKeys.get(i));
+            }
+            xml.setLanguageSwitchKeyVisibility(true);
+            compiled.setLanguageSwitchKeyVisibility(true);
+            for (int i = 0; i < xmlKeys.size(); i++) {
+                assertKeyEquals(screen + " shown globe, key " + i, xmlKeys.get(i),
+                        compiledKeys.get(i));
+            }
+        }
+    }
+
+    private static void assertKeyEquals(String message, Keyboard.Key expected,
+                                        Keyboard.Key actual) {
+        assertTrue(message + " codes", Arrays.equals(expected.codes, actual.codes));
+        assertEquals(message + " label", Objects.toString(expected.label, null),
+                Objects.toString(actual.label, null));
+        assertEquals(message + " icon", expected.icon != null, actual.icon != null);
+        assertEquals(message + " x", expected.x, actual.x);
+        assertEquals(message + " y", expected.y, actual.y);
+        assertEquals(message + " width", expected.width, actual.width);
+        assertEquals(message + " height", expected.height, actual.height);
+        assertEquals(message + " gap", expected.gap, actual.gap);
+        assertEquals(message + " edgeFlags", expected.edgeFlags, actual.edgeFlags);
+        assertEquals(message + " sticky", expected.sticky, actual.sticky);
+        assertEquals(message + " modifier", expected.modifier, actual.modifier);
+        assertEquals(message + " repeatable", expected.repeatable, actual.repeatable);
+    }
+}
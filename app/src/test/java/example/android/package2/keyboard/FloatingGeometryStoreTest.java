@@ -0,0 +1,128 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class FloatingGeometryStoreTest {
+
+    private static FloatingGeometryStore load() {
+        Context context = RuntimeEnvironment.getApplication();
+        FloatingGeometryStore store = new FloatingGeometryStore(context, Runnable::run);
+        shadowOf(Looper.getMainLooper()).idle();
+        return store;
+    }
+
+    @Test
+    public void packKeepsPixelsAndScale() {
+        long packed = FloatingGeometryStore.pack(-40.4f, 1873.6f, 0.75f);
+
+        assertNotEquals(FloatingGeometryStore.NONE, packed);
+        assertEquals(-40f, FloatingGeometryStore.x(packed), 0f);
+        assertEquals(1874f, FloatingGeometryStore.y(packed), 0f);
+        assertEquals(0.75f, FloatingGeometryStore.scale(packed), 0f);
+    }
+
+    @Test
+    public void geometryIsKeptPerAppAndOrientation() {
+        String portrait = FloatingGeometryStore.key("com.example.chat",
+                Configuration.ORIENTATION_PORTRAIT, 1080, 2400);
+        String landscape = FloatingGeometryStore.key("com.example.chat",
+                Configuration.ORIENTATION_LANDSCAPE, 2400, 1080);
+
+        FloatingGeometryStore store = load();
+        store.put(portrait, 100f, 900f, 0.8f);
+
+        assertEquals(FloatingGeometryStore.NONE, store.get(landscape));
+        assertEquals(900f, FloatingGeometryStore.y(store.get(portrait)), 0f);
+    }
+
+    @Test
+    public void geometrySurvivesANewStore() {
+        String key = FloatingGeometryStore.key("com.example.notes",
+                Configuration.ORIENTATION_PORTRAIT, 1080, 2400);
+        load().put(key, 20f, 1500f, 0.6f);
+
+        FloatingGeometryStore reloaded = load();
+
+        assertTrue(reloaded.isLoaded());
+        long packed = reloaded.get(key);
+        assertEquals(20f, FloatingGeometryStore.x(packed), 0f);
+        assertEquals(1500f, FloatingGeometryStore.y(packed), 0f);
+        assertEquals(0.6f, FloatingGeometryStore.scale(packed), 0f);
+    }
+
+    @Test
+    public void putBeforeLoadWins() {
+        String key = FloatingGeometryStore.key("com.example.mail",
+                Configuration.ORIENTATION_PORTRAIT, 1080, 2400);
+        load().put(key, 10f, 10f, 0.9f);
+
+        Context context = RuntimeEnvironment.getApplication();
+        Runnable[] pendingLoad = new Runnable[1];
+        FloatingGeometryStore store = new FloatingGeometryStore(context, r -> pendingLoad[0] = r);
+        assertFalse(store.isLoaded());
+        assertEquals(FloatingGeometryStore.NONE, store.get(key));
+
+        store.put(key, 300f, 700f, 0.7f);
+        pendingLoad[0].run();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(300f, FloatingGeometryStore.x(store.get(key)), 0f);
+        assertEquals(300f, FloatingGeometryStore.x(load().get(key)), 0f);
+    }
+
+    @Test
+    public void putWhileLoadingSurvivesAFullFile() {
+        FloatingGeometryStore full = load();
+        for (int i = 0; i < 64; i++) {
+            full.put(app(i), i, i, 0.8f);
+        }
+
+        Context context = RuntimeEnvironment.getApplication();
+        Runnable[] pendingLoad = new Runnable[1];
+        FloatingGeometryStore store = new FloatingGeometryStore(context, r -> pendingLoad[0] = r);
+        store.put(app(64), 64f, 64f, 0.8f);
+        pendingLoad[0].run();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertNotEquals(FloatingGeometryStore.NONE, store.get(app(64)));
+        assertEquals(FloatingGeometryStore.NONE, store.get(app(0)));
+        FloatingGeometryStore reloaded = load();
+        assertNotEquals(FloatingGeometryStore.NONE, reloaded.get(app(64)));
+        assertEquals(FloatingGeometryStore.NONE, reloaded.get(app(0)));
+    }
+
+    @Test
+    public void orderOfUseSurvivesANewStore() {
+        FloatingGeometryStore store = load();
+        for (int i = 0; i < 64; i++) {
+            store.put(app(i), i, i, 0.8f);
+        }
+        // Used again with the same geometry, so app 1 is now the least recently used
+        store.put(app(0), 0f, 0f, 0.8f);
+
+        FloatingGeometryStore reloaded = load();
+        reloaded.put(app(64), 64f, 64f, 0.8f);
+
+        assertNotEquals(FloatingGeometryStore.NONE, reloaded.get(app(0)));
+        assertEquals(FloatingGeometryStore.NONE, reloaded.get(app(1)));
+        assertNotEquals(FloatingGeometryStore.NONE, reloaded.get(app(64)));
+    }
+
+    private static String app(int i) {
+        return FloatingGeometryStore.key("com.example.app" + i,
+                Configuration.ORIENTATION_PORTRAIT, 1080, 2400);
+    }
+}
@@ -0,0 +1,77 @@
+package example.android.package2.keyboard;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class FloatingTransformControllerTest {
+
+    private static final class RecordingListener
+            implements FloatingTransformController.Listener {
+        int moves;
+        int scales;
+        int applied;
+        float x;
+        float y;
+        float scale;
+
+        @Override
+        public void onMove(float x, float y) {
+            moves++;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public void onScale(float scale) {
+            scales++;
+            this.scale = scale;
+        }
+
+        @Override
+        public void onTransformApplied() {
+            applied++;
+        }
+    }
+
+    @Test
+    public void appliesOnlyTheLatestTargetOnce() {
+        RecordingListener listener = new RecordingListener();
+        FloatingTransformController controller = new FloatingTransformController(listener);
+
+        controller.moveTo(10f, 20f);
+        controller.moveTo(30f, 40f);
+        controller.scaleTo(0.7f);
+        controller.scaleTo(0.8f);
+        controller.flush();
+
+        assertEquals(1, listener.moves);
+        assertEquals(1, listener.scales);
+        assertEquals(1, listener.applied);
+        assertEquals(30f, listener.x, 0f);
+        assertEquals(40f, listener.y, 0f);
+        assertEquals(0.8f, listener.scale, 0f);
+
+        // Nothing left to apply
+        controller.flush();
+        assertEquals(1, listener.applied);
+    }
+
+    @Test
+    public void cancelDropsPendingTarget() {
+        RecordingListener listener = new RecordingListener();
+        FloatingTransformController controller = new FloatingTransformController(listener);
+
+        controller.moveTo(10f, 20f);
+        controller.cancel();
+        controller.flush();
+
+        assertEquals(0, listener.moves);
+        assertEquals(0, listener.applied);
+    }
+}
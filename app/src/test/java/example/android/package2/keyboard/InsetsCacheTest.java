@@ -0,0 +1,46 @@
+package example.android.package2.keyboard;
+
+import android.graphics.Rect;
+import android.inputmethodservice.InputMethodService;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class InsetsCacheTest {
+
+    @Test
+    public void sameFloatingInsetsAreReused() {
+        InsetsCache cache = new InsetsCache();
+        assertTrue(cache.updateFloating(2400, 80, 150, 1000, 1000));
+        assertFalse(cache.updateFloating(2400, 80, 150, 1000, 1000));
+
+        InputMethodService.Insets insets = new InputMethodService.Insets();
+        cache.applyFloatingInsets(insets);
+
+        assertEquals(2400, insets.contentTopInsets);
+        assertEquals(2400, insets.visibleTopInsets);
+        assertEquals(InputMethodService.Insets.TOUCHABLE_INSETS_REGION, insets.touchableInsets);
+        assertEquals(new Rect(80, 150, 1000, 1000), insets.touchableRegion.getBounds());
+    }
+
+    @Test
+    public void movedRegionOrModeChangeRecomputes() {
+        InsetsCache cache = new InsetsCache();
+        cache.updateFloating(2400, 80, 150, 1000, 1000);
+
+        assertTrue(cache.updateFloating(2400, 81, 150, 1001, 1000));
+        assertTrue(cache.updateFloating(2300, 81, 150, 1001, 1000));
+        assertTrue(cache.updateDocked(700, 0, 110));
+        assertFalse(cache.updateDocked(700, 0, 110));
+        assertTrue(cache.updateDocked(700, 126, 110));
+
+        cache.invalidate();
+        assertTrue(cache.updateDocked(700, 126, 110));
+    }
+}
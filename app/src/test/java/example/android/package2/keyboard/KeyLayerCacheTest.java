@@ -0,0 +1,79 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.inputmethodservice.Keyboard;
+
+import com.example.aosp_poc.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class KeyLayerCacheTest {
+
+    @Test
+    public void newGenerationDropsOlderLayersOfTheSameKeyboard() {
+        Context context = RuntimeEnvironment.getApplication();
+        Keyboard qwerty = new Keyboard(context, R.xml.qwerty);
+        Keyboard symbols = new Keyboard(context, R.xml.symbols);
+        KeyLayerCache cache = new KeyLayerCache(1 << 20);
+        FakeLayer unshifted = new FakeLayer();
+        FakeLayer shifted = new FakeLayer();
+        FakeLayer other = new FakeLayer();
+        cache.put(qwerty, 0, false, 0, 1080, unshifted);
+        cache.put(qwerty, 0, true, 0, 1080, shifted);
+        cache.put(symbols, 0, false, 0, 1080, other);
+
+        cache.put(qwerty, 1, false, 0, 1080, new FakeLayer());
+
+        assertNull(cache.get(qwerty, 0, false, 0, 1080));
+        assertNull(cache.get(qwerty, 0, true, 0, 1080));
+        assertTrue(unshifted.mReleased);
+        assertTrue(shifted.mReleased);
+        assertNotNull(cache.get(qwerty, 1, false, 0, 1080));
+        assertSame(other, cache.get(symbols, 0, false, 0, 1080));
+        assertFalse(other.mReleased);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() {
+        Context context = RuntimeEnvironment.getApplication();
+        Keyboard qwerty = new Keyboard(context, R.xml.qwerty);
+        KeyLayerCache cache = new KeyLayerCache(2 * FakeLayer.BYTES);
+        cache.put(qwerty, 0, false, 0, 1080, new FakeLayer());
+        cache.put(qwerty, 0, true, 0, 1080, new FakeLayer());
+        // Touch the unshifted layer so the shifted one is the eldest
+        assertNotNull(cache.get(qwerty, 0, false, 0, 1080));
+        cache.put(qwerty, 0, false, 0, 2340, new FakeLayer());
+
+        assertNotNull(cache.get(qwerty, 0, false, 0, 1080));
+        assertNull(cache.get(qwerty, 0, true, 0, 1080));
+        assertNotNull(cache.get(qwerty, 0, false, 0, 2340));
+    }
+
+    private static final class FakeLayer implements KeyLayerCache.Layer {
+        static final long BYTES = 1024;
+        boolean mReleased;
+
+        @Override
+        public void draw(Canvas canvas) {
+        }
+
+        @Override
+        public long getByteCount() {
+            return BYTES;
+        }
+
+        @Override
+        public void release() {
+            mReleased = true;
+        }
+    }
+}
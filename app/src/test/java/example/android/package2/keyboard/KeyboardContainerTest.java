@@ -0,0 +1,74 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class KeyboardContainerTest {
+
+    private static final int WIDTH = 1080;
+
+    @Test
+    public void stacksChildrenAndSkipsFloatingOnes() {
+        Context context = RuntimeEnvironment.getApplication();
+        KeyboardContainer container = new KeyboardContainer(context);
+        View bar = child(container, 120, false);
+        View keys = child(container, 600, false);
+        View handle = child(container, 60, true);
+        handle.getLayoutParams().width = 60;
+
+        layout(container);
+
+        assertEquals(720, container.getMeasuredHeight());
+        assertEquals(0, bar.getTop());
+        assertEquals(WIDTH, bar.getWidth());
+        assertEquals(120, keys.getTop());
+        assertEquals(720, keys.getBottom());
+        assertEquals(0, handle.getLeft());
+        assertEquals(0, handle.getTop());
+        assertEquals(60, handle.getWidth());
+    }
+
+    @Test
+    public void hiddenChildrenTakeNoSpace() {
+        Context context = RuntimeEnvironment.getApplication();
+        KeyboardContainer container = new KeyboardContainer(context);
+        View bar = child(container, 120, false);
+        View keys = child(container, 600, false);
+
+        bar.setVisibility(View.GONE);
+        layout(container);
+        assertEquals(600, container.getMeasuredHeight());
+        assertEquals(0, keys.getTop());
+
+        bar.setVisibility(View.VISIBLE);
+        layout(container);
+        assertEquals(720, container.getMeasuredHeight());
+        assertEquals(120, keys.getTop());
+    }
+
+    private static View child(KeyboardContainer container, int height, boolean floating) {
+        View child = new View(container.getContext());
+        KeyboardContainer.LayoutParams lp = new KeyboardContainer.LayoutParams(
+                KeyboardContainer.LayoutParams.MATCH_PARENT, height);
+        lp.floating = floating;
+        container.addView(child, lp);
+        return child;
+    }
+
+    private static void layout(KeyboardContainer container) {
+        container.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(2000, MeasureSpec.AT_MOST));
+        container.layout(0, 0, container.getMeasuredWidth(), container.getMeasuredHeight());
+    }
+}
@@ -0,0 +1,45 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class KeyboardSetCacheTest {
+
+    @Test
+    public void reusesSetForSameConfiguration() {
+        Context context = RuntimeEnvironment.getApplication();
+        KeyboardSetCache cache = new KeyboardSetCache(2);
+        KeyboardSetCache.KeyboardSet portrait = new KeyboardSetCache.KeyboardSet(context);
+        KeyboardSetCache.KeyboardSet landscape = new KeyboardSetCache.KeyboardSet(context);
+        cache.put(1080, 420, null, portrait);
+        cache.put(2340, 420, null, landscape);
+
+        assertSame(portrait, cache.get(1080, 420, null));
+        assertSame(landscape, cache.get(2340, 420, null));
+        assertNull(cache.get(1080, 560, null));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        Context context = RuntimeEnvironment.getApplication();
+        KeyboardSetCache cache = new KeyboardSetCache(2);
+        cache.put(1080, 420, null, new KeyboardSetCache.KeyboardSet(context));
+        cache.put(2340, 420, null, new KeyboardSetCache.KeyboardSet(context));
+        // Touch the portrait set so the landscape one is the eldest
+        assertNotNull(cache.get(1080, 420, null));
+        cache.put(1768, 420, null, new KeyboardSetCache.KeyboardSet(context));
+
+        assertNotNull(cache.get(1080, 420, null));
+        assertNull(cache.get(2340, 420, null));
+        assertNotNull(cache.get(1768, 420, null));
+    }
+}
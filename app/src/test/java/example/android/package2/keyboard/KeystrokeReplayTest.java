@@ -0,0 +1,178 @@
+package example.android.package2.keyboard;
+
+import android.os.Looper;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Replays recorded typing sessions through {@link SoftKeyboard} on the JVM and checks
+ * editor calls and allocations against the baselines in {@code keystroke_budget.properties}.
+ * Throughput is left to on-device tracing: wall-clock time on a shared CI machine says more
+ * about the machine than about the keyboard.
+ *
+ * A trace without baselines is skipped, and the skip message in the test report carries
+ * the measured values to record.
+ *
+ * Each key is pressed the way {@code KeyboardView} does it (onPress, onKey, onRelease),
+ * the editor reports the new selection, and one frame passes so the emoji row and autofill
+ * work runs too. A trace is replayed once to warm up, then measured over several rounds.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class KeystrokeReplayTest {
+
+    private static final int MEASURED_ROUNDS = 5;
+    private static final Duration FRAME = Duration.ofMillis(16);
+    // Allocation counts move a little with the JDK and Robolectric versions
+    private static final double BYTES_MARGIN = 1.10;
+
+    private ServiceController<ReplaySoftKeyboard> mController;
+    private ReplaySoftKeyboard mKeyboard;
+    private RecordingInputConnection mEditor;
+
+    /** SoftKeyboard talking to the fake editor instead of a bound client. */
+    public static final class ReplaySoftKeyboard extends SoftKeyboard {
+        InputConnection mConnection;
+        EditorInfo mEditorInfo;
+
+        @Override
+        public InputConnection getCurrentInputConnection() {
+            return mConnection;
+        }
+
+        @Override
+        public EditorInfo getCurrentInputEditorInfo() {
+            return mEditorInfo;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mController = Robolectric.buildService(ReplaySoftKeyboard.class).create();
+        mKeyboard = mController.get();
+        mEditor = new RecordingInputConnection(mKeyboard);
+        mKeyboard.mConnection = mEditor;
+        mKeyboard.onInitializeInterface();
+        mKeyboard.setInputView(mKeyboard.onCreateInputView());
+    }
+
+    @After
+    public void tearDown() {
+        mController.destroy();
+    }
+
+    @Test
+    public void chat() throws IOException {
+        replayWithinBudget("chat");
+    }
+
+    @Test
+    public void form() throws IOException {
+        replayWithinBudget("form");
+    }
+
+    @Test
+    public void password() throws IOException {
+        replayWithinBudget("password");
+    }
+
+    private void replayWithinBudget(String name) throws IOException {
+        KeystrokeTrace trace = KeystrokeTrace.load(name);
+        Properties budget = loadBudget();
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        replay(trace);
+
+        mEditor.resetCounts();
+        long startBytes = threads.getThreadAllocatedBytes(threadId);
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            replay(trace);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - startBytes;
+
+        long keystrokes = (long) trace.getKeyCount() * MEASURED_ROUNDS;
+        // Every round replays the same keys, so the count is exact and a whole number per round
+        long ipcCallsPerRound = mEditor.getTotalCalls() / MEASURED_ROUNDS;
+        long bytesPerKeystroke = allocated / keystrokes;
+        String ipcKey = name + ".ipcCallsPerRound";
+        String bytesKey = name + ".bytesPerKeystroke";
+        assumeTrue("No baseline in keystroke_budget.properties yet, measured "
+                        + ipcKey + "=" + ipcCallsPerRound + " " + bytesKey + "=" + bytesPerKeystroke,
+                budget.containsKey(ipcKey) && budget.containsKey(bytesKey));
+
+        long expectedIpcCallsPerRound = Long.parseLong(budget.getProperty(ipcKey));
+        assertEquals(String.format(Locale.US,
+                        "%s over %d rounds (commitText %d, setComposingText %d, batch %d,"
+                                + " reads %d)",
+                        ipcKey, MEASURED_ROUNDS,
+                        mEditor.getCalls(InputConnectionStats.COMMIT_TEXT),
+                        mEditor.getCalls(InputConnectionStats.SET_COMPOSING_TEXT),
+                        mEditor.getCalls(InputConnectionStats.BEGIN_BATCH_EDIT),
+                        mEditor.getCalls(InputConnectionStats.GET_TEXT_BEFORE_CURSOR)
+                                + mEditor.getCalls(InputConnectionStats.GET_TEXT_AFTER_CURSOR)),
+                expectedIpcCallsPerRound * MEASURED_ROUNDS, mEditor.getTotalCalls());
+
+        long baselineBytesPerKeystroke = Long.parseLong(budget.getProperty(bytesKey));
+        assertTrue(bytesKey + " is " + bytesPerKeystroke + ", baseline is "
+                        + baselineBytesPerKeystroke,
+                bytesPerKeystroke <= baselineBytesPerKeystroke * BYTES_MARGIN);
+    }
+
+    private void replay(KeystrokeTrace trace) {
+        int fieldId = 1;
+        for (KeystrokeTrace.Field field : trace.mFields) {
+            EditorInfo editorInfo = field.toEditorInfo(fieldId++);
+            mEditor.clearText();
+            mKeyboard.mEditorInfo = editorInfo;
+            mKeyboard.onStartInput(editorInfo, false);
+            mKeyboard.onStartInputView(editorInfo, false);
+
+            for (int[] keyCodes : field.mKeys) {
+                int primaryCode = keyCodes[0];
+                mKeyboard.onPress(primaryCode);
+                mKeyboard.onKey(primaryCode, keyCodes);
+                mKeyboard.onRelease(primaryCode);
+                mEditor.reportSelection(mKeyboard);
+                shadowOf(Looper.getMainLooper()).idleFor(FRAME);
+            }
+
+            mKeyboard.onFinishInputView(true);
+            mKeyboard.onFinishInput();
+            shadowOf(Looper.getMainLooper()).idle();
+            assertTrue(trace.mName + "/" + field.mName + " left the editor empty",
+                    mEditor.getEditable().length() > 0);
+        }
+    }
+
+    private static Properties loadBudget() throws IOException {
+        Properties budget = new Properties();
+        try (InputStream in = KeystrokeReplayTest.class.getClassLoader()
+                .getResourceAsStream("keystroke_budget.properties")) {
+            assertNotNull("Missing keystroke_budget.properties", in);
+            budget.load(in);
+        }
+        return budget;
+    }
+}
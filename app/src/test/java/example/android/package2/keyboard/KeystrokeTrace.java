@@ -0,0 +1,151 @@
+package example.android.package2.keyboard;
+
+import android.inputmethodservice.Keyboard;
+import android.view.inputmethod.EditorInfo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recorded typing session for {@link KeystrokeReplayTest}, read from
+ * {@code src/test/resources/keystroke_traces}.
+ *
+ * A trace is a list of fields, each followed by the keys typed into it:
+ * <pre>
+ * # comment
+ * field first_name
+ * package com.example.aosp_poc
+ * inputType 0x61
+ * imeOptions 0x5
+ * hint Enter your first name
+ * type Jane
+ * key DELETE
+ * </pre>
+ * {@code type} presses one key per character of the rest of the line; the keyboard decides
+ * capitalization from its shift state, so traces use {@code key SHIFT} where a user would.
+ * {@code key} presses one key: a name
+ * ({@code DELETE}, {@code SHIFT}, {@code MODE_CHANGE}, {@code ENTER}, {@code SPACE}) or
+ * a key code.
+ */
+final class KeystrokeTrace {
+
+    static final class Field {
+        final String mName;
+        String mPackageName = "";
+        int mInputType;
+        int mImeOptions;
+        String mHint;
+        /** Key codes as passed to onKey; one array per key so replay does not allocate. */
+        final List<int[]> mKeys = new ArrayList<>();
+
+        Field(String name) {
+            mName = name;
+        }
+
+        EditorInfo toEditorInfo(int fieldId) {
+            EditorInfo info = new EditorInfo();
+            info.packageName = mPackageName;
+            info.fieldId = fieldId;
+            info.fieldName = mName;
+            info.inputType = mInputType;
+            info.imeOptions = mImeOptions;
+            info.hintText = mHint;
+            return info;
+        }
+    }
+
+    final String mName;
+    final List<Field> mFields = new ArrayList<>();
+
+    private KeystrokeTrace(String name) {
+        mName = name;
+    }
+
+    int getKeyCount() {
+        int count = 0;
+        for (Field field : mFields) {
+            count += field.mKeys.size();
+        }
+        return count;
+    }
+
+    /** Loads {@code keystroke_traces/<name>.trace} from the test resources. */
+    static KeystrokeTrace load(String name) throws IOException {
+        String path = "keystroke_traces/" + name + ".trace";
+        InputStream in = KeystrokeTrace.class.getClassLoader().getResourceAsStream(path);
+        if (in == null) {
+            throw new IOException("Missing trace " + path);
+        }
+        KeystrokeTrace trace = new KeystrokeTrace(name);
+        try (BufferedReader reader =
+                     new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            Field field = null;
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                String directive = space < 0 ? line : line.substring(0, space);
+                String value = space < 0 ? "" : line.substring(space + 1);
+                if (directive.equals("field")) {
+                    field = new Field(value);
+                    trace.mFields.add(field);
+                    continue;
+                }
+                if (field == null) {
+                    throw new IOException(path + ":" + lineNumber + ": expected 'field' first");
+                }
+                switch (directive) {
+                    case "package":
+                        field.mPackageName = value;
+                        break;
+                    case "inputType":
+                        field.mInputType = Integer.decode(value);
+                        break;
+                    case "imeOptions":
+                        field.mImeOptions = Integer.decode(value);
+                        break;
+                    case "hint":
+                        field.mHint = value;
+                        break;
+                    case "type":
+                        for (int i = 0; i < value.length(); i++) {
+                            field.mKeys.add(new int[] {value.charAt(i)});
+                        }
+                        break;
+                    case "key":
+                        field.mKeys.add(new int[] {parseKey(value)});
+                        break;
+                    default:
+                        throw new IOException(path + ":" + lineNumber + ": unknown '" + directive + "'");
+                }
+            }
+        }
+        return trace;
+    }
+
+    private static int parseKey(String key) {
+        switch (key) {
+            case "DELETE":
+                return Keyboard.KEYCODE_DELETE;
+            case "SHIFT":
+                return Keyboard.KEYCODE_SHIFT;
+            case "MODE_CHANGE":
+                return Keyboard.KEYCODE_MODE_CHANGE;
+            case "ENTER":
+                return '\n';
+            case "SPACE":
+                return ' ';
+            default:
+                return Integer.decode(key);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.KeyboardView;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeProvider;
+
+import com.example.aosp_poc.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class LatinKeyboardViewTest {
+
+    @Test
+    public void keysAreVirtualViewsForTouchExploration() {
+        Context context = RuntimeEnvironment.getApplication();
+        LatinKeyboard keyboard = new LatinKeyboard(context, R.xml.qwerty);
+        LatinKeyboardView view = new LatinKeyboardView(context, null);
+        List<Integer> sent = new ArrayList<>();
+        view.setOnKeyboardActionListener(new RecordingListener(sent));
+        view.setKeyboard(keyboard);
+        view.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+
+        AccessibilityNodeProvider provider = view.getAccessibilityNodeProvider();
+        assertNotNull(provider);
+        int q = indexOf(keyboard, 'q');
+        int delete = indexOf(keyboard, Keyboard.KEYCODE_DELETE);
+
+        AccessibilityNodeInfo qNode = provider.createAccessibilityNodeInfo(q);
+        assertEquals("q", qNode.getContentDescription().toString());
+        assertEquals("Delete",
+                provider.createAccessibilityNodeInfo(delete).getContentDescription().toString());
+
+        assertTrue(provider.performAction(q, AccessibilityNodeInfo.ACTION_CLICK, null));
+        assertEquals(List.of((int) 'q'), sent);
+    }
+
+    private static int indexOf(Keyboard keyboard, int code) {
+        List<Keyboard.Key> keys = keyboard.getKeys();
+        for (int i = 0; i < keys.size(); i++) {
+            if (keys.get(i).codes[0] == code) {
+                return i;
+            }
+        }
+        throw new AssertionError("No key " + code);
+    }
+
+    private static final class RecordingListener implements KeyboardView.OnKeyboardActionListener {
+        private final List<Integer> mSent;
+
+        RecordingListener(List<Integer> sent) {
+            mSent = sent;
+        }
+
+        @Override
+        public void onKey(int primaryCode, int[] keyCodes) {
+            mSent.add(primaryCode);
+        }
+
+        @Override public void onPress(int primaryCode) {}
+        @Override public void onRelease(int primaryCode) {}
+        @Override public void onText(CharSequence text) {}
+        @Override public void swipeLeft() {}
+        @Override public void swipeRight() {}
+        @Override public void swipeDown() {}
+        @Override public void swipeUp() {}
+    }
+}
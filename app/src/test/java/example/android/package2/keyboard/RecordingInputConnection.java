@@ -0,0 +1,286 @@
+package example.android.package2.keyboard;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.Selection;
+import android.view.KeyEvent;
+import android.view.View;
+import android.view.inputmethod.BaseInputConnection;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
+import android.view.inputmethod.InputContentInfo;
+
+import java.util.Arrays;
+
+/**
+ * An editor for {@link KeystrokeReplayTest}: a real {@link Editable} edited by the
+ * framework's {@link BaseInputConnection}, with every call the keyboard makes counted.
+ *
+ * Calls the base class makes to itself (a commit opening its own batch edit, ...) are not
+ * counted, so the counts are what would cross the process boundary on a device.
+ */
+final class RecordingInputConnection extends BaseInputConnection {
+
+    private final Editable mEditable = Editable.Factory.getInstance().newEditable("");
+    private final long[] mCalls = new long[InputConnectionStats.COMMIT_CONTENT + 1];
+    private long mTotalCalls;
+    private int mDepth;
+
+    // Last state reported through onUpdateSelection
+    private int mReportedSelStart;
+    private int mReportedSelEnd;
+
+    RecordingInputConnection(Context context) {
+        super(new View(context), true);
+    }
+
+    /** Empties the editor for the next field; call counts are kept. */
+    void clearText() {
+        mEditable.clear();
+        removeComposingSpans(mEditable);
+        Selection.setSelection(mEditable, 0);
+        mReportedSelStart = 0;
+        mReportedSelEnd = 0;
+    }
+
+    void resetCounts() {
+        Arrays.fill(mCalls, 0);
+        mTotalCalls = 0;
+    }
+
+    long getTotalCalls() {
+        return mTotalCalls;
+    }
+
+    long getCalls(int method) {
+        return mCalls[method];
+    }
+
+    /**
+     * Tells the keyboard where the cursor is now, as the editor does after each edit. Only
+     * reports changes, so the keyboard sees the same callbacks it would on a device.
+     */
+    void reportSelection(SoftKeyboard keyboard) {
+        int selStart = Selection.getSelectionStart(mEditable);
+        int selEnd = Selection.getSelectionEnd(mEditable);
+        if (selStart == mReportedSelStart && selEnd == mReportedSelEnd) {
+            return;
+        }
+        keyboard.onUpdateSelection(mReportedSelStart, mReportedSelEnd, selStart, selEnd,
+                getComposingSpanStart(mEditable), getComposingSpanEnd(mEditable));
+        mReportedSelStart = selStart;
+        mReportedSelEnd = selEnd;
+    }
+
+    @Override
+    public Editable getEditable() {
+        return mEditable;
+    }
+
+    // ============================================
+    // Recorded calls
+
+    @Override
+    public CharSequence getTextBeforeCursor(int n, int flags) {
+        enter(InputConnectionStats.GET_TEXT_BEFORE_CURSOR);
+        try {
+            return super.getTextBeforeCursor(n, flags);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public CharSequence getTextAfterCursor(int n, int flags) {
+        enter(InputConnectionStats.GET_TEXT_AFTER_CURSOR);
+        try {
+            return super.getTextAfterCursor(n, flags);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public CharSequence getSelectedText(int flags) {
+        enter(InputConnectionStats.GET_SELECTED_TEXT);
+        try {
+            return super.getSelectedText(flags);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public int getCursorCapsMode(int reqModes) {
+        enter(InputConnectionStats.GET_CURSOR_CAPS_MODE);
+        try {
+            return super.getCursorCapsMode(reqModes);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public ExtractedText getExtractedText(ExtractedTextRequest request, int flags) {
+        enter(InputConnectionStats.GET_EXTRACTED_TEXT);
+        try {
+            return super.getExtractedText(request, flags);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean commitText(CharSequence text, int newCursorPosition) {
+        enter(InputConnectionStats.COMMIT_TEXT);
+        try {
+            return super.commitText(text, newCursorPosition);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean setComposingText(CharSequence text, int newCursorPosition) {
+        enter(InputConnectionStats.SET_COMPOSING_TEXT);
+        try {
+            return super.setComposingText(text, newCursorPosition);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean setComposingRegion(int start, int end) {
+        enter(InputConnectionStats.SET_COMPOSING_REGION);
+        try {
+            return super.setComposingRegion(start, end);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean finishComposingText() {
+        enter(InputConnectionStats.FINISH_COMPOSING_TEXT);
+        try {
+            return super.finishComposingText();
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+        enter(InputConnectionStats.DELETE_SURROUNDING_TEXT);
+        try {
+            return super.deleteSurroundingText(beforeLength, afterLength);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean setSelection(int start, int end) {
+        enter(InputConnectionStats.SET_SELECTION);
+        try {
+            return super.setSelection(start, end);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean beginBatchEdit() {
+        enter(InputConnectionStats.BEGIN_BATCH_EDIT);
+        try {
+            return super.beginBatchEdit();
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean endBatchEdit() {
+        enter(InputConnectionStats.END_BATCH_EDIT);
+        try {
+            return super.endBatchEdit();
+        } finally {
+            exit();
+        }
+    }
+
+    /** Applies enter, backspace and digits the way a text view would. */
+    @Override
+    public boolean sendKeyEvent(KeyEvent event) {
+        enter(InputConnectionStats.SEND_KEY_EVENT);
+        try {
+            if (event.getAction() != KeyEvent.ACTION_DOWN) {
+                return true;
+            }
+            int keyCode = event.getKeyCode();
+            if (keyCode == KeyEvent.KEYCODE_DEL) {
+                super.deleteSurroundingText(1, 0);
+            } else if (keyCode == KeyEvent.KEYCODE_ENTER) {
+                super.commitText("\n", 1);
+            } else if (keyCode >= KeyEvent.KEYCODE_0 && keyCode <= KeyEvent.KEYCODE_9) {
+                super.commitText(String.valueOf((char) ('0' + keyCode - KeyEvent.KEYCODE_0)), 1);
+            }
+            return true;
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean clearMetaKeyStates(int states) {
+        enter(InputConnectionStats.CLEAR_META_KEY_STATES);
+        try {
+            return super.clearMetaKeyStates(states);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean performEditorAction(int editorAction) {
+        enter(InputConnectionStats.PERFORM_EDITOR_ACTION);
+        try {
+            return true;
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean requestCursorUpdates(int cursorUpdateMode) {
+        enter(InputConnectionStats.REQUEST_CURSOR_UPDATES);
+        try {
+            return true;
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean commitContent(InputContentInfo inputContentInfo, int flags, Bundle opts) {
+        enter(InputConnectionStats.COMMIT_CONTENT);
+        try {
+            return false;
+        } finally {
+            exit();
+        }
+    }
+
+    private void enter(int method) {
+        if (mDepth++ == 0) {
+            mCalls[method]++;
+            mTotalCalls++;
+        }
+    }
+
+    private void exit() {
+        mDepth--;
+    }
+}
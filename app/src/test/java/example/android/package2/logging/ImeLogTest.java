@@ -0,0 +1,49 @@
+package example.android.package2.logging;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ImeLog} formatting and ring buffer wrap-around.
+ */
+public class ImeLogTest {
+
+    private static final int LOG_KEY = ImeLog.event("test", "key code=%d shifted=%b");
+    private static final int LOG_MOVE = ImeLog.event("test", "move x=%f y=%f flags %x 100%%");
+
+    @Test
+    public void format_decodesArguments() {
+        StringBuilder out = new StringBuilder();
+        ImeLog.format(out, "key code=%d shifted=%b", 97, 1);
+        assertEquals("key code=97 shifted=true", out.toString());
+
+        out.setLength(0);
+        ImeLog.format(out, "x=%f hex=%x 100%%", Float.floatToRawIntBits(1.5f), 255);
+        assertEquals("x=1.5 hex=0xff 100%", out.toString());
+    }
+
+    @Test
+    public void dump_keepsNewestRecords() {
+        if (!ImeLog.DEBUG) {
+            return;
+        }
+        ImeLog.clear();
+        for (int i = 0; i < ImeLog.CAPACITY + 10; i++) {
+            ImeLog.d(LOG_KEY, i, i & 1);
+        }
+        ImeLog.d(LOG_MOVE, 2f, 3f);
+
+        StringWriter text = new StringWriter();
+        ImeLog.dump(new PrintWriter(text), "");
+        String dump = text.toString();
+
+        assertTrue(dump.startsWith("ImeLog: " + ImeLog.CAPACITY + " of " + (ImeLog.CAPACITY + 11) + " records"));
+        assertFalse(dump.contains("key code=10 "));
+        assertTrue(dump.contains("test: key code=11 shifted=true"));
+        assertTrue(dump.contains("test: move x=2.0 y=3.0"));
+    }
+}
@@ -0,0 +1,51 @@
+package example.android.package2.logging;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link LatencyHistogram} bucketing and percentiles.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverValuesInOrder() {
+        long previousBound = 0;
+        for (long micros = 0; micros < 1_000_000; micros += 1 + micros / 7) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            long bound = LatencyHistogram.upperBoundOf(bucket);
+            assertTrue(micros + " should be below " + bound, micros < bound);
+            if (bucket > 0) {
+                assertTrue(micros >= LatencyHistogram.upperBoundOf(bucket - 1));
+            }
+            assertTrue(bound >= previousBound);
+            // Four sub-buckets per power of two keep the error under 25%
+            assertTrue(bound <= Math.max(micros + 1, micros * 5 / 4 + 1));
+            previousBound = bound;
+        }
+    }
+
+    @Test
+    public void percentiles_followRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        assertEquals(0, histogram.getPercentileMicros(50));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L); // 1 to 100 microseconds
+        }
+        assertEquals(100, histogram.getCount());
+        assertInRange(50, histogram.getPercentileMicros(50));
+        assertInRange(95, histogram.getPercentileMicros(95));
+        assertInRange(99, histogram.getPercentileMicros(99));
+        assertEquals(101, histogram.getPercentileMicros(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    private static void assertInRange(long expectedMicros, long actualMicros) {
+        assertTrue(actualMicros + " for " + expectedMicros,
+                actualMicros > expectedMicros && actualMicros <= expectedMicros * 5 / 4 + 1);
+    }
+}
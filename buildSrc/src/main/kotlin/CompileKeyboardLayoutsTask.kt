@@ -0,0 +1,322 @@
+import org.gradle.api.DefaultTask
+import org.gradle.api.GradleException
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.gradle.api.tasks.TaskAction
+import org.w3c.dom.Element
+import java.io.File
+import javax.xml.parsers.DocumentBuilderFactory
+
+/**
+ * Compiles `android.inputmethodservice.Keyboard` layouts from res/xml into a Java class,
+ * `CompiledKeyboardLayouts`, that holds every row and key of each layout as arrays. The
+ * keyboard can then be built without parsing XML; only the sizes are left to resolve at
+ * runtime.
+ *
+ * Sizes keep their resource form: a fraction of the keyboard width, a dimension, or a
+ * `@dimen` reference, each stored as a `TypedValue` type and data pair. Fractions and
+ * dimensions are encoded the way aapt encodes them, so `CompiledKeyboardLayout` resolves
+ * them to exactly the pixels `Keyboard` computes from the XML.
+ *
+ * Only the attributes the layouts use are supported; anything else fails the build rather
+ * than being dropped silently.
+ */
+@CacheableTask
+abstract class CompileKeyboardLayoutsTask : DefaultTask() {
+
+    @get:InputFiles
+    @get:PathSensitive(PathSensitivity.NAME_ONLY)
+    abstract val layouts: ConfigurableFileCollection
+
+    /** Package of the generated class; CompiledKeyboardLayout must live there too. */
+    @get:Input
+    abstract val packageName: Property<String>
+
+    /** Package of the app's R class. */
+    @get:Input
+    abstract val rPackage: Property<String>
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    @TaskAction
+    fun compile() {
+        val root = outputDir.get().asFile
+        root.deleteRecursively()
+        val dir = File(root, packageName.get().replace('.', '/'))
+        dir.mkdirs()
+
+        val out = StringBuilder()
+        out.append("// Generated by CompileKeyboardLayoutsTask from res/xml. Do not edit.\n")
+        out.append("package ").append(packageName.get()).append(";\n\n")
+        out.append("import ").append(rPackage.get()).append(".R;\n\n")
+        out.append("final class CompiledKeyboardLayouts {\n\n")
+        out.append("    private CompiledKeyboardLayouts() {\n    }\n")
+        for (file in layouts.files.sortedBy { it.name }) {
+            out.append('\n')
+            LayoutCompiler(file).appendTo(out)
+        }
+        out.append("}\n")
+        File(dir, "CompiledKeyboardLayouts.java").writeText(out.toString())
+    }
+}
+
+private const val ANDROID_NS = "http://schemas.android.com/apk/res/android"
+private const val XMLNS_NS = "http://www.w3.org/2000/xmlns/"
+
+// TypedValue types
+private const val TYPE_NULL = 0
+private const val TYPE_REFERENCE = 1
+private const val TYPE_DIMENSION = 5
+private const val TYPE_FRACTION = 6
+
+// Flag bits above Keyboard's EDGE_* flags, see CompiledKeyboardLayout
+private const val FLAG_STICKY = 1 shl 8
+private const val FLAG_MODIFIER = 1 shl 9
+private const val FLAG_REPEATABLE = 1 shl 10
+
+private val SIZE_ATTRIBUTES = listOf("keyWidth", "keyHeight", "horizontalGap", "verticalGap")
+private val KEYBOARD_ATTRIBUTES = SIZE_ATTRIBUTES.toSet()
+private val ROW_ATTRIBUTES = KEYBOARD_ATTRIBUTES + "rowEdgeFlags"
+private val KEY_ATTRIBUTES = setOf(
+    "codes", "keyLabel", "keyIcon", "keyWidth", "keyHeight", "horizontalGap",
+    "keyEdgeFlags", "isSticky", "isModifier", "isRepeatable"
+)
+
+private class LayoutCompiler(private val file: File) {
+
+    private val name = file.nameWithoutExtension
+
+    private val rowSizes = mutableListOf<String>()
+    private val rowEdgeFlags = mutableListOf<Int>()
+    private val rowStarts = mutableListOf<Int>()
+    private val codes = mutableListOf<String>()
+    private val labels = mutableListOf<String>()
+    private val icons = mutableListOf<String>()
+    private val keySizes = mutableListOf<String>()
+    private val keyFlags = mutableListOf<Int>()
+
+    fun appendTo(out: StringBuilder) {
+        val factory = DocumentBuilderFactory.newInstance()
+        factory.isNamespaceAware = true
+        val keyboard = factory.newDocumentBuilder().parse(file).documentElement
+        check(keyboard.tagName == "Keyboard", "root element must be <Keyboard>")
+        checkAttributes(keyboard, KEYBOARD_ATTRIBUTES)
+        val keyboardSizes = sizes(keyboard, SIZE_ATTRIBUTES)
+
+        for (row in children(keyboard)) {
+            check(row.tagName == "Row", "<${row.tagName}> is not supported inside <Keyboard>")
+            checkAttributes(row, ROW_ATTRIBUTES)
+            rowSizes += sizes(row, SIZE_ATTRIBUTES)
+            rowEdgeFlags += edgeFlags(row.android("rowEdgeFlags"))
+            rowStarts += labels.size
+            for (key in children(row)) {
+                check(key.tagName == "Key", "<${key.tagName}> is not supported inside <Row>")
+                checkAttributes(key, KEY_ATTRIBUTES)
+                addKey(key)
+            }
+        }
+        rowStarts += labels.size
+
+        val field = name.uppercase()
+        out.append("    /** res/xml/").append(file.name).append(" */\n")
+        out.append("    static final CompiledKeyboardLayout ").append(field)
+            .append(" = new CompiledKeyboardLayout(\n")
+        out.append("            R.xml.").append(name).append(",\n")
+        out.append("            new int[] {").append(keyboardSizes).append("},\n")
+        appendArray(out, "int", rowSizes, 1)
+        appendArray(out, "int", rowEdgeFlags.map { it.toString() }, 8)
+        appendArray(out, "int", rowStarts.map { it.toString() }, 8)
+        appendArray(out, "int[]", codes, 8)
+        appendArray(out, "String", labels, 8)
+        appendArray(out, "int", icons, 4)
+        appendArray(out, "int", keySizes, 1)
+        out.append("            new int[] {").append(keyFlags.joinToString(", ")).append("});\n")
+    }
+
+    private fun addKey(key: Element) {
+        val label = key.android("keyLabel")?.let { aaptString(it) }
+        val codeList = key.android("codes")?.let { value ->
+            value.split(',').map { parseInt(it.trim(), "codes") }
+        } ?: label?.takeIf { it.isNotEmpty() }?.let { listOf(it[0].code) }
+            ?: fail("<Key> needs android:codes or a non-empty android:keyLabel")
+
+        codes += "{" + codeList.joinToString(", ") + "}"
+        labels += label?.let { javaString(it) } ?: "null"
+        icons += key.android("keyIcon")?.let { resourceField(it, "drawable") } ?: "0"
+        keySizes += sizes(key, listOf("keyWidth", "keyHeight", "horizontalGap"))
+
+        var flags = edgeFlags(key.android("keyEdgeFlags"))
+        if (bool(key, "isSticky")) flags = flags or FLAG_STICKY
+        if (bool(key, "isModifier")) flags = flags or FLAG_MODIFIER
+        if (bool(key, "isRepeatable")) flags = flags or FLAG_REPEATABLE
+        keyFlags += flags
+    }
+
+    /** Comma separated (type, data) pairs, one per attribute, for the generated arrays. */
+    private fun sizes(element: Element, attributes: List<String>): String =
+        attributes.joinToString(", ") { attribute ->
+            val value = element.android(attribute)?.trim()
+            when {
+                value == null -> "$TYPE_NULL, 0"
+                value.startsWith("@") -> "$TYPE_REFERENCE, " + resourceField(value, "dimen")
+                else -> size(value, attribute)
+            }
+        }
+
+    /** Encodes a literal dimension or fraction like ResTable::stringToFloat. */
+    private fun size(value: String, attribute: String): String {
+        val unit = UNITS.entries.firstOrNull { value.endsWith(it.key) }
+            ?: fail("android:$attribute=\"$value\" is not a dimension or fraction")
+        val number = value.substring(0, value.length - unit.key.length).trim().toFloatOrNull()
+            ?: fail("android:$attribute=\"$value\" is not a dimension or fraction")
+        val (type, complexUnit, scale) = unit.value
+        return "$type, 0x" + Integer.toHexString(complex(number * scale, complexUnit))
+    }
+
+    private fun complex(value: Float, unit: Int): Int {
+        val negative = value < 0
+        val f = if (negative) -value else value
+        val bits = (f * (1 shl 23) + 0.5f).toLong()
+        val (radix, shift) = when {
+            (bits and 0x7fffffL) == 0L -> 0 to 23
+            (bits and -0x800000L) == 0L -> 3 to 0
+            (bits and -0x80000000L) == 0L -> 2 to 8
+            (bits and -0x8000000000L) == 0L -> 1 to 16
+            else -> 0 to 23
+        }
+        var mantissa = ((bits shr shift) and 0xffffffL).toInt()
+        if (negative) {
+            mantissa = -mantissa and 0xffffff
+        }
+        return (mantissa shl 8) or (radix shl 4) or unit
+    }
+
+    private fun resourceField(value: String, expectedType: String): String {
+        val match = Regex("@(android:)?(\\w+)/(\\w+)").matchEntire(value.trim())
+            ?: fail("\"$value\" is not a resource reference")
+        val (framework, type, entry) = match.destructured
+        check(type == expectedType, "expected a @$expectedType reference, got \"$value\"")
+        return (if (framework.isEmpty()) "R." else "android.R.") + "$type.$entry"
+    }
+
+    private fun edgeFlags(value: String?): Int {
+        if (value == null) return 0
+        return value.split('|').fold(0) { flags, name ->
+            flags or when (name.trim()) {
+                "left" -> 1
+                "right" -> 2
+                "top" -> 4
+                "bottom" -> 8
+                else -> parseInt(name.trim(), "edge flags")
+            }
+        }
+    }
+
+    private fun bool(element: Element, attribute: String): Boolean =
+        when (val value = element.android(attribute)) {
+            null, "false" -> false
+            "true" -> true
+            else -> fail("android:$attribute=\"$value\" is not a boolean")
+        }
+
+    private fun parseInt(value: String, what: String): Int =
+        runCatching { Integer.decode(value) }.getOrNull() ?: fail("\"$value\" is not valid $what")
+
+    private fun checkAttributes(element: Element, allowed: Set<String>) {
+        val attributes = element.attributes
+        for (i in 0 until attributes.length) {
+            val attribute = attributes.item(i)
+            if (attribute.namespaceURI == XMLNS_NS) continue
+            check(attribute.namespaceURI == ANDROID_NS && attribute.localName in allowed,
+                "${attribute.nodeName} on <${element.tagName}> is not supported")
+        }
+    }
+
+    private fun children(element: Element): List<Element> {
+        val nodes = element.childNodes
+        return (0 until nodes.length).map { nodes.item(it) }.filterIsInstance<Element>()
+    }
+
+    private fun Element.android(attribute: String): String? =
+        if (hasAttributeNS(ANDROID_NS, attribute)) getAttributeNS(ANDROID_NS, attribute) else null
+
+    private fun appendArray(out: StringBuilder, type: String, values: List<String>, perLine: Int) {
+        out.append("            new ").append(type).append("[] {")
+        values.forEachIndexed { i, value ->
+            out.append(if (i % perLine == 0) "\n                    " else " ").append(value).append(',')
+        }
+        out.append("},\n")
+    }
+
+    private fun check(condition: Boolean, message: String) {
+        if (!condition) fail(message)
+    }
+
+    private fun fail(message: String): Nothing = throw GradleException("${file.name}: $message")
+
+    private companion object {
+        // Suffix to (TypedValue type, complex unit, scale), longest suffix first
+        val UNITS = linkedMapOf(
+            "%p" to Triple(TYPE_FRACTION, 1, 1.0f / 100),
+            "%" to Triple(TYPE_FRACTION, 0, 1.0f / 100),
+            "dip" to Triple(TYPE_DIMENSION, 1, 1.0f),
+            "px" to Triple(TYPE_DIMENSION, 0, 1.0f),
+            "dp" to Triple(TYPE_DIMENSION, 1, 1.0f),
+            "sp" to Triple(TYPE_DIMENSION, 2, 1.0f),
+            "pt" to Triple(TYPE_DIMENSION, 3, 1.0f),
+            "in" to Triple(TYPE_DIMENSION, 4, 1.0f),
+            "mm" to Triple(TYPE_DIMENSION, 5, 1.0f),
+        )
+
+        /** Applies aapt's string processing: escapes, quotes and whitespace collapsing. */
+        fun aaptString(raw: String): String {
+            val out = StringBuilder()
+            var quoted = false
+            var i = 0
+            while (i < raw.length) {
+                val c = raw[i]
+                when {
+                    c == '\\' && i + 1 < raw.length -> {
+                        i++
+                        when (val escaped = raw[i]) {
+                            't' -> out.append('\t')
+                            'n' -> out.append('\n')
+                            'u' -> {
+                                out.append(raw.substring(i + 1, i + 5).toInt(16).toChar())
+                                i += 4
+                            }
+                            else -> out.append(escaped)
+                        }
+                    }
+                    c == '"' -> quoted = !quoted
+                    !quoted && c.isWhitespace() -> {
+                        if (out.isNotEmpty() && out.last() != ' ') out.append(' ')
+                    }
+                    else -> out.append(c)
+                }
+                i++
+            }
+            return out.toString()
+        }
+
+        fun javaString(value: String): String {
+            val out = StringBuilder("\"")
+            for (c in value) {
+                when {
+                    c == '"' || c == '\\' -> out.append('\\').append(c)
+                    c.code in 0x20..0x7e -> out.append(c)
+                    else -> out.append(String.format("\\u%04x", c.code))
+                }
+            }
+            return out.append('"').toString()
+        }
+    }
+}
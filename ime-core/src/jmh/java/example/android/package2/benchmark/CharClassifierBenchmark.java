@@ -0,0 +1,35 @@
+package example.android.package2.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import example.android.package2.keyboard.CharClassifier;
+
+/**
+ * Per-character classification done for every key: separator check for auto-commit and
+ * word boundary check for the word tracker, over a mixed ASCII/emoji sentence.
+ */
+@State(Scope.Thread)
+public class CharClassifierBenchmark {
+
+    // Same separators as R.string.word_separators
+    private final CharClassifier mClassifier = new CharClassifier(" .,;:!?\n()[]*&@{}/<>_+=|\"");
+    private final int[] mCodePoints =
+            "Hey, are you free tonight? \uD83D\uDE00 Let's grab dinner at 7!".codePoints().toArray();
+
+    @Benchmark
+    public void isSeparator(Blackhole bh) {
+        for (int codePoint : mCodePoints) {
+            bh.consume(mClassifier.isSeparator(codePoint));
+        }
+    }
+
+    @Benchmark
+    public void isWordBoundary(Blackhole bh) {
+        for (int codePoint : mCodePoints) {
+            bh.consume(CharClassifier.isWordBoundary(codePoint));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package example.android.package2.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import example.android.package2.emoji.data.EmojiMappingData;
+
+/**
+ * Emoji row lookup for the word around the cursor, for keywords that hit the table and for
+ * ordinary words that miss it. Hits should not allocate; the keyword is matched in place.
+ */
+@State(Scope.Thread)
+public class EmojiMappingBenchmark {
+
+    private final CharSequence[] mHits = {"happy", "Love", "pizza ", "FIRE"};
+    private final CharSequence[] mMisses = {"the", "tonight", "x", "whatsoever"};
+
+    @Benchmark
+    public void hit(Blackhole bh) {
+        for (CharSequence keyword : mHits) {
+            bh.consume(EmojiMappingData.INSTANCE.getSuggestedEmojis(keyword));
+        }
+    }
+
+    @Benchmark
+    public void miss(Blackhole bh) {
+        for (CharSequence keyword : mMisses) {
+            bh.consume(EmojiMappingData.INSTANCE.getSuggestedEmojis(keyword));
+        }
+    }
+}
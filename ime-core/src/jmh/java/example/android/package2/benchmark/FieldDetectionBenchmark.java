@@ -0,0 +1,50 @@
+package example.android.package2.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import example.android.package2.keyboard.ChatFieldDetector;
+import example.android.package2.suggestion.FieldTypeDetector;
+
+/**
+ * Work done when an editor gains focus (chat and form field detection) and when a form
+ * value is stored (normalization for deduplication).
+ */
+@State(Scope.Thread)
+public class FieldDetectionBenchmark {
+
+    // inputType / imeOptions values of typical fields
+    private static final int TEXT_MULTI_LINE_CAP_SENTENCES = 0x00024001;
+    private static final int TEXT_EMAIL_ADDRESS = 0x00000021;
+    private static final int TEXT_PERSON_NAME = 0x00000061;
+    private static final int IME_ACTION_SEND = 0x00000004;
+    private static final int IME_ACTION_NEXT = 0x00000005;
+
+    private final String[] mHints = {
+            "Message", "Type a reply", "Search contacts", "First Name", "Email address",
+            "Phone number", "Street address", "ZIP code", "Username", "Notes",
+    };
+
+    @Benchmark
+    public void chatField(Blackhole bh) {
+        for (String hint : mHints) {
+            bh.consume(ChatFieldDetector.isChatField(TEXT_MULTI_LINE_CAP_SENTENCES, IME_ACTION_SEND, hint));
+            bh.consume(ChatFieldDetector.isChatField(TEXT_PERSON_NAME, IME_ACTION_NEXT, hint));
+        }
+    }
+
+    @Benchmark
+    public void fieldType(Blackhole bh) {
+        for (String hint : mHints) {
+            bh.consume(FieldTypeDetector.detectFieldType(hint, TEXT_PERSON_NAME));
+        }
+        bh.consume(FieldTypeDetector.detectFieldType(null, TEXT_EMAIL_ADDRESS));
+    }
+
+    @Benchmark
+    public String normalizeValue() {
+        return FieldTypeDetector.normalizeValue("  Jane   Q.  Public ");
+    }
+}
@@ -0,0 +1,177 @@
+package example.android.package2.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+import example.android.package2.keyboard.KeyProximityGrid;
+
+/**
+ * Key lookup for a stream of synthetic touches on a 1080px wide qwerty layout, through the
+ * grid and through a scan over every key, which is what finding neighbours cost before.
+ * Touches land around key centers with a spread of a third of a key, so some miss into
+ * neighbouring keys and a few fall off the keyboard.
+ */
+@State(Scope.Thread)
+public class KeyProximityGridBenchmark {
+
+    private static final int WIDTH = 1080;
+    private static final int KEY_WIDTH = WIDTH / 10;
+    private static final int KEY_HEIGHT = 158;
+    private static final int TOUCHES = 4096;
+    private static final int MAX_NEAREST = 8;
+
+    // Rows like res/xml/qwerty.xml: the row indent, then the width of each key
+    private static final int[][] ROWS = {
+            {0, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1},
+            {KEY_WIDTH / 2, 1, 1, 1, 1, 1, 1, 1, 1, 1},
+            {0, 3, 2, 2, 2, 2, 2, 2, 2, 3},
+            {0, 3, 2, 2, 6, 2, 5},
+    };
+
+    private final int[] mX;
+    private final int[] mY;
+    private final int[] mWidths;
+    private final int[] mHeights;
+    private final int[] mEdgeFlags;
+    private final int mHeight;
+    private final int mThreshold = (int) (KEY_WIDTH * 1.4f);
+    private final KeyProximityGrid mGrid;
+    private final KeyProximityGrid.Proximity mProximity =
+            new KeyProximityGrid.Proximity(MAX_NEAREST);
+    private final int[] mNearestKeys = new int[MAX_NEAREST];
+    private final int[] mNearestDistances = new int[MAX_NEAREST];
+
+    private final int[] mTouchX = new int[TOUCHES];
+    private final int[] mTouchY = new int[TOUCHES];
+
+    public KeyProximityGridBenchmark() {
+        int keyCount = 0;
+        for (int[] row : ROWS) {
+            keyCount += row.length - 1;
+        }
+        mX = new int[keyCount];
+        mY = new int[keyCount];
+        mWidths = new int[keyCount];
+        mHeights = new int[keyCount];
+        mEdgeFlags = new int[keyCount];
+        int k = 0;
+        for (int r = 0; r < ROWS.length; r++) {
+            int x = ROWS[r][0];
+            for (int i = 1; i < ROWS[r].length; i++, k++) {
+                // Multiples are in halves of a key for the wide keys of the lower rows
+                int width = r < 2 ? ROWS[r][i] * KEY_WIDTH : ROWS[r][i] * KEY_WIDTH / 2;
+                mX[k] = x;
+                mY[k] = r * KEY_HEIGHT;
+                mWidths[k] = width;
+                mHeights[k] = KEY_HEIGHT;
+                mEdgeFlags[k] = (i == 1 ? KeyProximityGrid.EDGE_LEFT : 0)
+                        | (i == ROWS[r].length - 1 ? KeyProximityGrid.EDGE_RIGHT : 0)
+                        | (r == 0 ? KeyProximityGrid.EDGE_TOP : 0)
+                        | (r == ROWS.length - 1 ? KeyProximityGrid.EDGE_BOTTOM : 0);
+                x += width;
+            }
+        }
+        mHeight = ROWS.length * KEY_HEIGHT;
+        mGrid = new KeyProximityGrid(WIDTH, mHeight, mX, mY, mWidths, mHeights, mEdgeFlags,
+                mThreshold);
+
+        Random random = new Random(42);
+        for (int i = 0; i < TOUCHES; i++) {
+            int key = random.nextInt(keyCount);
+            mTouchX[i] = mX[key] + mWidths[key] / 2
+                    + (int) (random.nextGaussian() * KEY_WIDTH / 3);
+            mTouchY[i] = mY[key] + mHeights[key] / 2
+                    + (int) (random.nextGaussian() * KEY_HEIGHT / 3);
+        }
+    }
+
+    @Benchmark
+    public void gridHit(Blackhole bh) {
+        for (int i = 0; i < TOUCHES; i++) {
+            bh.consume(mGrid.getKeyIndex(mTouchX[i], mTouchY[i]));
+        }
+    }
+
+    @Benchmark
+    public void gridNearest(Blackhole bh) {
+        for (int i = 0; i < TOUCHES; i++) {
+            bh.consume(mGrid.findNearestKeys(mTouchX[i], mTouchY[i], mProximity));
+        }
+    }
+
+    @Benchmark
+    public void scanHit(Blackhole bh) {
+        for (int i = 0; i < TOUCHES; i++) {
+            bh.consume(scanHit(mTouchX[i], mTouchY[i]));
+        }
+    }
+
+    @Benchmark
+    public void scanNearest(Blackhole bh) {
+        for (int i = 0; i < TOUCHES; i++) {
+            bh.consume(scanNearest(mTouchX[i], mTouchY[i]));
+        }
+    }
+
+    private int scanHit(int x, int y) {
+        if (x < 0 || x >= WIDTH || y < 0 || y >= mHeight) {
+            return KeyProximityGrid.NOT_A_KEY;
+        }
+        for (int k = 0; k < mX.length; k++) {
+            if (isInside(k, x, y)) {
+                return k;
+            }
+        }
+        return KeyProximityGrid.NOT_A_KEY;
+    }
+
+    private int scanNearest(int x, int y) {
+        int hit = KeyProximityGrid.NOT_A_KEY;
+        int count = 0;
+        if (x < 0 || x >= WIDTH || y < 0 || y >= mHeight) {
+            return count;
+        }
+        final int squaredThreshold = mThreshold * mThreshold;
+        for (int k = 0; k < mX.length; k++) {
+            if (hit == KeyProximityGrid.NOT_A_KEY && isInside(k, x, y)) {
+                hit = k;
+            }
+            int dx = Math.max(0, Math.max(mX[k] - x, x - (mX[k] + mWidths[k] - 1)));
+            int dy = Math.max(0, Math.max(mY[k] - y, y - (mY[k] + mHeights[k] - 1)));
+            int d = dx * dx + dy * dy;
+            if (d > squaredThreshold) {
+                continue;
+            }
+            if (count == MAX_NEAREST) {
+                if (d >= mNearestDistances[MAX_NEAREST - 1]) {
+                    continue;
+                }
+                count--;
+            }
+            int j = count++;
+            while (j > 0 && mNearestDistances[j - 1] > d) {
+                mNearestKeys[j] = mNearestKeys[j - 1];
+                mNearestDistances[j] = mNearestDistances[j - 1];
+                j--;
+            }
+            mNearestKeys[j] = k;
+            mNearestDistances[j] = d;
+        }
+        return hit + count;
+    }
+
+    // Keyboard.Key#isInside
+    private boolean isInside(int k, int x, int y) {
+        final int flags = mEdgeFlags[k];
+        final int right = mX[k] + mWidths[k];
+        final int bottom = mY[k] + mHeights[k];
+        return (x >= mX[k] || ((flags & KeyProximityGrid.EDGE_LEFT) != 0 && x <= right))
+                && (x < right || ((flags & KeyProximityGrid.EDGE_RIGHT) != 0 && x >= mX[k]))
+                && (y >= mY[k] || ((flags & KeyProximityGrid.EDGE_TOP) != 0 && y <= bottom))
+                && (y < bottom || ((flags & KeyProximityGrid.EDGE_BOTTOM) != 0 && y >= mY[k]));
+    }
+}
@@ -0,0 +1,58 @@
+package example.android.package2.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import example.android.package2.keyboard.CharClassifier;
+import example.android.package2.keyboard.TextAroundCursor;
+import example.android.package2.keyboard.WordTracker;
+
+/**
+ * Typing a sentence through the word tracker the way the keyboard does: feed each
+ * character, then read the current word (composing text) or the last word (after a space)
+ * for the emoji lookup.
+ */
+@State(Scope.Thread)
+public class WordTrackerBenchmark {
+
+    private static final String SENTENCE = "so happy to see you again, love this place ";
+
+    /** Editor text with the cursor at the end, like the mirror during plain typing. */
+    private final StringBuilder mText = new StringBuilder();
+    private final TextAroundCursor mEditor = new TextAroundCursor() {
+        @Override
+        public CharSequence getTextBeforeCursor(int n) {
+            return mText.subSequence(Math.max(0, mText.length() - n), mText.length());
+        }
+
+        @Override
+        public CharSequence getTextAfterCursor(int n) {
+            return "";
+        }
+    };
+    private final WordTracker mTracker = new WordTracker(mEditor);
+
+    @Setup
+    public void setUp() {
+        mText.append("Hello there. ");
+        mTracker.reset();
+        // First lookup resyncs from the editor; the benchmark measures the incremental path
+        mTracker.getWordHash();
+    }
+
+    @Benchmark
+    public void typeSentence(Blackhole bh) {
+        for (int i = 0; i < SENTENCE.length(); i++) {
+            char c = SENTENCE.charAt(i);
+            mTracker.onCharacter(c);
+            if (CharClassifier.isWordBoundary(c)) {
+                bh.consume(mTracker.getLastWord());
+            } else {
+                bh.consume(mTracker.getWordHash());
+            }
+        }
+    }
+}
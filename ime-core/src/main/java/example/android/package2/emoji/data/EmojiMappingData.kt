@@ -146,13 +146,46 @@ object EmojiMappingData {
         )
     )
 
+    // Flat lookup tables sorted by hash, so a keystroke is matched with a binary search and
+    // without building a lowercase string
+    private val keywords: Array<String> = keywordToEmojis.keys.sortedBy { it.hashCode() }.toTypedArray()
+    private val keywordHashes = IntArray(keywords.size) { keywords[it].hashCode() }
+    private val keywordEmojis: Array<List<Emoji>> = Array(keywords.size) { keywordToEmojis.getValue(keywords[it]) }
+
     /**
      * Get suggested emojis for a keyword
-     * @param keyword The keyword to search for (case-insensitive)
+     * @param keyword The keyword to search for (case-insensitive, surrounding whitespace ignored)
      * @return List of suggested emojis or empty list if no match
      */
-    fun getSuggestedEmojis(keyword: String): List<Emoji> {
-        val normalizedKeyword = keyword.lowercase().trim()
-        return keywordToEmojis[normalizedKeyword] ?: emptyList()
+    fun getSuggestedEmojis(keyword: CharSequence): List<Emoji> {
+        var start = 0
+        var end = keyword.length
+        while (start < end && keyword[start].isWhitespace()) start++
+        while (end > start && keyword[end - 1].isWhitespace()) end--
+
+        var hash = 0
+        for (i in start until end) {
+            hash = 31 * hash + keyword[i].lowercaseChar().code
+        }
+
+        var index = keywordHashes.binarySearch(hash)
+        if (index < 0) return emptyList()
+        // Keywords with the same hash sit next to each other; try each of them
+        while (index > 0 && keywordHashes[index - 1] == hash) index--
+        while (index < keywordHashes.size && keywordHashes[index] == hash) {
+            if (matchesIgnoreCase(keywords[index], keyword, start, end)) {
+                return keywordEmojis[index]
+            }
+            index++
+        }
+        return emptyList()
+    }
+
+    private fun matchesIgnoreCase(key: String, text: CharSequence, start: Int, end: Int): Boolean {
+        if (key.length != end - start) return false
+        for (i in key.indices) {
+            if (key[i] != text[start + i].lowercaseChar()) return false
+        }
+        return true
     }
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package example.android.package2.keyboard;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed character classes used on every keystroke.
+ *
+ * Each class is a bitset over the Basic Multilingual Plane, so a lookup is one array read
+ * and a mask. Supplementary code points (emoji, historic scripts, ...) fall back to a binary
+ * search over a sorted array, which only ever contains what the source string listed.
+ * Lookups never allocate.
+ *
+ * Word separators come from {@code R.string.word_separators} and differ per subtype locale;
+ * whitespace and punctuation are the same for every locale and shared.
+ */
+public final class CharClassifier {
+
+    /** Punctuation that ends a word for emoji lookup and word replacement. */
+    public static final String PUNCTUATION = ".,!?;:()[]{}\"'";
+
+    private static final int BMP_SIZE = 0x10000;
+    private static final int[] NO_CODE_POINTS = new int[0];
+
+    private static final long[] WHITESPACE_BMP = new long[BMP_SIZE >>> 6];
+    private static final long[] BOUNDARY_BMP = new long[BMP_SIZE >>> 6];
+    private static final int[] BOUNDARY_SUPPLEMENTARY;
+
+    static {
+        for (int c = 0; c < BMP_SIZE; c++) {
+            if (Character.isWhitespace(c)) {
+                set(WHITESPACE_BMP, c);
+                set(BOUNDARY_BMP, c);
+            }
+        }
+        BOUNDARY_SUPPLEMENTARY = fill(BOUNDARY_BMP, PUNCTUATION);
+    }
+
+    private final long[] mSeparatorBmp = new long[BMP_SIZE >>> 6];
+    private final int[] mSeparatorSupplementary;
+
+    /**
+     * @param wordSeparators every code point of this string is treated as a word separator.
+     */
+    public CharClassifier(CharSequence wordSeparators) {
+        mSeparatorSupplementary = fill(mSeparatorBmp, wordSeparators);
+    }
+
+    /** Separators commit the word being composed (space, enter, most punctuation). */
+    public boolean isSeparator(int codePoint) {
+        return contains(mSeparatorBmp, mSeparatorSupplementary, codePoint);
+    }
+
+    /** Whitespace or punctuation: characters that end the word around the cursor. */
+    public static boolean isWordBoundary(int codePoint) {
+        return contains(BOUNDARY_BMP, BOUNDARY_SUPPLEMENTARY, codePoint);
+    }
+
+    public static boolean isWhitespace(int codePoint) {
+        if (codePoint >= 0 && codePoint < BMP_SIZE) {
+            return (WHITESPACE_BMP[codePoint >>> 6] & (1L << codePoint)) != 0;
+        }
+        return Character.isWhitespace(codePoint);
+    }
+
+    public static boolean isPunctuation(int codePoint) {
+        return isWordBoundary(codePoint) && !isWhitespace(codePoint);
+    }
+
+    private static boolean contains(long[] bmp, int[] supplementary, int codePoint) {
+        if (codePoint >= 0 && codePoint < BMP_SIZE) {
+            return (bmp[codePoint >>> 6] & (1L << codePoint)) != 0;
+        }
+        return supplementary.length > 0 && Arrays.binarySearch(supplementary, codePoint) >= 0;
+    }
+
+    private static void set(long[] bmp, int codePoint) {
+        bmp[codePoint >>> 6] |= 1L << codePoint;
+    }
+
+    /** Sets the BMP bits for {@code chars} and returns its supplementary code points, sorted. */
+    private static int[] fill(long[] bmp, CharSequence chars) {
+        int[] supplementary = NO_CODE_POINTS;
+        int count = 0;
+        for (int i = 0; i < chars.length(); ) {
+            int codePoint = Character.codePointAt(chars, i);
+            i += Character.charCount(codePoint);
+            if (codePoint < BMP_SIZE) {
+                set(bmp, codePoint);
+            } else {
+                if (count == supplementary.length) {
+                    supplementary = Arrays.copyOf(supplementary, Math.max(4, count * 2));
+                }
+                supplementary[count++] = codePoint;
+            }
+        }
+        int[] result = Arrays.copyOf(supplementary, count);
+        Arrays.sort(result);
+        return result;
+    }
+}
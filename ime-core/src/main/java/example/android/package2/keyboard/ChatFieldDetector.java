@@ -0,0 +1,90 @@
+package example.android.package2.keyboard;
+
+/**
+ * Decides whether an editor is a chat/message box, from the fields of its EditorInfo.
+ *
+ * The field is a chat box when any of these hold, unless its action is "search":
+ * <ul>
+ * <li>it is a text field with the short or long message variation;</li>
+ * <li>it is a multi-line text field that capitalizes sentences (Telegram and friends);</li>
+ * <li>it is an auto-correcting text field that capitalizes sentences;</li>
+ * <li>its hint mentions message, chat, say or reply, and not search;</li>
+ * <li>its action is "send".</li>
+ * </ul>
+ */
+public final class ChatFieldDetector {
+
+    // Values of android.text.InputType and android.view.inputmethod.EditorInfo, copied so
+    // that this class runs on a plain JVM.
+    static final int TYPE_MASK_CLASS = 0x0000000f;
+    static final int TYPE_MASK_VARIATION = 0x00000ff0;
+    static final int TYPE_MASK_FLAGS = 0x00fff000;
+    static final int TYPE_CLASS_TEXT = 0x00000001;
+    static final int TYPE_TEXT_VARIATION_SHORT_MESSAGE = 0x00000040;
+    static final int TYPE_TEXT_VARIATION_LONG_MESSAGE = 0x00000050;
+    static final int TYPE_TEXT_FLAG_CAP_SENTENCES = 0x00004000;
+    static final int TYPE_TEXT_FLAG_AUTO_CORRECT = 0x00008000;
+    static final int TYPE_TEXT_FLAG_MULTI_LINE = 0x00020000;
+    static final int IME_MASK_ACTION = 0x000000ff;
+    static final int IME_ACTION_SEARCH = 0x00000003;
+    static final int IME_ACTION_SEND = 0x00000004;
+
+    private static final String[] CHAT_HINTS = {"message", "chat", "say", "reply"};
+
+    private ChatFieldDetector() {
+    }
+
+    public static boolean isChatField(int inputType, int imeOptions, CharSequence hintText) {
+        int actionId = imeOptions & IME_MASK_ACTION;
+        if (actionId == IME_ACTION_SEARCH) {
+            return false;
+        }
+        if (actionId == IME_ACTION_SEND) {
+            return true;
+        }
+
+        if ((inputType & TYPE_MASK_CLASS) == TYPE_CLASS_TEXT) {
+            int variation = inputType & TYPE_MASK_VARIATION;
+            if (variation == TYPE_TEXT_VARIATION_SHORT_MESSAGE
+                    || variation == TYPE_TEXT_VARIATION_LONG_MESSAGE) {
+                return true;
+            }
+            int flags = inputType & TYPE_MASK_FLAGS;
+            if ((flags & TYPE_TEXT_FLAG_CAP_SENTENCES) != 0
+                    && (flags & (TYPE_TEXT_FLAG_MULTI_LINE | TYPE_TEXT_FLAG_AUTO_CORRECT)) != 0) {
+                return true;
+            }
+        }
+
+        return isChatHint(hintText);
+    }
+
+    /** True when the hint names a chat keyword and does not mention search. */
+    public static boolean isChatHint(CharSequence hintText) {
+        if (hintText == null || containsIgnoreCase(hintText, "search")) {
+            return false;
+        }
+        for (String keyword : CHAT_HINTS) {
+            if (containsIgnoreCase(hintText, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** {@code text.toString().toLowerCase().contains(lowerCaseWord)} without the copies. */
+    private static boolean containsIgnoreCase(CharSequence text, String lowerCaseWord) {
+        int last = text.length() - lowerCaseWord.length();
+        for (int start = 0; start <= last; start++) {
+            int i = 0;
+            while (i < lowerCaseWord.length()
+                    && Character.toLowerCase(text.charAt(start + i)) == lowerCaseWord.charAt(i)) {
+                i++;
+            }
+            if (i == lowerCaseWord.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
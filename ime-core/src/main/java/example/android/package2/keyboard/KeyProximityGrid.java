@@ -0,0 +1,248 @@
+package example.android.package2.keyboard;
+
+/**
+ * Key lookup over a uniform grid laid on a keyboard layout.
+ *
+ * Each grid cell lists the keys a point in it can hit or is close to, so a touch only looks
+ * at a handful of keys however large the layout is, and nothing is allocated per touch.
+ * Besides the hit key, {@link #findNearestKeys} reports the keys within the proximity
+ * threshold of the touch, nearest first, for correction and gestures.
+ *
+ * Keys are hit like {@code Keyboard.Key#isInside} hits them: a key on an edge of the
+ * keyboard also takes the touches between it and that edge, e.g. in the gap before the
+ * first key of an indented row. Points outside the keyboard hit nothing. Distances are
+ * squared, in pixels, from the touch to the nearest point of the key; 0 inside the key.
+ */
+public final class KeyProximityGrid {
+
+    public static final int NOT_A_KEY = -1;
+
+    // Same values as Keyboard.EDGE_*
+    public static final int EDGE_LEFT = 0x01;
+    public static final int EDGE_RIGHT = 0x02;
+    public static final int EDGE_TOP = 0x04;
+    public static final int EDGE_BOTTOM = 0x08;
+
+    /** The hit key and the nearest keys of one touch, reused from touch to touch. */
+    public static final class Proximity {
+        private final int[] mKeys;
+        private final int[] mSquaredDistances;
+        private int mCount;
+        private int mHitKey = NOT_A_KEY;
+
+        /** @param maxKeys the most nearest keys to keep. */
+        public Proximity(int maxKeys) {
+            mKeys = new int[maxKeys];
+            mSquaredDistances = new int[maxKeys];
+        }
+
+        /** The key that was hit, or {@link #NOT_A_KEY}. */
+        public int getHitKey() {
+            return mHitKey;
+        }
+
+        /** Number of keys near the touch, at most the capacity given at construction. */
+        public int getCount() {
+            return mCount;
+        }
+
+        /** The {@code i}-th nearest key, starting with the nearest. */
+        public int getKey(int i) {
+            return mKeys[i];
+        }
+
+        public int getSquaredDistance(int i) {
+            return mSquaredDistances[i];
+        }
+
+        void clear() {
+            mCount = 0;
+            mHitKey = NOT_A_KEY;
+        }
+
+        /** Inserts a key by distance, dropping the farthest when full; ties keep key order. */
+        void offer(int key, int squaredDistance) {
+            final int max = mKeys.length;
+            if (mCount == max) {
+                if (max == 0 || squaredDistance >= mSquaredDistances[max - 1]) {
+                    return;
+                }
+                mCount--;
+            }
+            int i = mCount++;
+            while (i > 0 && mSquaredDistances[i - 1] > squaredDistance) {
+                mKeys[i] = mKeys[i - 1];
+                mSquaredDistances[i] = mSquaredDistances[i - 1];
+                i--;
+            }
+            mKeys[i] = key;
+            mSquaredDistances[i] = squaredDistance;
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mCellWidth;
+    private final int mCellHeight;
+    private final int mColumns;
+    private final int mSquaredThreshold;
+
+    // Key bounds, right and bottom exclusive
+    private final int[] mLeft;
+    private final int[] mTop;
+    private final int[] mRight;
+    private final int[] mBottom;
+    // Bounds that hit the key, stretched to the keyboard edges the key is on
+    private final int[] mHitLeft;
+    private final int[] mHitTop;
+    private final int[] mHitRight;
+    private final int[] mHitBottom;
+
+    /** Keys of cell {@code c} are {@code mCellKeys[mCellStarts[c]..mCellStarts[c + 1]]}. */
+    private final int[] mCellStarts;
+    private final int[] mCellKeys;
+
+    /**
+     * @param width keyboard width; touches at or past it miss
+     * @param height keyboard height; touches at or past it miss
+     * @param x left of each key
+     * @param y top of each key
+     * @param widths width of each key; keys without width or height are never hit or near
+     * @param heights height of each key
+     * @param edgeFlags {@code EDGE_*} flags of each key
+     * @param proximityThreshold how far from a key a touch still counts as near it
+     */
+    public KeyProximityGrid(int width, int height, int[] x, int[] y, int[] widths,
+                            int[] heights, int[] edgeFlags, int proximityThreshold) {
+        final int keyCount = x.length;
+        mWidth = width;
+        mHeight = height;
+        mSquaredThreshold = proximityThreshold * proximityThreshold;
+        mLeft = new int[keyCount];
+        mTop = new int[keyCount];
+        mRight = new int[keyCount];
+        mBottom = new int[keyCount];
+        mHitLeft = new int[keyCount];
+        mHitTop = new int[keyCount];
+        mHitRight = new int[keyCount];
+        mHitBottom = new int[keyCount];
+
+        // Cells of half the smallest key keep the lists short without too many cells
+        int minWidth = Integer.MAX_VALUE;
+        int minHeight = Integer.MAX_VALUE;
+        for (int k = 0; k < keyCount; k++) {
+            mLeft[k] = x[k];
+            mTop[k] = y[k];
+            mRight[k] = x[k] + widths[k];
+            mBottom[k] = y[k] + heights[k];
+            final int flags = edgeFlags[k];
+            mHitLeft[k] = (flags & EDGE_LEFT) != 0 ? Integer.MIN_VALUE : mLeft[k];
+            mHitTop[k] = (flags & EDGE_TOP) != 0 ? Integer.MIN_VALUE : mTop[k];
+            mHitRight[k] = (flags & EDGE_RIGHT) != 0 ? Integer.MAX_VALUE : mRight[k];
+            mHitBottom[k] = (flags & EDGE_BOTTOM) != 0 ? Integer.MAX_VALUE : mBottom[k];
+            if (widths[k] > 0 && heights[k] > 0) {
+                minWidth = Math.min(minWidth, widths[k]);
+                minHeight = Math.min(minHeight, heights[k]);
+            }
+        }
+        mCellWidth = Math.max(1, minWidth == Integer.MAX_VALUE ? width : minWidth / 2);
+        mCellHeight = Math.max(1, minHeight == Integer.MAX_VALUE ? height : minHeight / 2);
+        mColumns = Math.max(1, (width + mCellWidth - 1) / mCellWidth);
+        final int rows = Math.max(1, (height + mCellHeight - 1) / mCellHeight);
+        final int cellCount = mColumns * rows;
+
+        // Count the keys of each cell, then fill them in
+        mCellStarts = new int[cellCount + 1];
+        for (int cell = 0; cell < cellCount; cell++) {
+            mCellStarts[cell + 1] = mCellStarts[cell] + collectCellKeys(cell, null, 0);
+        }
+        mCellKeys = new int[mCellStarts[cellCount]];
+        for (int cell = 0; cell < cellCount; cell++) {
+            collectCellKeys(cell, mCellKeys, mCellStarts[cell]);
+        }
+    }
+
+    /** Returns the key at the point, or {@link #NOT_A_KEY}. */
+    public int getKeyIndex(int x, int y) {
+        if (x < 0 || x >= mWidth || y < 0 || y >= mHeight) {
+            return NOT_A_KEY;
+        }
+        final int cell = (y / mCellHeight) * mColumns + x / mCellWidth;
+        for (int i = mCellStarts[cell], end = mCellStarts[cell + 1]; i < end; i++) {
+            final int k = mCellKeys[i];
+            if (isHit(k, x, y)) {
+                return k;
+            }
+        }
+        return NOT_A_KEY;
+    }
+
+    /**
+     * Fills {@code out} with the key at the point and the keys near it, nearest first.
+     *
+     * @return the key at the point, or {@link #NOT_A_KEY}.
+     */
+    public int findNearestKeys(int x, int y, Proximity out) {
+        out.clear();
+        if (x < 0 || x >= mWidth || y < 0 || y >= mHeight) {
+            return NOT_A_KEY;
+        }
+        final int cell = (y / mCellHeight) * mColumns + x / mCellWidth;
+        for (int i = mCellStarts[cell], end = mCellStarts[cell + 1]; i < end; i++) {
+            final int k = mCellKeys[i];
+            if (out.mHitKey == NOT_A_KEY && isHit(k, x, y)) {
+                out.mHitKey = k;
+            }
+            final int dx = distance(x, mLeft[k], mRight[k]);
+            final int dy = distance(y, mTop[k], mBottom[k]);
+            final int squaredDistance = dx * dx + dy * dy;
+            if (squaredDistance <= mSquaredThreshold) {
+                out.offer(k, squaredDistance);
+            }
+        }
+        return out.mHitKey;
+    }
+
+    /** Writes the keys near {@code cell} to {@code out}, if given, and returns their count. */
+    private int collectCellKeys(int cell, int[] out, int offset) {
+        final int left = (cell % mColumns) * mCellWidth;
+        final int top = (cell / mColumns) * mCellHeight;
+        final int right = Math.min(left + mCellWidth, mWidth);
+        final int bottom = Math.min(top + mCellHeight, mHeight);
+        int count = 0;
+        for (int k = 0; k < mLeft.length; k++) {
+            if (mRight[k] > mLeft[k] && mBottom[k] > mTop[k]
+                    && isNearCell(k, left, top, right, bottom)) {
+                if (out != null) {
+                    out[offset + count] = k;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean isHit(int k, int x, int y) {
+        return x >= mHitLeft[k] && x < mHitRight[k] && y >= mHitTop[k] && y < mHitBottom[k];
+    }
+
+    /** Whether a point in the cell can hit key {@code k} or be within the threshold of it. */
+    private boolean isNearCell(int k, int left, int top, int right, int bottom) {
+        if (mHitLeft[k] < right && mHitRight[k] > left
+                && mHitTop[k] < bottom && mHitBottom[k] > top) {
+            return true;
+        }
+        // Gap between the cell's closest pixel and the key's closest pixel
+        final int dx = Math.max(0, Math.max(mLeft[k] - (right - 1), left - (mRight[k] - 1)));
+        final int dy = Math.max(0, Math.max(mTop[k] - (bottom - 1), top - (mBottom[k] - 1)));
+        return (long) dx * dx + (long) dy * dy <= mSquaredThreshold;
+    }
+
+    /** Distance from {@code p} to the range [start, end), 0 inside. */
+    private static int distance(int p, int start, int end) {
+        if (p < start) {
+            return start - p;
+        }
+        return p >= end ? p - (end - 1) : 0;
+    }
+}
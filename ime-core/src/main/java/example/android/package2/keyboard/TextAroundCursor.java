@@ -0,0 +1,15 @@
+package example.android.package2.keyboard;
+
+/**
+ * Read access to the editor text next to the cursor, with the same contract as
+ * {@code InputConnection.getTextBeforeCursor/getTextAfterCursor}. On the device this is the
+ * keyboard's local text mirror; in tests and benchmarks any buffer will do.
+ */
+public interface TextAroundCursor {
+
+    /** Up to {@code n} characters before the cursor; never null. */
+    CharSequence getTextBeforeCursor(int n);
+
+    /** Up to {@code n} characters after the cursor; never null. */
+    CharSequence getTextAfterCursor(int n);
+}
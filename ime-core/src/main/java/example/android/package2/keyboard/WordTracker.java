@@ -0,0 +1,273 @@
+package example.android.package2.keyboard;
+
+/**
+ * Keeps track of the word around the cursor while the user types.
+ * Word boundaries are whitespace and punctuation as classified by {@link CharClassifier}.
+ *
+ * Every character the keyboard sends is fed in as it is processed, so the current word
+ * span (characters before and after the cursor, plus its hash) is always known without
+ * reading the editor. The word the cursor last left is kept as well; that is what the emoji
+ * row looks up when space is pressed.
+ *
+ * When the cursor moves somewhere we did not put it, or an edit cannot be followed (an
+ * emoji replacing a word, a backspace into the previous word, ...), the tracker is
+ * invalidated and rebuilt once from the {@link TextAroundCursor} on the next lookup.
+ *
+ * Lookups return views backed by the tracker's own buffers. They stay valid only until the
+ * next update; call {@code toString()} to keep a copy.
+ */
+public final class WordTracker {
+
+    /** How far the rebuild looks around the cursor, same as the old per-key scans. */
+    private static final int RESYNC_BEFORE = 50;
+    private static final int RESYNC_AFTER = 10;
+    /** Longest word kept verbatim; longer words are still counted for deletion. */
+    static final int MAX_WORD_LENGTH = 48;
+
+    private final TextAroundCursor mMirror;
+
+    // Current word: mBeforeLength chars are left of the cursor, of which mBefore[0, mBeforeKept)
+    // are kept; mAfter[0, mAfterLength) is right of it
+    private final char[] mBefore = new char[MAX_WORD_LENGTH];
+    private final int[] mPrefixHash = new int[MAX_WORD_LENGTH + 1];
+    private int mBeforeLength;
+    private int mBeforeKept;
+    private final char[] mAfter = new char[RESYNC_AFTER];
+    private int mAfterLength;
+
+    // The word completed by the last boundary character
+    private final char[] mLastWord = new char[MAX_WORD_LENGTH];
+    private int mLastWordLength;
+
+    private boolean mValid;
+
+    private final WordView mCurrentWordView = new WordView(false);
+    private final WordView mLastWordView = new WordView(true);
+
+    public WordTracker(TextAroundCursor mirror) {
+        mMirror = mirror;
+    }
+
+    // ============================================
+    // Updates
+
+    /** Starts a new input session; the first lookup reads the surrounding text. */
+    public void reset() {
+        clear();
+        mLastWordLength = 0;
+        mValid = false;
+    }
+
+    /** The cursor moved or the text changed in a way we cannot follow. */
+    public void invalidate() {
+        mValid = false;
+    }
+
+    /** A code point was inserted at the cursor. */
+    public void onCharacter(int codePoint) {
+        if (!mValid) {
+            // Nothing to extend yet; the rebuild will see this character in the mirror
+            return;
+        }
+        if (CharClassifier.isWordBoundary(codePoint)) {
+            completeWord();
+            return;
+        }
+        append(codePoint);
+    }
+
+    /** A single character left of the cursor was deleted. */
+    public void onDeleteBefore() {
+        if (mValid && mBeforeLength > 0 && mBeforeLength == mBeforeKept) {
+            mBeforeLength--;
+            mBeforeKept--;
+        } else {
+            // Backspace crossed into a separator or an over-long word
+            mValid = false;
+        }
+    }
+
+    // ============================================
+    // Lookups
+
+    /** Characters of the current word left of the cursor. */
+    public int getLengthBeforeCursor() {
+        ensureValid();
+        return mBeforeLength;
+    }
+
+    /** Characters of the current word right of the cursor. */
+    public int getLengthAfterCursor() {
+        ensureValid();
+        return mAfterLength;
+    }
+
+    /** {@link String#hashCode()} of the current word, without building the string. */
+    public int getWordHash() {
+        ensureValid();
+        int hash = mPrefixHash[mBeforeKept];
+        for (int i = 0; i < mAfterLength; i++) {
+            hash = 31 * hash + mAfter[i];
+        }
+        return hash;
+    }
+
+    /** The word around the cursor, as a view over the tracker's buffers. */
+    public CharSequence getCurrentWord() {
+        ensureValid();
+        return mCurrentWordView;
+    }
+
+    /** The word most recently ended by a boundary character. */
+    public CharSequence getLastWord() {
+        ensureValid();
+        return mLastWordView;
+    }
+
+    // ============================================
+    // Helpers
+
+    /** Adds a code point left of the cursor; it is kept only if all of it still fits. */
+    private void append(int codePoint) {
+        int count = Character.charCount(codePoint);
+        if (mBeforeKept == mBeforeLength && mBeforeKept + count <= MAX_WORD_LENGTH) {
+            if (count == 1) {
+                keep((char) codePoint);
+            } else {
+                keep(Character.highSurrogate(codePoint));
+                keep(Character.lowSurrogate(codePoint));
+            }
+        }
+        mBeforeLength += count;
+    }
+
+    private void keep(char c) {
+        mBefore[mBeforeKept] = c;
+        mPrefixHash[mBeforeKept + 1] = 31 * mPrefixHash[mBeforeKept] + c;
+        mBeforeKept++;
+    }
+
+    /**
+     * A boundary was typed at the cursor. The part before it becomes the last word; the part
+     * after the cursor, if any, is now the whole current word.
+     */
+    private void completeWord() {
+        if (mBeforeKept > 0) {
+            System.arraycopy(mBefore, 0, mLastWord, 0, mBeforeKept);
+            mLastWordLength = mBeforeKept;
+        }
+        clearBefore();
+    }
+
+    private void clear() {
+        clearBefore();
+        mAfterLength = 0;
+    }
+
+    private void clearBefore() {
+        mBeforeLength = 0;
+        mBeforeKept = 0;
+        mPrefixHash[0] = 0;
+    }
+
+    private void ensureValid() {
+        if (!mValid) {
+            resync(mMirror.getTextBeforeCursor(RESYNC_BEFORE), mMirror.getTextAfterCursor(RESYNC_AFTER));
+        }
+    }
+
+    /** Rebuilds the state from the text around the cursor; runs once after invalidation. */
+    private void resync(CharSequence before, CharSequence after) {
+        clear();
+        int length = before.length();
+
+        int start = wordStartBefore(before, length);
+        for (int i = start; i < length; ) {
+            int codePoint = Character.codePointAt(before, i);
+            append(codePoint);
+            i += Character.charCount(codePoint);
+        }
+
+        for (int i = 0; i < after.length(); ) {
+            int codePoint = Character.codePointAt(after, i);
+            int count = Character.charCount(codePoint);
+            if (CharClassifier.isWordBoundary(codePoint) || mAfterLength + count > RESYNC_AFTER) {
+                break;
+            }
+            for (int j = 0; j < count; j++) {
+                mAfter[mAfterLength++] = after.charAt(i + j);
+            }
+            i += count;
+        }
+
+        // The last completed word is the one before the run of boundaries preceding the cursor
+        int end = start;
+        while (end > 0 && CharClassifier.isWordBoundary(Character.codePointBefore(before, end))) {
+            end -= Character.charCount(Character.codePointBefore(before, end));
+        }
+        int wordStart = wordStartBefore(before, end);
+        mLastWordLength = Math.min(end - wordStart, MAX_WORD_LENGTH);
+        if (mLastWordLength < end - wordStart
+                && Character.isHighSurrogate(before.charAt(wordStart + mLastWordLength - 1))) {
+            // Do not keep half of a surrogate pair
+            mLastWordLength--;
+        }
+        for (int i = 0; i < mLastWordLength; i++) {
+            mLastWord[i] = before.charAt(wordStart + i);
+        }
+
+        mValid = true;
+    }
+
+    /** Walks back from {@code end} over word code points and returns where the word starts. */
+    private static int wordStartBefore(CharSequence text, int end) {
+        int start = end;
+        while (start > 0) {
+            int codePoint = Character.codePointBefore(text, start);
+            if (CharClassifier.isWordBoundary(codePoint)) {
+                break;
+            }
+            start -= Character.charCount(codePoint);
+        }
+        return start;
+    }
+
+    /** Allocation-free view over either the current or the last completed word. */
+    private final class WordView implements CharSequence {
+        private final boolean mLast;
+
+        WordView(boolean last) {
+            mLast = last;
+        }
+
+        @Override
+        public int length() {
+            if (mLast) {
+                return mLastWordLength;
+            }
+            return mBeforeKept + mAfterLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (mLast) {
+                return mLastWord[index];
+            }
+            return index < mBeforeKept ? mBefore[index] : mAfter[index - mBeforeKept];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package example.android.package2.suggestion
+
+/**
+ * Kind of form field, as far as autofill suggestions are concerned
+ */
+enum class FieldType {
+    FIRST_NAME, LAST_NAME, FULL_NAME,
+    EMAIL, PHONE,
+    ADDRESS, CITY, STATE, ZIP,
+    COMPANY, USERNAME,
+    UNKNOWN
+}
@@ -0,0 +1,59 @@
+package example.android.package2.suggestion
+
+/**
+ * Field type detection and value normalization for form autofill, free of Android types
+ */
+object FieldTypeDetector {
+
+    // Values of android.text.InputType, copied so this runs on a plain JVM
+    private const val TYPE_MASK_VARIATION = 0x00000ff0
+    private const val TYPE_CLASS_PHONE = 0x00000003
+    private const val TYPE_TEXT_VARIATION_EMAIL_ADDRESS = 0x00000020
+    private const val TYPE_TEXT_VARIATION_PERSON_NAME = 0x00000060
+    private const val TYPE_TEXT_VARIATION_POSTAL_ADDRESS = 0x00000070
+
+    private val WHITESPACE = Regex("\\s+")
+
+    /**
+     * Detects the field type from the hint text, falling back to the input type.
+     */
+    @JvmStatic
+    fun detectFieldType(hintText: CharSequence?, inputType: Int): FieldType {
+        val hint = hintText?.toString()?.lowercase() ?: ""
+
+        // Hint text analysis
+        return when {
+            hint.contains("first") && hint.contains("name") -> FieldType.FIRST_NAME
+            hint.contains("last") && hint.contains("name") -> FieldType.LAST_NAME
+            hint.contains("full") && hint.contains("name") -> FieldType.FULL_NAME
+            hint.contains("email") -> FieldType.EMAIL
+            hint.contains("phone") -> FieldType.PHONE
+            hint.contains("address") -> FieldType.ADDRESS
+            hint.contains("city") -> FieldType.CITY
+            hint.contains("state") -> FieldType.STATE
+            hint.contains("zip") -> FieldType.ZIP
+            hint.contains("company") -> FieldType.COMPANY
+            hint.contains("username") -> FieldType.USERNAME
+            else -> {
+                // Input type fallback
+                val inputVariation = inputType and TYPE_MASK_VARIATION
+                when {
+                    inputVariation == TYPE_TEXT_VARIATION_EMAIL_ADDRESS -> FieldType.EMAIL
+                    inputVariation == TYPE_TEXT_VARIATION_PERSON_NAME -> FieldType.FULL_NAME
+                    inputVariation == TYPE_TEXT_VARIATION_POSTAL_ADDRESS -> FieldType.ADDRESS
+                    // Any class bit, so plain text fields land here too
+                    inputType and TYPE_CLASS_PHONE != 0 -> FieldType.PHONE
+                    else -> FieldType.UNKNOWN
+                }
+            }
+        }
+    }
+
+    /**
+     * Normalizes a value for duplicate detection - lowercase, no extra spaces.
+     */
+    @JvmStatic
+    fun normalizeValue(value: String): String {
+        return value.lowercase().trim().replace(WHITESPACE, " ")
+    }
+}
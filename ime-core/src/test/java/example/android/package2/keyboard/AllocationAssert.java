@@ -0,0 +1,38 @@
+package example.android.package2.keyboard;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that code on the per-keystroke paths does not allocate, using the JVM's per-thread
+ * allocation counter. Timings are left to the JMH benchmarks.
+ */
+final class AllocationAssert {
+
+    // Keeps the result of the work alive so it is not optimized away
+    private static volatile int sSink;
+
+    private AllocationAssert() {
+    }
+
+    /**
+     * Runs {@code work} once to warm it up, then again counting the bytes the thread
+     * allocates, and fails if there are any.
+     */
+    static void assertDoesNotAllocate(String what, IntSupplier work) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        sSink = work.getAsInt();
+
+        long start = threads.getThreadAllocatedBytes(threadId);
+        int result = work.getAsInt();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - start;
+        sSink = result;
+
+        assertTrue(what + " allocated " + allocated + " bytes", allocated <= 0);
+    }
+}
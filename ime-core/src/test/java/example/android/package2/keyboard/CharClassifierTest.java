@@ -0,0 +1,78 @@
+package example.android.package2.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link CharClassifier}, including a check that the per-keystroke
+ * lookups do not allocate. Their speed is measured by CharClassifierBenchmark.
+ */
+public class CharClassifierTest {
+
+    // Same content as R.string.word_separators
+    private static final String WORD_SEPARATORS = " .,;:!?\n()[]*&@{}/<>_+=|\"";
+
+    private static final int ROUNDS = 100_000;
+
+    @Test
+    public void separators_matchResourceString() {
+        CharClassifier classifier = new CharClassifier(WORD_SEPARATORS);
+
+        for (int i = 0; i < WORD_SEPARATORS.length(); i++) {
+            assertTrue(classifier.isSeparator(WORD_SEPARATORS.charAt(i)));
+        }
+        assertFalse(classifier.isSeparator('a'));
+        assertFalse(classifier.isSeparator('\''));
+        assertFalse(classifier.isSeparator(0x1F600)); // emoji
+    }
+
+    @Test
+    public void supplementaryCodePoints_useFallback() {
+        CharClassifier classifier = new CharClassifier("\uD83D\uDE00 "); // U+1F600 and space
+
+        assertTrue(classifier.isSeparator(0x1F600));
+        assertTrue(classifier.isSeparator(' '));
+        assertFalse(classifier.isSeparator(0x1F601));
+        assertFalse(classifier.isSeparator(0xD83D)); // lone high surrogate is not the emoji
+    }
+
+    @Test
+    public void wordBoundaries_areWhitespaceAndPunctuation() {
+        assertTrue(CharClassifier.isWordBoundary(' '));
+        assertTrue(CharClassifier.isWordBoundary('\n'));
+        assertTrue(CharClassifier.isWordBoundary('\''));
+        assertTrue(CharClassifier.isWordBoundary('?'));
+        assertFalse(CharClassifier.isWordBoundary('@'));
+        assertFalse(CharClassifier.isWordBoundary('\u00E9'));
+        assertFalse(CharClassifier.isWordBoundary(0x1F600));
+
+        assertTrue(CharClassifier.isPunctuation('.'));
+        assertFalse(CharClassifier.isPunctuation(' '));
+        assertTrue(CharClassifier.isWhitespace('\t'));
+    }
+
+    @Test
+    public void lookups_doNotAllocate() {
+        CharClassifier classifier = new CharClassifier(WORD_SEPARATORS);
+
+        AllocationAssert.assertDoesNotAllocate("CharClassifier lookups",
+                () -> runLookups(classifier, ROUNDS));
+    }
+
+    // Letters, separators, punctuation and a supplementary code point
+    private static final int[] SAMPLE = {'h', 'e', 'l', 'l', 'o', ' ', 'w', 'o', 'r', 'l', 'd', '.',
+            '\n', 0x1F600, '\'', '@', 0x00E9, '?', '9', '_'};
+
+    private static int runLookups(CharClassifier classifier, int rounds) {
+        int hits = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int codePoint : SAMPLE) {
+                if (classifier.isSeparator(codePoint)) hits++;
+                if (CharClassifier.isWordBoundary(codePoint)) hits++;
+                if (CharClassifier.isWhitespace(codePoint)) hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,60 @@
+package example.android.package2.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ChatFieldDetector}.
+ */
+public class ChatFieldDetectorTest {
+
+    private static final int TEXT = ChatFieldDetector.TYPE_CLASS_TEXT;
+    private static final int NUMBER = 0x00000002;
+    private static final int ACTION_DONE = 0x00000006;
+
+    @Test
+    public void searchAction_isNeverChat() {
+        assertFalse(ChatFieldDetector.isChatField(
+                TEXT | ChatFieldDetector.TYPE_TEXT_VARIATION_SHORT_MESSAGE,
+                ChatFieldDetector.IME_ACTION_SEARCH, "Message"));
+    }
+
+    @Test
+    public void sendAction_isChat() {
+        assertTrue(ChatFieldDetector.isChatField(NUMBER, ChatFieldDetector.IME_ACTION_SEND, null));
+    }
+
+    @Test
+    public void messageVariations_areChat() {
+        assertTrue(ChatFieldDetector.isChatField(
+                TEXT | ChatFieldDetector.TYPE_TEXT_VARIATION_SHORT_MESSAGE, ACTION_DONE, null));
+        assertTrue(ChatFieldDetector.isChatField(
+                TEXT | ChatFieldDetector.TYPE_TEXT_VARIATION_LONG_MESSAGE, ACTION_DONE, null));
+    }
+
+    @Test
+    public void capSentencesNeedsMultiLineOrAutoCorrect() {
+        int capSentences = TEXT | ChatFieldDetector.TYPE_TEXT_FLAG_CAP_SENTENCES;
+        assertFalse(ChatFieldDetector.isChatField(capSentences, ACTION_DONE, null));
+        assertTrue(ChatFieldDetector.isChatField(
+                capSentences | ChatFieldDetector.TYPE_TEXT_FLAG_MULTI_LINE, ACTION_DONE, null));
+        assertTrue(ChatFieldDetector.isChatField(
+                capSentences | ChatFieldDetector.TYPE_TEXT_FLAG_AUTO_CORRECT, ACTION_DONE, null));
+        // Flags only count for text fields
+        assertFalse(ChatFieldDetector.isChatField(
+                NUMBER | ChatFieldDetector.TYPE_TEXT_FLAG_CAP_SENTENCES
+                        | ChatFieldDetector.TYPE_TEXT_FLAG_MULTI_LINE, ACTION_DONE, null));
+    }
+
+    @Test
+    public void hints() {
+        assertTrue(ChatFieldDetector.isChatHint("Type a Message"));
+        assertTrue(ChatFieldDetector.isChatHint("REPLY"));
+        assertTrue(ChatFieldDetector.isChatHint("Say something"));
+        assertFalse(ChatFieldDetector.isChatHint("Search chats"));
+        assertFalse(ChatFieldDetector.isChatHint("Email"));
+        assertFalse(ChatFieldDetector.isChatHint("ch"));
+        assertFalse(ChatFieldDetector.isChatHint(null));
+    }
+}
@@ -0,0 +1,128 @@
+package example.android.package2.keyboard;
+
+import org.junit.Test;
+
+import static example.android.package2.keyboard.KeyProximityGrid.EDGE_BOTTOM;
+import static example.android.package2.keyboard.KeyProximityGrid.EDGE_LEFT;
+import static example.android.package2.keyboard.KeyProximityGrid.EDGE_RIGHT;
+import static example.android.package2.keyboard.KeyProximityGrid.EDGE_TOP;
+import static example.android.package2.keyboard.KeyProximityGrid.NOT_A_KEY;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link KeyProximityGrid} on a two row layout whose second row is
+ * indented by half a key:
+ *
+ * <pre>
+ *   | 0 | 1 | 2 |
+ *     | 3 | 4 |
+ * </pre>
+ */
+public class KeyProximityGridTest {
+
+    private static final int THRESHOLD = 60;
+
+    private static KeyProximityGrid grid() {
+        return new KeyProximityGrid(300, 200,
+                new int[] {0, 100, 200, 50, 150},
+                new int[] {0, 0, 0, 100, 100},
+                new int[] {100, 100, 100, 100, 100},
+                new int[] {100, 100, 100, 100, 100},
+                new int[] {EDGE_LEFT | EDGE_TOP, EDGE_TOP, EDGE_RIGHT | EDGE_TOP,
+                        EDGE_LEFT | EDGE_BOTTOM, EDGE_RIGHT | EDGE_BOTTOM},
+                THRESHOLD);
+    }
+
+    @Test
+    public void hitsKeyUnderTouch() {
+        KeyProximityGrid grid = grid();
+
+        assertEquals(0, grid.getKeyIndex(0, 0));
+        assertEquals(1, grid.getKeyIndex(150, 50));
+        assertEquals(2, grid.getKeyIndex(299, 99));
+        assertEquals(3, grid.getKeyIndex(100, 150));
+        assertEquals(4, grid.getKeyIndex(150, 100));
+    }
+
+    @Test
+    public void edgeKeysTakeTouchesUpToTheEdge() {
+        KeyProximityGrid grid = grid();
+
+        assertEquals(3, grid.getKeyIndex(10, 150));
+        assertEquals(4, grid.getKeyIndex(280, 150));
+    }
+
+    @Test
+    public void touchesOutsideKeyboardMiss() {
+        KeyProximityGrid grid = grid();
+
+        assertEquals(NOT_A_KEY, grid.getKeyIndex(-1, 50));
+        assertEquals(NOT_A_KEY, grid.getKeyIndex(300, 50));
+        assertEquals(NOT_A_KEY, grid.getKeyIndex(150, 200));
+    }
+
+    @Test
+    public void keysWithoutWidthAreIgnored() {
+        KeyProximityGrid grid = new KeyProximityGrid(200, 100,
+                new int[] {0, 100, 100}, new int[] {0, 0, 0},
+                new int[] {100, 0, 100}, new int[] {100, 100, 100},
+                new int[] {0, 0, 0}, THRESHOLD);
+        KeyProximityGrid.Proximity proximity = new KeyProximityGrid.Proximity(4);
+
+        assertEquals(2, grid.findNearestKeys(100, 50, proximity));
+        for (int i = 0; i < proximity.getCount(); i++) {
+            assertNotEquals(1, proximity.getKey(i));
+        }
+    }
+
+    @Test
+    public void nearestKeysAreSortedAndWithinThreshold() {
+        KeyProximityGrid.Proximity proximity = new KeyProximityGrid.Proximity(8);
+
+        assertEquals(1, grid().findNearestKeys(195, 50, proximity));
+        assertEquals(1, proximity.getHitKey());
+        assertEquals(3, proximity.getCount());
+        assertEquals(1, proximity.getKey(0));
+        assertEquals(0, proximity.getSquaredDistance(0));
+        assertEquals(2, proximity.getKey(1));
+        assertEquals(5 * 5, proximity.getSquaredDistance(1));
+        assertEquals(4, proximity.getKey(2));
+        assertEquals(50 * 50, proximity.getSquaredDistance(2));
+    }
+
+    @Test
+    public void nearestKeysKeepOnlyTheClosest() {
+        KeyProximityGrid.Proximity proximity = new KeyProximityGrid.Proximity(2);
+
+        grid().findNearestKeys(195, 50, proximity);
+        assertEquals(2, proximity.getCount());
+        assertEquals(1, proximity.getKey(0));
+        assertEquals(2, proximity.getKey(1));
+
+        // Results of the previous touch do not leak into a miss
+        assertEquals(NOT_A_KEY, grid().findNearestKeys(-5, 50, proximity));
+        assertEquals(0, proximity.getCount());
+        assertEquals(NOT_A_KEY, proximity.getHitKey());
+    }
+
+    @Test
+    public void lookups_doNotAllocate() {
+        KeyProximityGrid grid = grid();
+        KeyProximityGrid.Proximity proximity = new KeyProximityGrid.Proximity(8);
+
+        AllocationAssert.assertDoesNotAllocate("KeyProximityGrid lookups",
+                () -> runLookups(grid, proximity, 20_000));
+    }
+
+    private static int runLookups(KeyProximityGrid grid, KeyProximityGrid.Proximity proximity,
+                                  int rounds) {
+        int sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            int x = (round * 37) % 320 - 10;
+            int y = (round * 53) % 220 - 10;
+            sink += grid.getKeyIndex(x, y);
+            sink += grid.findNearestKeys(x, y, proximity) + proximity.getCount();
+        }
+        return sink;
+    }
+}
@@ -0,0 +1,91 @@
+package example.android.package2.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link WordTracker}.
+ */
+public class WordTrackerTest {
+
+    private static final int EMOJI = 0x1F600;
+
+    /** The editor text, split at the cursor. */
+    private static final class Text implements TextAroundCursor {
+        final StringBuilder mBefore = new StringBuilder();
+        final StringBuilder mAfter = new StringBuilder();
+
+        Text(String before, String after) {
+            mBefore.append(before);
+            mAfter.append(after);
+        }
+
+        @Override
+        public CharSequence getTextBeforeCursor(int n) {
+            return mBefore.subSequence(Math.max(0, mBefore.length() - n), mBefore.length());
+        }
+
+        @Override
+        public CharSequence getTextAfterCursor(int n) {
+            return mAfter.subSequence(0, Math.min(n, mAfter.length()));
+        }
+    }
+
+    @Test
+    public void tracksTypedWord() {
+        WordTracker tracker = new WordTracker(new Text("say ", ""));
+        assertEquals("", tracker.getCurrentWord().toString());
+
+        tracker.onCharacter('h');
+        tracker.onCharacter('i');
+
+        assertEquals("hi", tracker.getCurrentWord().toString());
+        assertEquals("hi".hashCode(), tracker.getWordHash());
+        assertEquals("say", tracker.getLastWord().toString());
+    }
+
+    @Test
+    public void boundaryInsideWord_keepsTheRestAsCurrentWord() {
+        WordTracker tracker = new WordTracker(new Text("he", "llo there"));
+        assertEquals("hello", tracker.getCurrentWord().toString());
+
+        tracker.onCharacter(' ');
+
+        assertEquals("he", tracker.getLastWord().toString());
+        assertEquals("llo", tracker.getCurrentWord().toString());
+        assertEquals("llo".hashCode(), tracker.getWordHash());
+        assertEquals(0, tracker.getLengthBeforeCursor());
+        assertEquals(3, tracker.getLengthAfterCursor());
+    }
+
+    @Test
+    public void surrogatePairIsNotSplitAtMaxLength() {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < WordTracker.MAX_WORD_LENGTH - 1; i++) {
+            word.append('a');
+        }
+        WordTracker tracker = new WordTracker(new Text(word.toString(), ""));
+        assertEquals(WordTracker.MAX_WORD_LENGTH - 1, tracker.getCurrentWord().length());
+
+        tracker.onCharacter(EMOJI);
+
+        CharSequence current = tracker.getCurrentWord();
+        assertEquals(word.toString(), current.toString());
+        assertEquals(word.toString().hashCode(), tracker.getWordHash());
+        // Still counted, so deleting it is known to need a rebuild
+        assertEquals(WordTracker.MAX_WORD_LENGTH + 1, tracker.getLengthBeforeCursor());
+    }
+
+    @Test
+    public void surrogatePairFitsBelowMaxLength() {
+        WordTracker tracker = new WordTracker(new Text("a", ""));
+        tracker.getCurrentWord();
+
+        tracker.onCharacter(EMOJI);
+
+        String expected = "a" + new String(Character.toChars(EMOJI));
+        assertEquals(expected, tracker.getCurrentWord().toString());
+        assertEquals(expected.hashCode(), tracker.getWordHash());
+    }
+}
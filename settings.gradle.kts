@@ -21,4 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "aosp_poc"
 include(":app")
+include(":ime-core")
  
\ No newline at end of file